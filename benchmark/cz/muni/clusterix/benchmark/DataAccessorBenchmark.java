@@ -0,0 +1,163 @@
+package cz.muni.clusterix.benchmark;
+
+import cz.muni.clusterix.businesstier.ExecutionConfig;
+import cz.muni.clusterix.commandline.CommandlineConstants;
+import cz.muni.clusterix.commandline.DataAccessor;
+import cz.muni.clusterix.entities.Declination;
+import cz.muni.clusterix.entities.ProperMotion;
+import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.Result;
+import cz.muni.clusterix.entities.RightAscension;
+import cz.muni.clusterix.entities.Star;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures command line I/O: parsing of the catalogue file and writing of
+ * the results. Catalogue is written from the synthetic field in the format of
+ * the sample data files, results contain all stars of the field. Catalogue
+ * parsing is measured in streaming and memory-mapped mode and compared with
+ * the former Scanner based implementation.
+ *
+ * @author Tomas Sezima
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataAccessorBenchmark {
+
+    private static final String SEPARATOR = "\t";
+
+    private DataAccessor accessor;
+    private Path catalogue;
+    private Path output;
+    private Properties properties;
+    private Restrictions restrictions;
+    private Result result;
+
+    @Setup(Level.Trial)
+    public void setUp(FieldState state) throws IOException {
+        accessor = new DataAccessor();
+        catalogue = Files.createTempFile("clusterix-catalogue", ".txt");
+        output = Files.createTempFile("clusterix-result", ".txt");
+        writeCatalogue(state.field.getStars(), catalogue);
+
+        properties = new Properties();
+        properties.setProperty(CommandlineConstants.CLUSTER_RA_PARAM,
+                String.valueOf(state.cluster.getRightAscension().getDegrees()));
+        properties.setProperty(CommandlineConstants.CLUSTER_DEC_PARAM,
+                String.valueOf(state.cluster.getDeclination().getDegrees()));
+        properties.setProperty(CommandlineConstants.CLUSTER_DIAMETER_PARAM,
+                String.valueOf(state.cluster.getRadius()));
+
+        // every star gets a probability so that all of them are written
+        restrictions = state.newRestrictions();
+        restrictions.setSmooth(1.0);
+        restrictions.setGammaCoef(3.0f);
+        Set<Star> stars = state.field.getStars();
+        for (Star star : stars) {
+            star.setProbability(0.5f);
+        }
+        result = new Result(state.cluster, null, new ArrayList<Star>(stars),
+                stars.size() / 5, restrictions, state.mask);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(catalogue);
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public Set<Star> getStars() throws IOException {
+        return accessor.getStars(catalogue);
+    }
+
+    @Benchmark
+    public Set<Star> getStarsMapped() throws IOException {
+        return accessor.getStars(catalogue, ExecutionConfig.getDefault());
+    }
+
+    @Benchmark
+    public Set<Star> getStarsScanner() throws IOException {
+        Set<Star> stars = new HashSet<Star>();
+        BufferedReader reader = Files.newBufferedReader(catalogue, Charset.defaultCharset());
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                if (!line.startsWith("#") && !line.isEmpty()) {
+                    Scanner s = new Scanner(line).useDelimiter("\\t");
+                    s.useLocale(Locale.ENGLISH);
+                    int no = s.nextInt();
+                    float ra = s.nextFloat();
+                    float dec = s.nextFloat();
+                    float raPm = s.nextFloat();
+                    float raPmErr = s.nextFloat();
+                    float decPm = s.nextFloat();
+                    float decPmErr = s.nextFloat();
+                    stars.add(new Star(no, 0.0f, new RightAscension(ra, 0.0f), new Declination(dec, 0.0f),
+                            new ProperMotion(raPm, raPmErr, decPm, decPmErr)));
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+        return stars;
+    }
+
+    @Benchmark
+    public Path writeResults(FieldState state) throws IOException {
+        accessor.writeResults(output, properties, restrictions, state.cluster, result);
+        return output;
+    }
+
+
+    // private helpers
+
+    private void writeCatalogue(Set<Star> stars, Path path) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(path, Charset.defaultCharset());
+        try {
+            writer.write("# no\tra\tdec\tra_pm\tra_pm_err\tdec_pm\tdec_pm_err");
+            for (Star star : stars) {
+                writer.newLine();
+                writer.write(star.getNo() + SEPARATOR
+                        + String.format(Locale.ENGLISH, "%.6f", star.getRightAscension().getDegrees()) + SEPARATOR
+                        + String.format(Locale.ENGLISH, "%.6f", star.getDeclination().getDegrees()) + SEPARATOR
+                        + String.format(Locale.ENGLISH, "%.3f", star.getProperMotion().getMuAlpha()) + SEPARATOR
+                        + "0.5" + SEPARATOR
+                        + String.format(Locale.ENGLISH, "%.3f", star.getProperMotion().getMuDelta()) + SEPARATOR
+                        + "0.5");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package cz.muni.clusterix.benchmark;
+
+import cz.muni.clusterix.businesstier.FieldMask;
+import cz.muni.clusterix.businesstier.FieldMask.FieldType;
+import cz.muni.clusterix.businesstier.PreparedField;
+import cz.muni.clusterix.entities.StarCatalog;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures field mask stages: star selection by mask markers, single pass
+ * classification of all stars, fused preparation of samples, creation of
+ * the default circular mask and area ratio evaluation.
+ *
+ * @author Tomas Sezima
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FieldMaskBenchmark {
+
+    @Param({"101", "501", "2001"})
+    private int maskDensity;
+
+    @Benchmark
+    public StarCatalog getMarkedStars(FieldState state) {
+        return state.mask.getMarkedStars(state.field.getCatalog(),
+                EnumSet.of(FieldType.CLUSTERFIELD, FieldType.FIELD));
+    }
+
+    @Benchmark
+    public FieldMask.Classification classify(FieldState state) {
+        return state.mask.classify(state.field.getCatalog(), null);
+    }
+
+    @Benchmark
+    public PreparedField prepare(FieldState state) {
+        return state.field.prepare(state.mask, state.cluster.getDefaultMask(maskDensity),
+                state.newRestrictions());
+    }
+
+    @Benchmark
+    public FieldMask getDefaultMask(FieldState state) {
+        return state.cluster.getDefaultMask(maskDensity);
+    }
+
+    @Benchmark
+    public float getRatio(FieldState state) {
+        return state.mask.getRatio(FieldType.CLUSTERFIELD, FieldType.FIELD);
+    }
+
+}
@@ -0,0 +1,72 @@
+package cz.muni.clusterix.benchmark;
+
+import cz.muni.clusterix.businesstier.FieldMask;
+import cz.muni.clusterix.businesstier.FieldMask.FieldType;
+import cz.muni.clusterix.businesstier.StellarField;
+import cz.muni.clusterix.entities.Declination;
+import cz.muni.clusterix.entities.OpenCluster;
+import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.RightAscension;
+import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.helpers.ClusterixConstants;
+import cz.muni.clusterix.helpers.StarGenerator;
+import java.util.EnumSet;
+import java.util.Set;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Synthetic stellar field shared by pipeline benchmarks. Field is generated by
+ * StarGenerator around a cluster whose outer radius covers the whole field.
+ * Proper motion grid size is controlled via maximal proper motion, i.e. grid
+ * of 'gridSize' cells corresponds to maxMu = gridSize / 2 * CELLSIZE.
+ *
+ * @author Tomas Sezima
+ */
+@State(Scope.Benchmark)
+public class FieldState {
+
+    // cluster radius in arcmins, field spans the outer radius
+    private static final float CLUSTER_RADIUS = 10.0f;
+    // proper motion grid cell size used by PmFunction
+    private static final double CELLSIZE = 0.08;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int starCount;
+
+    @Param({"100", "250"})
+    public int gridSize;
+
+    public StellarField field;
+    public OpenCluster cluster;
+    public FieldMask mask;
+    public Set<Star> clusterFieldStars;
+    public Set<Star> fieldStars;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RightAscension ra = new RightAscension(100.0f, 0.0f);
+        Declination dec = new Declination(20.0f, 0.0f);
+        cluster = new OpenCluster("benchmark", ra, dec, CLUSTER_RADIUS);
+        field = new StarGenerator().getTestField(ra, dec, cluster.getOutterRadius(), starCount);
+        mask = cluster.getDefaultMask(ClusterixConstants.DEFAULT_MASK_DENSITY);
+
+        Set<Star> filtered = field.getFilteredStars(newRestrictions());
+        clusterFieldStars = mask.getMarkedStars(filtered, EnumSet.of(FieldType.CLUSTERFIELD));
+        fieldStars = mask.getMarkedStars(filtered, EnumSet.of(FieldType.FIELD));
+    }
+
+    /**
+     * Creates fresh restrictions, pipeline modifies restrictions it is given.
+     *
+     * @return Restrictions that correspond to configured grid size
+     */
+    public Restrictions newRestrictions() {
+        return new Restrictions(null, gridSize / 2 * CELLSIZE,
+                ClusterixConstants.DEFAULT_MAX_MU_ERR, null, null);
+    }
+
+}
@@ -0,0 +1,98 @@
+package cz.muni.clusterix.benchmark;
+
+import cz.muni.clusterix.businesstier.ExactKernelFunction;
+import cz.muni.clusterix.businesstier.KernelFunction;
+import cz.muni.clusterix.businesstier.TabulatedKernelFunction;
+import cz.muni.clusterix.helpers.Calc;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.math3.util.FastMath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares kernel evaluation by FastMath.exp with kernel functions and with
+ * the polynomial approximation used by the vectorized engine. Arguments are
+ * spread over kernel support the way density estimation engines produce
+ * them, sums are returned so that no evaluation is eliminated.
+ *
+ * @author Tomas Sezima
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KernelFunctionBenchmark {
+
+    private static final int NUM_OF_ARGUMENTS = 4096;
+
+    @Param({"1e-4", "1e-6", "1e-8"})
+    private double maxRelativeError;
+
+    private double[] arguments;
+    private KernelFunction exact;
+    private KernelFunction tabulated;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        arguments = new double[NUM_OF_ARGUMENTS];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = random.nextDouble() * 32;
+        }
+        exact = new ExactKernelFunction();
+        tabulated = new TabulatedKernelFunction(maxRelativeError);
+    }
+
+    @Benchmark
+    public double fastMathExp() {
+        double sum = 0;
+        for (double t : arguments) {
+            sum += FastMath.exp(-0.5 * t);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double exactKernel() {
+        return sum(exact);
+    }
+
+    @Benchmark
+    public double tabulatedKernel() {
+        return sum(tabulated);
+    }
+
+    @Benchmark
+    public double polynomialExp() {
+        double sum = 0;
+        for (double t : arguments) {
+            sum += Calc.expOfNonPositive(-0.5 * t);
+        }
+        return sum;
+    }
+
+
+    // private helpers
+
+    private double sum(KernelFunction kernel) {
+        double sum = 0;
+        for (double t : arguments) {
+            sum += kernel.evaluate(t);
+        }
+        return sum;
+    }
+
+}
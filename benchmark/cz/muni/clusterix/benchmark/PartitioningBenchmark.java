@@ -0,0 +1,130 @@
+package cz.muni.clusterix.benchmark;
+
+import cz.muni.clusterix.businesstier.ExecutionConfig;
+import cz.muni.clusterix.businesstier.ExecutionConfig.Partitioning;
+import cz.muni.clusterix.businesstier.GridUnaryOperator;
+import cz.muni.clusterix.businesstier.PmFunction;
+import cz.muni.clusterix.businesstier.UnaryOperator;
+import cz.muni.clusterix.entities.ExecutionContext;
+import cz.muni.clusterix.helpers.ClusterixConstants;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares strided and row block partitioning of PmFunction operators on
+ * 1000x1000 grids. Both cheap uniform operators (scale, subtract) and uneven
+ * operator that does work only within circular proper motion cutoff are measured.
+ * Circular operator is measured both via legacy UnaryOperator (bridged to
+ * primitive contract) and as GridUnaryOperator.
+ *
+ * @author Tomas Sezima
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PartitioningBenchmark {
+
+    @Param({"1000"})
+    private int gridSize;
+
+    @Param({"STRIDED", "ROW_BLOCKS"})
+    private Partitioning partitioning;
+
+    private ExecutionConfig config;
+    private PmFunction function;
+    private PmFunction second;
+    private UnaryOperator circularOperator;
+    private GridUnaryOperator circularGridOperator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int cores = ClusterixConstants.NUM_OF_AVAILABLE_PROCESSORS;
+        config = new ExecutionConfig(new ForkJoinPool(cores), cores, partitioning);
+        function = new PmFunction(new float[gridSize][gridSize]);
+        second = new PmFunction(new float[gridSize][gridSize]);
+        function.setExecutionConfig(config);
+        for (int i = 0; i < gridSize; i++) {
+            for (int u = 0; u < gridSize; u++) {
+                function.getValues().set(i, u, i + u);
+                second.getValues().set(i, u, i - u);
+            }
+        }
+
+        // mimics kernel estimation, cells outside of the circle are cheap
+        final int center = gridSize / 2;
+        circularOperator = new UnaryOperator() {
+            @Override
+            public float apply(float functionValue, ExecutionContext context) {
+                int x = center - context.getCurrentXcoord();
+                int y = center - context.getCurrentYcoord();
+                if (Math.hypot(x, y) >= center) {
+                    return 0;
+                }
+                float result = functionValue;
+                for (int i = 0; i < 16; i++) {
+                    result = (float) Math.sqrt(result * result + i);
+                }
+                return result;
+            }
+        };
+        circularGridOperator = new GridUnaryOperator() {
+            @Override
+            public float apply(int x, int y, float functionValue) {
+                if (Math.hypot(center - x, center - y) >= center) {
+                    return 0;
+                }
+                float result = functionValue;
+                for (int i = 0; i < 16; i++) {
+                    result = (float) Math.sqrt(result * result + i);
+                }
+                return result;
+            }
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        config.shutdown();
+    }
+
+    @Benchmark
+    public PmFunction scale() {
+        function.scale(1.0001f);
+        return function;
+    }
+
+    @Benchmark
+    public PmFunction subtract() {
+        function.subtract(second);
+        return function;
+    }
+
+    @Benchmark
+    public PmFunction circularKernel() {
+        function.applyUnaryOperator(circularOperator, null);
+        return function;
+    }
+
+    @Benchmark
+    public PmFunction circularGridKernel() {
+        function.applyUnaryOperator(circularGridOperator);
+        return function;
+    }
+
+}
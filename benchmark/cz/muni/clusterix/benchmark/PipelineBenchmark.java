@@ -0,0 +1,168 @@
+package cz.muni.clusterix.benchmark;
+
+import cz.muni.clusterix.businesstier.DensityEstimator;
+import cz.muni.clusterix.businesstier.ExactDensityEstimator;
+import cz.muni.clusterix.businesstier.FftDensityEstimator;
+import cz.muni.clusterix.businesstier.FieldMask.FieldType;
+import cz.muni.clusterix.businesstier.FunctionExpression;
+import cz.muni.clusterix.businesstier.PmFrequency;
+import cz.muni.clusterix.businesstier.PmProbability;
+import cz.muni.clusterix.businesstier.SeparableDensityEstimator;
+import cz.muni.clusterix.businesstier.TruncatedDensityEstimator;
+import cz.muni.clusterix.businesstier.VectorizedDensityEstimator;
+import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.Result;
+import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.exceptions.NoDataFoundException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures membership pipeline stages: frequency function estimation,
+ * probability function construction (materialised or fused cluster
+ * function, dedicated kernel), assignment of probabilities (with and
+ * without ordering of stars) and the whole evaluateProbabilities call.
+ * Density estimation engine is parameterised so that engines may be compared.
+ * Exact engine on the largest fields takes minutes per operation, narrow the
+ * parameters (e.g. -p engine=FFT) when iterating.
+ *
+ * @author Tomas Sezima
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+    /**
+     * Density estimation engines to be compared.
+     */
+    public enum Engine {
+        EXACT, VECTORIZED, SEPARABLE, TRUNCATED, FFT;
+
+        public DensityEstimator create() {
+            switch (this) {
+                case VECTORIZED:
+                    return new VectorizedDensityEstimator();
+                case SEPARABLE:
+                    return new SeparableDensityEstimator();
+                case TRUNCATED:
+                    return new TruncatedDensityEstimator();
+                case FFT:
+                    return new FftDensityEstimator();
+                default:
+                    return new ExactDensityEstimator();
+            }
+        }
+    }
+
+    @Param({"EXACT", "VECTORIZED", "SEPARABLE", "TRUNCATED", "FFT"})
+    private Engine engine;
+
+    private PmFrequency clusterFieldFreq;
+    private PmFrequency clusterFreq;
+    private PmFrequency fieldFreq;
+    private float fieldRatio;
+    private Restrictions probabilityRestrictions;
+    private PmProbability probability;
+
+    @Setup(Level.Trial)
+    public void setUp(FieldState state) {
+        // prepare frequency functions the same way evaluateProbabilities does
+        probabilityRestrictions = newRestrictions(state);
+        clusterFieldFreq = new PmFrequency(state.clusterFieldStars, probabilityRestrictions);
+        probabilityRestrictions.setSmooth(clusterFieldFreq.getSmoothParam());
+        fieldFreq = new PmFrequency(state.fieldStars, probabilityRestrictions);
+        fieldRatio = state.mask.getRatio(FieldType.CLUSTERFIELD, FieldType.FIELD);
+        PmFrequency scaledFieldFreq = fieldFreq.clone();
+        scaledFieldFreq.scale(fieldRatio);
+        clusterFreq = clusterFieldFreq.clone();
+        clusterFreq.subtract(scaledFieldFreq);
+        // probability function modifies given functions, benchmarked ones are kept
+        probability = new PmProbability(clusterFreq.clone(), clusterFieldFreq.clone(),
+                probabilityRestrictions);
+    }
+
+    @Benchmark
+    public PmFrequency pmFrequency(FieldState state) {
+        return new PmFrequency(state.clusterFieldStars, newRestrictions(state));
+    }
+
+    /**
+     * Probabilities overwrite cluster function, the copy of cluster function
+     * made by each call is included in the measurement.
+     */
+    @Benchmark
+    public PmProbability pmProbability() {
+        return new PmProbability(clusterFreq.clone(), clusterFieldFreq, probabilityRestrictions);
+    }
+
+    /**
+     * Cluster function is materialised by separate passes (scale, clone,
+     * subtract) before probability function is created. Field function is
+     * copied as well, so that it is not modified by repeated calls.
+     */
+    @Benchmark
+    public PmProbability pmProbabilityChain() {
+        PmFrequency scaledFieldFreq = fieldFreq.clone();
+        scaledFieldFreq.scale(fieldRatio);
+        PmFrequency cluster = clusterFieldFreq.clone();
+        cluster.subtract(scaledFieldFreq);
+        return new PmProbability(cluster, clusterFieldFreq, probabilityRestrictions);
+    }
+
+    @Benchmark
+    public PmProbability pmProbabilityFused() {
+        FunctionExpression cluster = FunctionExpression.of(clusterFieldFreq)
+                .subtract(FunctionExpression.of(fieldFreq).scale(fieldRatio));
+        return new PmProbability(cluster, clusterFieldFreq, probabilityRestrictions);
+    }
+
+    /**
+     * Probabilities overwrite field function, the copy of field function
+     * made by each call is included in the measurement.
+     */
+    @Benchmark
+    public PmProbability pmProbabilityKernel() {
+        return new PmProbability(clusterFieldFreq, fieldFreq.clone(), fieldRatio, probabilityRestrictions);
+    }
+
+    @Benchmark
+    public List<Star> assignProbabsTo(FieldState state) {
+        return probability.assignProbabsTo(state.field.getCatalog());
+    }
+
+    @Benchmark
+    public Star assignProbabsToRanked(FieldState state) {
+        return probability.assignProbabsTo(state.field.getCatalog()).get(0);
+    }
+
+    @Benchmark
+    public Result evaluateProbabilities(FieldState state) throws NoDataFoundException {
+        return state.field.evaluateProbabilities(state.cluster, state.mask, newRestrictions(state));
+    }
+
+
+    // private helpers
+
+    private Restrictions newRestrictions(FieldState state) {
+        Restrictions restrictions = state.newRestrictions();
+        restrictions.setEstimator(engine.create());
+        return restrictions;
+    }
+
+}
@@ -0,0 +1,103 @@
+package cz.muni.clusterix.benchmark;
+
+import cz.muni.clusterix.businesstier.FieldMask;
+import cz.muni.clusterix.businesstier.PreparedField;
+import cz.muni.clusterix.businesstier.StarIndex;
+import cz.muni.clusterix.businesstier.StellarField;
+import cz.muni.clusterix.entities.Declination;
+import cz.muni.clusterix.entities.OpenCluster;
+import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.RightAscension;
+import cz.muni.clusterix.entities.StarCatalog;
+import cz.muni.clusterix.helpers.ClusterixConstants;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures extraction of a single cluster from a wide catalogue, i.e. index
+ * construction, cone query and preparation of the cluster's samples with and
+ * without the index.
+ *
+ * @author Tomas Sezima
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StarIndexBenchmark {
+
+    // side of the catalogue in degrees
+    private static final float CATALOGUE_SIDE = 10.0f;
+    // cluster radius in arcmins
+    private static final float CLUSTER_RADIUS = 10.0f;
+
+    @Param({"1000000", "5000000"})
+    private int starCount;
+
+    private StarCatalog catalog;
+    private StarIndex index;
+    private StellarField field;
+    private StellarField indexedField;
+    private FieldMask mask;
+    private FieldMask vicinity;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        catalog = new StarCatalog(starCount);
+        for (int i = 0; i < starCount; i++) {
+            catalog.add(i, random.nextFloat() * 20, 100 + (random.nextFloat() - 0.5f) * CATALOGUE_SIDE,
+                    20 + (random.nextFloat() - 0.5f) * CATALOGUE_SIDE, (float) random.nextGaussian() * 5,
+                    random.nextFloat(), (float) random.nextGaussian() * 5, random.nextFloat());
+        }
+        index = new StarIndex(catalog);
+        field = new StellarField(catalog, null);
+        indexedField = new StellarField(index, null);
+        OpenCluster cluster = new OpenCluster("benchmark", new RightAscension(100.0f, 0.0f),
+                new Declination(20.0f, 0.0f), CLUSTER_RADIUS);
+        mask = cluster.getDefaultMask(ClusterixConstants.DEFAULT_MASK_DENSITY);
+        vicinity = cluster.getDefaultMask(ClusterixConstants.DEFAULT_MASK_DENSITY);
+    }
+
+    @Benchmark
+    public StarIndex createIndex() {
+        return new StarIndex(catalog);
+    }
+
+    @Benchmark
+    public int[] query() {
+        return index.query(100.0f, 20.0f, mask.getHalfSize() / ClusterixConstants.ARCSECS_IN_DEGREE);
+    }
+
+    @Benchmark
+    public PreparedField prepare() {
+        return field.prepare(mask, vicinity, newRestrictions());
+    }
+
+    @Benchmark
+    public PreparedField prepareIndexed() {
+        return indexedField.prepare(mask, vicinity, newRestrictions());
+    }
+
+
+    // private helpers
+
+    private Restrictions newRestrictions() {
+        return new Restrictions(null, 10.0, ClusterixConstants.DEFAULT_MAX_MU_ERR, null, null);
+    }
+
+}
@@ -0,0 +1,226 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.Declination;
+import cz.muni.clusterix.entities.RightAscension;
+import cz.muni.clusterix.entities.StarCatalog;
+import cz.muni.clusterix.helpers.ClusterixConstants;
+import static java.lang.Math.*;
+
+/**
+ * Field mask that describes default stellar field segregation, i.e. stars
+ * within cluster radius are marked as "cluster + field", stars at distance up
+ * to outer radius are described as "field" stars. Membership of stars is
+ * decided by comparison of squared distance from the mask center and squared
+ * radiuses, ratio of areas is evaluated analytically. Mask cells are
+ * retrieved from shared MaskTemplate cache only if they are asked for, e.g.
+ * by getMask().
+ *
+ * Note, that results may differ from the ones of rasterised mask of the same
+ * density for stars close to the circles, as the raster decides membership by
+ * the center of the cell the star is under. Once cells are replaced by
+ * setMask(), the mask behaves as rasterised one, i.e. stars are classified
+ * and ratios are evaluated by the proposed cells.
+ *
+ * @author Tomas Sezima
+ */
+public class CircularFieldMask extends FieldMask {
+
+    // radiuses in arcsecs
+    private final float radius;
+    private final float outerRadius;
+    // TRUE if cells were replaced by setMask(), circles are ignored then
+    private volatile boolean rasterised;
+
+    /**
+     * Constructor. Mask is centered at given coordinates, its diameter is
+     * twice the outer radius.
+     *
+     * @param density Density of rasterised mask
+     * @param ra Right ascension of center of the mask
+     * @param dec Declination of center of the mask
+     * @param radius Cluster radius (arcmins)
+     * @param outerRadius Cluster outer radius (arcmins)
+     */
+    public CircularFieldMask(int density, RightAscension ra, Declination dec,
+            float radius, float outerRadius) {
+        super(density, outerRadius * 2 * ClusterixConstants.SEC_IN_MINUTE / density,
+                new CircularTemplate(density, toArcsecs(radius) / toArcsecs(outerRadius)), ra, dec);
+        this.radius = toArcsecs(radius);
+        this.outerRadius = toArcsecs(outerRadius);
+    }
+
+
+    // public helpers
+
+    /**
+     * Retrieves ratio between areas taken by proposed field types, evaluated
+     * from the circles rather than from mask cells.
+     *
+     * @param first First field type
+     * @param second Second field type
+     * @return Ration between areas marked as "first" and "second"
+     */
+    @Override
+    public float getRatio(FieldType first, FieldType second) {
+        if (rasterised) {
+            return super.getRatio(first, second);
+        }
+        double firstArea = getArea(first);
+        double secondArea = first != second ? getArea(second) : 0;
+        return secondArea > 0 ? (float) (firstArea / secondArea) : Float.NaN;
+    }
+
+    /**
+     * Replaces cells of 'this' mask, circles are not used for classification
+     * of stars and for ratios of areas afterwards.
+     *
+     * @param mask FieldType mask of density x density cells
+     */
+    @Override
+    public void setMask(FieldType[][] mask) {
+        super.setMask(mask);
+        rasterised = true;
+    }
+
+
+    // protected helpers
+
+    @Override
+    protected void classify(StarCatalog allStars, int from, int to, byte[] types, int offset) {
+        if (rasterised) {
+            super.classify(allStars, from, to, types, offset);
+            return;
+        }
+        float raCenter = getRightAscension().getDegrees();
+        float decCenter = getDeclination().getDegrees();
+        double radiusSquare = (double) radius * radius;
+        double outerRadiusSquare = (double) outerRadius * outerRadius;
+        float[] ras = allStars.getRas();
+        float[] decs = allStars.getDecs();
+        for (int i = from; i < to; i++) {
+            // distances in arcsecs, in the same projection the raster uses
+            double x = (decCenter - decs[i]) * ClusterixConstants.ARCSECS_IN_DEGREE;
+            double y = (raCenter - ras[i]) * ClusterixConstants.ARCSECS_IN_DEGREE;
+            double distanceSquare = x * x + y * y;
+            FieldType type = distanceSquare <= radiusSquare ? FieldType.CLUSTERFIELD :
+                    distanceSquare <= outerRadiusSquare ? FieldType.FIELD : FieldType.NONE;
+            types[offset + i - from] = (byte) type.ordinal();
+        }
+    }
+
+
+    // private helpers
+
+    private static float toArcsecs(float arcmins) {
+        return arcmins * ClusterixConstants.SEC_IN_MINUTE;
+    }
+
+    /**
+     * Retrieves area covered by given field type in arcsecs squared.
+     */
+    private double getArea(FieldType type) {
+        switch (type) {
+            case CLUSTERFIELD:
+                return PI * radius * radius;
+            case FIELD:
+                return PI * ((double) outerRadius * outerRadius - (double) radius * radius);
+            default:
+                double side = (double) getDensity() * getCellSize();
+                return side * side - PI * outerRadius * outerRadius;
+        }
+    }
+
+
+    // getters
+
+    /**
+     * Returns cluster radius in arcseconds.
+     *
+     * @return Radius in arcseconds
+     */
+    public float getRadius() {
+        return radius;
+    }
+
+    /**
+     * Returns outer radius in arcseconds.
+     *
+     * @return Outer radius in arcseconds
+     */
+    public float getOuterRadius() {
+        return outerRadius;
+    }
+
+
+    // equals and hashcode
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final CircularFieldMask other = (CircularFieldMask) obj;
+        if (this.getDensity() != other.getDensity()) {
+            return false;
+        }
+        if (Float.floatToIntBits(this.radius) != Float.floatToIntBits(other.radius)) {
+            return false;
+        }
+        if (Float.floatToIntBits(this.outerRadius) != Float.floatToIntBits(other.outerRadius)) {
+            return false;
+        }
+        if (this.ra != other.ra && (this.ra == null || !this.ra.equals(other.ra))) {
+            return false;
+        }
+        if (this.dec != other.dec && (this.dec == null || !this.dec.equals(other.dec))) {
+            return false;
+        }
+        if (this.rasterised || other.rasterised) {
+            return super.equals(obj);
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 5;
+        hash = 61 * hash + this.getDensity();
+        hash = 61 * hash + Float.floatToIntBits(this.radius);
+        hash = 61 * hash + Float.floatToIntBits(this.outerRadius);
+        hash = 61 * hash + (this.ra != null ? this.ra.hashCode() : 0);
+        hash = 61 * hash + (this.dec != null ? this.dec.hashCode() : 0);
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "CircularFieldMask{" + "matrixSize=" + getDensity() + ", radius=" + radius
+                + ", outerRadius=" + outerRadius + ", ra=" + ra + ", dec=" + dec + '}';
+    }
+
+
+    // private classes
+
+    /**
+     * Retrieves shared template whose cells are marked by their centers.
+     */
+    private static class CircularTemplate implements TemplateSource {
+
+        private final int density;
+        private final float radiusRatio;
+
+        public CircularTemplate(int density, float radiusRatio) {
+            this.density = density;
+            this.radiusRatio = radiusRatio;
+        }
+
+        @Override
+        public MaskTemplate get() {
+            return MaskTemplate.getCircular(density, radiusRatio);
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.StarCatalog;
+
+/**
+ * Strategy interface that describes engines able to evaluate empirical frequency
+ * function of given stars, i.e. to fill frequency function's grid with kernel
+ * density estimate of stars' proper motions. Engine to be used may be selected
+ * through Restrictions entity, exact kernel summation is used by default.
+ *
+ * @author Tomas Sezima
+ */
+public interface DensityEstimator {
+
+    /**
+     * Evaluates kernel density estimate of proper motions of given stars and stores
+     * it in the grid of proposed frequency function. Smoothing parameter of the
+     * function has to be already set, its grid is expected to be zeroed.
+     *
+     * @param function Frequency function to be populated
+     * @param stars Catalogue of stars that will be used to create frequency function
+     * @param restrictions User's restrictions, maximal proper motion has to be set
+     */
+    public void estimate(PmFrequency function, StarCatalog stars, Restrictions restrictions);
+
+}
@@ -0,0 +1,48 @@
+package cz.muni.clusterix.businesstier;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Grid whose values are kept in a direct (off-heap) buffer. Suitable for
+ * large grids that should not burden garbage collector.
+ *
+ * @author Tomas Sezima
+ */
+public class DirectGrid extends Grid {
+
+    private final FloatBuffer values;
+
+    /**
+     * Constructor. Creates zeroed grid.
+     *
+     * @param size Number of rows (and columns)
+     */
+    public DirectGrid(int size) {
+        super(size);
+        this.values = ByteBuffer.allocateDirect(size * size * (Float.SIZE / Byte.SIZE))
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    @Override
+    public float get(int index) {
+        return values.get(index);
+    }
+
+    @Override
+    void store(int index, float value) {
+        values.put(index, value);
+    }
+
+    @Override
+    public Grid copy() {
+        DirectGrid copy = new DirectGrid(size);
+        FloatBuffer source = values.duplicate();
+        source.clear();
+        copy.values.put(source);
+        copy.values.clear();
+        return copy;
+    }
+
+}
@@ -0,0 +1,74 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.StarCatalog;
+import static cz.muni.clusterix.helpers.Calc.*;
+import static cz.muni.clusterix.businesstier.PmFunction.CELLSIZE;
+import static java.lang.Math.*;
+
+/**
+ * Default density estimation engine. Value of each grid cell is evaluated as
+ * an exact sum of kernel contributions of all given stars.
+ *
+ * @author Tomas Sezima
+ */
+public class ExactDensityEstimator implements DensityEstimator {
+
+    @Override
+    public void estimate(PmFrequency function, StarCatalog stars, Restrictions restrictions) {
+        GridUnaryOperator kernelEst = new KernelEstimation(function.getValues().getSize() / 2,
+                function.getSmoothParam(), restrictions, stars);
+        function.applyUnaryOperator(kernelEst);
+    }
+
+
+    // private classes
+
+    /**
+     * Kernel functions can be arbitrary in shape, but for most applications
+     * radially symmetrical functions are preferred. In this thesis normal circular
+     * kernels are used of the following form:
+     */
+    private class KernelEstimation implements GridUnaryOperator {
+
+        private final int centralCoordinate;
+        private final double smoothParam;
+        private final KernelFunction kernel;
+        private final double maxMu;
+        private final double volume;
+        private final int numOfStars;
+        private final float[] muAlphas;
+        private final float[] muDeltas;
+
+        public KernelEstimation(int functionCenter, double smoothParam,
+                Restrictions restrictions, StarCatalog stars){
+            this.centralCoordinate = functionCenter;
+            this.smoothParam = smoothParam;
+            this.kernel = PmFrequency.getKernelOf(restrictions);
+            this.maxMu = restrictions.getMaxMu();
+            this.volume = 1.0 / (2 * PI * square(smoothParam));
+            this.numOfStars = stars.size();
+            this.muAlphas = stars.getMuAlphas();
+            this.muDeltas = stars.getMuDeltas();
+        }
+
+        @Override
+        public float apply(int x, int y, float functionValue) {
+
+            float result = 0;
+            int posX = centralCoordinate - x;
+            int posY = centralCoordinate - y;
+
+            if (hypot(posX * CELLSIZE, posY * CELLSIZE) < maxMu){
+                for (int s = 0; s < numOfStars; s++) {
+                    double dist = square(muAlphas[s] - posX * CELLSIZE)
+                            + square(muDeltas[s] - posY * CELLSIZE);
+                    result += volume * kernel.evaluate(dist / square(smoothParam));
+                }
+            }
+            return result;
+        }
+
+    }
+
+}
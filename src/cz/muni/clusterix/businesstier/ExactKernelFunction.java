@@ -0,0 +1,18 @@
+package cz.muni.clusterix.businesstier;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Default kernel function, exponential is evaluated by FastMath for each
+ * argument.
+ *
+ * @author Tomas Sezima
+ */
+public class ExactKernelFunction implements KernelFunction {
+
+    @Override
+    public double evaluate(double t) {
+        return FastMath.exp(-0.5 * t);
+    }
+
+}
@@ -0,0 +1,275 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.helpers.ClusterixConstants;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import org.apache.log4j.Logger;
+
+/**
+ * Execution configuration shared by proper motion functions. It holds executor
+ * that evaluates parallel parts of computations (operator application, density
+ * estimation), so that threads are reused rather than created on each call.
+ * Unless configured otherwise, default configuration backed by ForkJoinPool
+ * with one worker per available processor and row block partitioning is used.
+ * Applications embedding Clusterix in long-running services should release
+ * the executor by shutdown() (or shutdownDefault()) when done.
+ *
+ * @author Tomas Sezima
+ */
+public class ExecutionConfig {
+
+    private static final Logger log = Logger.getLogger(ExecutionConfig.class.getName());
+
+    // number of row blocks per task, finer blocks allow idle workers to steal work
+    private static final int BLOCKS_PER_TASK = 8;
+
+    /**
+     * Enumeration that describes how grid is split between parallel tasks.
+     * STRIDED - each task visits every row and processes each n-th column,
+     * ROW_BLOCKS - grid is split into contiguous row blocks that are balanced
+     * between workers by work stealing.
+     */
+    public enum Partitioning {
+        STRIDED,
+        ROW_BLOCKS
+    }
+
+    // configuration used by functions that were not configured explicitly
+    private static ExecutionConfig defaultConfig;
+
+    private final ExecutorService executor;
+    // number of tasks single operation is split to
+    private final int parallelism;
+    private final Partitioning partitioning;
+    // storage of newly created function grids
+    private Grid.Storage gridStorage = Grid.Storage.HEAP;
+
+    /**
+     * Constructor. Creates configuration backed by new ForkJoinPool.
+     *
+     * @param parallelism Number of worker threads, positive
+     */
+    public ExecutionConfig(int parallelism) {
+        this(new ForkJoinPool(parallelism), parallelism, Partitioning.ROW_BLOCKS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param executor Executor to be used, not NULL
+     * @param parallelism Number of tasks single operation is split to, positive
+     */
+    public ExecutionConfig(ExecutorService executor, int parallelism) {
+        this(executor, parallelism, Partitioning.ROW_BLOCKS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param executor Executor to be used, not NULL
+     * @param parallelism Number of tasks single operation is split to, positive
+     * @param partitioning Grid partitioning scheme, not NULL
+     */
+    public ExecutionConfig(ExecutorService executor, int parallelism, Partitioning partitioning) {
+        if (executor == null || parallelism < 1 || partitioning == null) {
+            throw new IllegalArgumentException("Execution configuration requires "
+                    + "executor, partitioning and positive parallelism.");
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.partitioning = partitioning;
+    }
+
+
+    // public helpers
+
+    /**
+     * Retrieves default configuration, it is created if it does not exist yet
+     * or if the previous one has been shut down.
+     *
+     * @return Default execution configuration
+     */
+    public static synchronized ExecutionConfig getDefault() {
+        if (defaultConfig == null || defaultConfig.isShutdown()) {
+            defaultConfig = new ExecutionConfig(ClusterixConstants.NUM_OF_AVAILABLE_PROCESSORS);
+        }
+        return defaultConfig;
+    }
+
+    /**
+     * Replaces default configuration. Previous default configuration is not
+     * shut down.
+     *
+     * @param config New default configuration, NULL resets to implicit one
+     */
+    public static synchronized void setDefault(ExecutionConfig config) {
+        defaultConfig = config;
+    }
+
+    /**
+     * Shuts down default configuration (if any). Next call of getDefault()
+     * creates new one.
+     */
+    public static synchronized void shutdownDefault() {
+        if (defaultConfig != null) {
+            defaultConfig.shutdown();
+            defaultConfig = null;
+        }
+    }
+
+    /**
+     * Executes given tasks and waits until all of them are done. Runtime
+     * exceptions thrown by tasks are propagated to the caller.
+     *
+     * @param tasks Tasks to be executed
+     */
+    public void invokeAll(Collection<? extends Callable<Void>> tasks) {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            futures.addAll(executor.invokeAll(tasks));
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            log.error("Program failed to wait for submitted tasks.");
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parallel execution was interrupted.", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("Parallel execution failed.", ex.getCause());
+        }
+    }
+
+    /**
+     * Processes rows [0, rows) by given processor split into contiguous row
+     * blocks. Blocks are balanced between workers by work stealing when
+     * executor is ForkJoinPool, otherwise they are queued to the executor and
+     * picked by whichever worker is free.
+     *
+     * @param rows Number of rows to be processed
+     * @param processor Row processor
+     */
+    public void invokeRowBlocks(int rows, RowProcessor processor) {
+        int blockSize = Math.max(1, rows / (parallelism * BLOCKS_PER_TASK));
+        if (executor instanceof ForkJoinPool) {
+            ((ForkJoinPool) executor).invoke(new RowBlockTask(processor, 0, rows, blockSize));
+        } else {
+            List<Callable<Void>> blocks = new ArrayList<Callable<Void>>();
+            for (int from = 0; from < rows; from += blockSize) {
+                blocks.add(new RowBlockCallable(processor, from, Math.min(from + blockSize, rows)));
+            }
+            invokeAll(blocks);
+        }
+    }
+
+    /**
+     * Initiates orderly shutdown of underlying executor, previously submitted
+     * tasks are finished.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+
+    // getters
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public Partitioning getPartitioning() {
+        return partitioning;
+    }
+
+    public Grid.Storage getGridStorage() {
+        return gridStorage;
+    }
+
+    /**
+     * Sets storage of grids created by functions that use 'this' configuration,
+     * e.g. DIRECT keeps large grids off-heap.
+     *
+     * @param gridStorage Grid storage, not NULL
+     */
+    public void setGridStorage(Grid.Storage gridStorage) {
+        if (gridStorage == null) {
+            throw new IllegalArgumentException("Grid storage has to be set.");
+        }
+        this.gridStorage = gridStorage;
+    }
+
+
+    // private classes
+
+    /**
+     * Recursively halves row range until it is small enough to be processed;
+     * halves that were not processed yet may be stolen by idle workers.
+     */
+    private static class RowBlockTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RowProcessor processor;
+        private final int fromRow;
+        private final int toRow;
+        private final int blockSize;
+
+        public RowBlockTask(RowProcessor processor, int fromRow, int toRow, int blockSize) {
+            this.processor = processor;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= blockSize) {
+                processor.process(fromRow, toRow);
+            } else {
+                int middle = (fromRow + toRow) >>> 1;
+                invokeAll(new RowBlockTask(processor, fromRow, middle, blockSize),
+                        new RowBlockTask(processor, middle, toRow, blockSize));
+            }
+        }
+    }
+
+    /**
+     * Adapts single row block to executors other than ForkJoinPool.
+     */
+    private static class RowBlockCallable implements Callable<Void> {
+
+        private final RowProcessor processor;
+        private final int fromRow;
+        private final int toRow;
+
+        public RowBlockCallable(RowProcessor processor, int fromRow, int toRow) {
+            this.processor = processor;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        public Void call() {
+            processor.process(fromRow, toRow);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.StarCatalog;
+import static cz.muni.clusterix.businesstier.PmFunction.CELLSIZE;
+import static java.lang.Math.*;
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+
+/**
+ * Density estimation engine that bins stars into the frequency function grid
+ * (linear, i.e. "cloud in cell" binning) and convolves the bins with the normal
+ * circular kernel using fast Fourier transform. As the kernel is separable, 2D
+ * convolution is performed as a row pass followed by a column pass of 1D
+ * convolutions. Computational complexity therefore does not depend on the number
+ * of stars, the result differs from the exact kernel sum by the binning error only.
+ *
+ * @author Tomas Sezima
+ */
+public class FftDensityEstimator implements DensityEstimator {
+
+    // kernel is truncated at KERNEL_CUTOFF * smoothParam, contributions beyond are negligible
+    private static final double KERNEL_CUTOFF = 8.0;
+
+    @Override
+    public void estimate(PmFrequency function, StarCatalog stars, Restrictions restrictions) {
+        Grid grid = function.getValues();
+        double smoothParam = function.getSmoothParam();
+        int size = grid.getSize();
+        int center = size / 2;
+
+        // bins are surrounded by margin so that kernel tails of the border stars are kept
+        int margin = (int) min(ceil(KERNEL_CUTOFF * smoothParam / CELLSIZE), size);
+        int binSize = size + 2 * margin;
+        int fftSize = Integer.highestOneBit(binSize) == binSize ?
+                binSize : Integer.highestOneBit(binSize) << 1;
+
+        double[][] bins = getBins(stars, binSize, center + margin);
+        double[][] kernel = getKernel(fftSize, margin, smoothParam,
+                PmFrequency.getKernelOf(restrictions));
+
+        // convolve rows, only columns covered by the grid are kept
+        double[][] rowPass = new double[binSize][];
+        for (int i = 0; i < binSize; i++) {
+            rowPass[i] = convolve(bins[i], kernel, margin, size);
+        }
+
+        // convolve columns and apply proper motion limitation
+        double[] column = new double[binSize];
+        for (int u = 0; u < size; u++) {
+            for (int i = 0; i < binSize; i++) {
+                column[i] = rowPass[i][u];
+            }
+            double[] convolved = convolve(column, kernel, margin, size);
+            for (int i = 0; i < size; i++) {
+                if (hypot((center - i) * CELLSIZE, (center - u) * CELLSIZE) < restrictions.getMaxMu()) {
+                    grid.store(grid.index(i, u), (float) convolved[i]);
+                } else grid.store(grid.index(i, u), 0);
+            }
+        }
+    }
+
+
+    // private helpers
+
+    /**
+     * Distributes stars into the bin grid; weight of each star is split between
+     * four nearest bins according to its distance from them.
+     *
+     * @param stars Stars to be binned
+     * @param binSize Size of the bin grid
+     * @param center Index of bin that corresponds to zero proper motion
+     * @return Bin grid
+     */
+    private double[][] getBins(StarCatalog stars, int binSize, int center) {
+        double[][] bins = new double[binSize][binSize];
+        float[] muAlphas = stars.getMuAlphas();
+        float[] muDeltas = stars.getMuDeltas();
+        for (int s = 0; s < stars.size(); s++) {
+            double x = center - muAlphas[s] / CELLSIZE;
+            double y = center - muDeltas[s] / CELLSIZE;
+            int x0 = (int) floor(x);
+            int y0 = (int) floor(y);
+            double xWeight = x - x0;
+            double yWeight = y - y0;
+            addToBin(bins, x0, y0, (1 - xWeight) * (1 - yWeight));
+            addToBin(bins, x0 + 1, y0, xWeight * (1 - yWeight));
+            addToBin(bins, x0, y0 + 1, (1 - xWeight) * yWeight);
+            addToBin(bins, x0 + 1, y0 + 1, xWeight * yWeight);
+        }
+        return bins;
+    }
+
+    private void addToBin(double[][] bins, int x, int y, double weight) {
+        if (x >= 0 && x < bins.length && y >= 0 && y < bins.length) {
+            bins[x][y] += weight;
+        }
+    }
+
+    /**
+     * Retrieves Fourier transform of 1D normal kernel sampled in grid cells.
+     * Kernel is stored in wrap-around order, i.e. negative offsets are placed
+     * at the end of the array.
+     *
+     * @param fftSize Transform length, power of two
+     * @param halfWidth Number of cells kernel spans in each direction
+     * @param smoothParam Gaussian dispersion
+     * @param kernelFunction Kernel function to be sampled
+     * @return Real and imaginary parts of transformed kernel
+     */
+    private double[][] getKernel(int fftSize, int halfWidth, double smoothParam,
+            KernelFunction kernelFunction) {
+        double[][] kernel = new double[2][fftSize];
+        double volume = 1.0 / (sqrt(2 * PI) * smoothParam);
+        for (int d = -halfWidth; d <= halfWidth; d++) {
+            double offset = d * CELLSIZE / smoothParam;
+            kernel[0][(d + fftSize) % fftSize] = volume * kernelFunction.evaluate(offset * offset);
+        }
+        FastFourierTransformer.transformInPlace(kernel, DftNormalization.STANDARD, TransformType.FORWARD);
+        return kernel;
+    }
+
+    /**
+     * Convolves given signal with transformed kernel and retrieves values
+     * that correspond to frequency function's grid.
+     *
+     * @param signal Signal spanning whole bin grid
+     * @param kernel Transformed kernel
+     * @param margin Offset of the frequency function's grid in the bin grid
+     * @param size Number of values to be retrieved
+     * @return Convolved signal
+     */
+    private double[] convolve(double[] signal, double[][] kernel, int margin, int size) {
+        int fftSize = kernel[0].length;
+        double[][] data = new double[2][fftSize];
+        System.arraycopy(signal, 0, data[0], 0, signal.length);
+        FastFourierTransformer.transformInPlace(data, DftNormalization.STANDARD, TransformType.FORWARD);
+        for (int i = 0; i < fftSize; i++) {
+            double re = data[0][i] * kernel[0][i] - data[1][i] * kernel[1][i];
+            double im = data[0][i] * kernel[1][i] + data[1][i] * kernel[0][i];
+            data[0][i] = re;
+            data[1][i] = im;
+        }
+        FastFourierTransformer.transformInPlace(data, DftNormalization.STANDARD, TransformType.INVERSE);
+
+        double[] result = new double[size];
+        System.arraycopy(data[0], margin, result, 0, size);
+        return result;
+    }
+
+}
@@ -1,13 +1,14 @@
 package cz.muni.clusterix.businesstier;
 
 import cz.muni.clusterix.entities.Declination;
-import cz.muni.clusterix.entities.Point;
 import cz.muni.clusterix.entities.RightAscension;
 import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.StarCatalog;
 import cz.muni.clusterix.entities.WithCoordinates;
 import cz.muni.clusterix.helpers.ClusterixConstants;
 import static java.lang.Math.*;
-import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
 import org.apache.log4j.Logger;
@@ -23,6 +24,8 @@ import org.apache.log4j.Logger;
 public class FieldMask implements WithCoordinates{
         
     private static final Logger log = Logger.getLogger(FieldMask.class.getName());
+    // catalogues with fewer stars are classified by the calling thread
+    private static final int PARALLEL_CLASSIFICATION_THRESHOLD = 64 * 1024;
     
     /**
      * Enumeration that describes allowed values of stellar field types.
@@ -37,7 +40,11 @@ public class FieldMask implements WithCoordinates{
     private int density;
     // size of individual cells in arcseconds
     private float cellSize;    
-    // actual mask
+    // actual mask cells, possibly shared with other masks, NULL until they are needed
+    private volatile MaskTemplate template;
+    // source of cells of masks created without them, NULL once cells are known
+    private TemplateSource templateSource;
+    // compatibility view of the mask, materialised lazily
     private FieldType[][] mask;
     //center coordinates of mask (so that we can fit it to a stellar field)
     RightAscension ra;
@@ -57,6 +64,69 @@ public class FieldMask implements WithCoordinates{
      */
     public FieldMask(int density, float cellsize, FieldType[][] mask,
             RightAscension ra, Declination dec){
+        this(density, cellsize, ra, dec);
+        setMask(mask);
+    }    
+
+    /**
+     * Constructor. Mask is described by two bit sets, cell [i][u] is marked by
+     * bit i * density + u. Cells marked by none of them are NONE cells.
+     * Central coordinates are related to the mask itself, not the underlaying
+     * cluster.
+     *
+     * @param density Mask density
+     * @param cellsize Size of single cell in arcseconds
+     * @param clusterField Cells marked as CLUSTERFIELD
+     * @param field Cells marked as FIELD, disjoint with 'clusterField'
+     * @param ra Right ascension of center of the mask
+     * @param dec Declination of center of the mask     
+     */
+    public FieldMask(int density, float cellsize, BitSet clusterField, BitSet field,
+            RightAscension ra, Declination dec){
+        this(density, cellsize, new MaskTemplate(density, clusterField, field), ra, dec);
+    }    
+
+    /**
+     * Constructor. Mask cells are given by template, that may be shared with
+     * other masks. Central coordinates are related to the mask itself, not the
+     * underlaying cluster.
+     *
+     * @param density Mask density
+     * @param cellsize Size of single cell in arcseconds
+     * @param template Mask cells
+     * @param ra Right ascension of center of the mask
+     * @param dec Declination of center of the mask     
+     */
+    public FieldMask(int density, float cellsize, MaskTemplate template,
+            RightAscension ra, Declination dec){
+        this(density, cellsize, ra, dec);
+        if (template.getDensity() != density) {
+            throw new IllegalArgumentException("Template density does not match mask density.");
+        }
+        this.template = template;
+    }    
+
+    /**
+     * Constructor of masks whose cells are evaluated on demand. Template
+     * source is called once, when cells are accessed for the first time,
+     * unless they are proposed by setMask() before.
+     *
+     * @param density Mask density
+     * @param cellsize Size of single cell in arcseconds
+     * @param templateSource Source of mask cells, not NULL
+     * @param ra Right ascension of center of the mask
+     * @param dec Declination of center of the mask     
+     */
+    protected FieldMask(int density, float cellsize, TemplateSource templateSource,
+            RightAscension ra, Declination dec){
+        this(density, cellsize, ra, dec);
+        if (templateSource == null) {
+            throw new IllegalArgumentException("Template source has to be proposed.");
+        }
+        this.templateSource = templateSource;
+    }    
+
+    private FieldMask(int density, float cellsize, RightAscension ra, Declination dec){
         if (density % 2 == 0) {
             //mask has to be symetric in order to ease calculations   
             log.error("An attempt was made to create mask with even size.");
@@ -64,7 +134,6 @@ public class FieldMask implements WithCoordinates{
         }
         this.density = density;
         this.cellSize = cellsize;
-        this.mask = mask;
         this.ra = ra;
         this.dec = dec;
     }    
@@ -78,22 +147,53 @@ public class FieldMask implements WithCoordinates{
      * @return Stars laying under relevant cells
      */
     public Set<Star> getMarkedStars(Set<Star> allStars, Set<FieldType> markers) {
-        int matrixMean = density / 2;
         Set<Star> selectedStars = new HashSet<Star>();
         if(allStars != null){
-            for (Star star : allStars) {
-                // retrieve star possition in the mask
-                Point pos = getMaskCoords(star);
-                // check what mask value corresponds to retrieved point                                                
-                if (abs(pos.getX()) <= matrixMean && abs(pos.getY()) <= matrixMean
-                        && markers.contains(mask[matrixMean + pos.getX()][matrixMean + pos.getY()])) {
-                    selectedStars.add(star);
-                }
-            }
+            selectedStars.addAll(getMarkedStars(StarCatalog.of(allStars), markers).toStars());
         }        
         return selectedStars;
     
     }
+
+    /**
+     * Retrieves all stars of given catalogue whose coordinates are under the
+     * mask cells that are marked by proposed marker.
+     * 
+     * @param allStars Catalogue of stars
+     * @param markers Set of mask's markers
+     * @return Catalogue of stars laying under relevant cells
+     */
+    public StarCatalog getMarkedStars(StarCatalog allStars, Set<FieldType> markers) {
+        return classify(allStars, null).getStars(markers);
+    }
+
+    /**
+     * Classifies all stars of given catalogue by the mask cells their
+     * coordinates are under, stars out of the mask are NONE stars. Mask
+     * coordinates of each star are evaluated once, so that all field types
+     * may be retrieved from the result without further passes. Large
+     * catalogues are classified in parallel.
+     *
+     * @param allStars Catalogue of stars
+     * @param config Execution configuration, default one is used if NULL
+     * @return Classification of given stars
+     */
+    public Classification classify(final StarCatalog allStars, ExecutionConfig config) {
+        final byte[] types = new byte[allStars.size()];
+        RowProcessor classifier = new RowProcessor() {
+            @Override
+            public void process(int fromRow, int toRow) {
+                classify(allStars, fromRow, toRow, types, fromRow);
+            }
+        };
+        if (types.length < PARALLEL_CLASSIFICATION_THRESHOLD) {
+            classifier.process(0, types.length);
+        } else {
+            config = config != null ? config : ExecutionConfig.getDefault();
+            config.invokeRowBlocks(types.length, classifier);
+        }
+        return new Classification(allStars, types);
+    }
     
 
     /**
@@ -104,40 +204,100 @@ public class FieldMask implements WithCoordinates{
      * @return Ration between volumes of mask cells marked as "first" and "second"
      */
     public float getRatio(FieldType first, FieldType second){
-        int firstMarkers = 0;
-        int secondMarkers = 0;
-        for (int i = 0; i < density; i++) {
-            for (int u = 0; u < density; u++) {
-                if (mask[i][u] == first) {
-                    firstMarkers++;
-                }else if (mask[i][u] == second) {
-                    secondMarkers++;
-                }
-            }
-        }        
-        
+        int firstMarkers = getCount(first);
+        int secondMarkers = first != second ? getCount(second) : 0;
         return secondMarkers != 0 ? (float) firstMarkers / secondMarkers : Float.NaN;    
     }        
 
+    /**
+     * Retrieves field type of given mask cell.
+     *
+     * @param i Row of the cell
+     * @param u Column of the cell
+     * @return Field type of the cell
+     */
+    public FieldType getType(int i, int u) {
+        return getTemplate().getType(i * density + u);
+    }
+
+    /**
+     * Retrieves number of mask cells of given field type.
+     *
+     * @param type Field type
+     * @return Number of cells marked by 'type'
+     */
+    public int getCount(FieldType type) {
+        return getTemplate().getCount(type);
+    }
+
+    
+    // protected helpers
+
+    /**
+     * Stores field type ordinals of catalogue's stars [from, to) into 'types'.
+     * Stars are looked up in mask cells, subclasses may decide membership
+     * directly from star coordinates.
+     *
+     * @param allStars Catalogue of stars
+     * @param from First star to be classified
+     * @param to Star following the last classified one
+     * @param types Field type ordinals, type of star 'from' is stored at 'offset'
+     * @param offset Position of the first stored type
+     */
+    protected void classify(StarCatalog allStars, int from, int to, byte[] types, int offset) {
+        MaskTemplate cells = getTemplate();
+        int matrixMean = density / 2;
+        float raCenter = ra.getDegrees();
+        float decCenter = dec.getDegrees();
+        float[] ras = allStars.getRas();
+        float[] decs = allStars.getDecs();
+        for (int i = from; i < to; i++) {
+            // retrieve star possition in the mask, axes are inverted so that they reflect mask's axes
+            int x = getMaskCoord(decCenter, decs[i]);
+            int y = getMaskCoord(raCenter, ras[i]);
+            // check what mask value corresponds to retrieved point                                                
+            FieldType type = FieldType.NONE;
+            if (abs(x) <= matrixMean && abs(y) <= matrixMean) {
+                type = cells.getType((matrixMean + x) * density + matrixMean + y);
+            }
+            types[offset + i - from] = (byte) type.ordinal();
+        }
+    }
+
     
     // private helpers
     
     /**
-     * Retrieve coordinates of mask cell that hosts object defined by
-     * parameter. Note, that X axes of 'this' mask is represented by second array 
-     * parameter and vice versa, i.e. mask[0][1] will return second element in 
-     * first mask's row, which coresponds to x = 1, y = 0 coordinates.
+     * Retrieve coordinate of mask cell that hosts object in one axis. Note,
+     * that X axes of 'this' mask is represented by second array parameter and
+     * vice versa, i.e. mask[0][1] will return second element in first mask's
+     * row, which coresponds to x = 1, y = 0 coordinates.
      *
-     * @param WithCoordinates Object whose coordinates are to be found
-     * @return Coordinates of mask cell star belongs to
+     * @param center Mask's center coordinate in degrees
+     * @param coordinate Object's coordinate in degrees
+     * @return Coordinate of mask cell object belongs to
      */
-    private Point getMaskCoords(WithCoordinates object) {
-        float xDiff = ra.getDegrees() - object.getRightAscension().getDegrees();
-        float yDiff = dec.getDegrees() - object.getDeclination().getDegrees();        
-        int x = (int) round(xDiff * (float) ClusterixConstants.ARCSECS_IN_DEGREE / cellSize);
-        int y = (int) round(yDiff * (float) ClusterixConstants.ARCSECS_IN_DEGREE/ cellSize);                
-        // invert axes so that they reflect mask's axes
-        return new Point(y, x);
+    private int getMaskCoord(float center, float coordinate) {
+        float diff = center - coordinate;
+        return (int) round(diff * (float) ClusterixConstants.ARCSECS_IN_DEGREE / cellSize);
+    }
+
+    private MaskTemplate getTemplate() {
+        MaskTemplate cells = template;
+        if (cells == null) {
+            synchronized (this) {
+                cells = template;
+                if (cells == null) {
+                    cells = templateSource.get();
+                    if (cells.getDensity() != density) {
+                        throw new IllegalStateException("Template density does not match mask density.");
+                    }
+                    template = cells;
+                    templateSource = null;
+                }
+            }
+        }
+        return cells;
     }
 
     
@@ -162,31 +322,185 @@ public class FieldMask implements WithCoordinates{
         return cellSize;
     }    
 
+    /**
+     * Returns half of the side of the square covered by the mask, i.e. stars
+     * whose coordinates differ from the mask center by more than this in any
+     * axis are never marked as CLUSTERFIELD or FIELD.
+     *
+     * @return Half of the mask side in arcseconds
+     */
+    public float getHalfSize() {
+        return density * cellSize / 2;
+    }
+
     public void setDeclination(Declination dec) {
         this.dec = dec;
     }
 
+    /**
+     * Retrieves mask as a matrix of field types. The matrix is created on the
+     * first call, its modifications are not reflected by 'this' mask.
+     *
+     * @return FieldType mask
+     */
     public FieldType[][] getMask() {
+        if (mask == null) {
+            FieldType[][] view = new FieldType[density][density];
+            for (int i = 0; i < density; i++) {
+                for (int u = 0; u < density; u++) {
+                    view[i][u] = getType(i, u);
+                }
+            }
+            mask = view;
+        }
         return mask;
     }
 
+    /**
+     * Replaces cells of 'this' mask, cells of masks evaluated on demand are
+     * not evaluated anymore.
+     *
+     * @param mask FieldType mask of density x density cells
+     */
     public void setMask(FieldType[][] mask) {
-        this.mask = mask;
+        BitSet newClusterField = new BitSet(density * density);
+        BitSet newField = new BitSet(density * density);
+        for (int i = 0; i < density; i++) {
+            for (int u = 0; u < density; u++) {
+                if (mask[i][u] == FieldType.CLUSTERFIELD) {
+                    newClusterField.set(i * density + u);
+                } else if (mask[i][u] == FieldType.FIELD) {
+                    newField.set(i * density + u);
+                }
+            }
+        }
+        synchronized (this) {
+            this.template = new MaskTemplate(density, newClusterField, newField);
+            this.templateSource = null;
+            this.mask = null;
+        }
     }
 
     public int getDensity() {
         return density;
     }
 
-    public void setDensity(int matrixSize) {
-        this.density = matrixSize;
-    }    
-
     public void setRightAscension(RightAscension ra) {
         this.ra = ra;
     }
 
     
+    // public classes
+
+    /**
+     * Source of cells of masks that evaluate them on demand, see protected
+     * constructor of FieldMask.
+     */
+    public interface TemplateSource {
+
+        /**
+         * Creates (or retrieves shared) mask cells.
+         *
+         * @return Mask cells of density of the mask
+         */
+        public MaskTemplate get();
+    }
+
+    /**
+     * Result of FieldMask.classify, i.e. field type of each star of classified
+     * catalogue. Stars of any combination of field types may be retrieved
+     * without classifying the catalogue again.
+     */
+    public static class Classification {
+
+        private final StarCatalog stars;
+        // field type ordinal of each star
+        private final byte[] types;
+        // number of stars of each field type
+        private final int[] counts;
+
+        private Classification(StarCatalog stars, byte[] types) {
+            this.stars = stars;
+            this.types = types;
+            this.counts = new int[FieldType.values().length];
+            for (byte type : types) {
+                counts[type]++;
+            }
+        }
+
+        /**
+         * Retrieves indices of classified catalogue's stars of given field
+         * type, in ascending order.
+         *
+         * @param type Field type
+         * @return Indices of relevant stars
+         */
+        public int[] getIndices(FieldType type) {
+            int[] indices = new int[counts[type.ordinal()]];
+            int count = 0;
+            byte ordinal = (byte) type.ordinal();
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == ordinal) {
+                    indices[count++] = i;
+                }
+            }
+            return indices;
+        }
+
+        /**
+         * Retrieves catalogue of stars of given field types, the order of
+         * classified catalogue is kept.
+         *
+         * @param markers Set of field types
+         * @return Catalogue of relevant stars
+         */
+        public StarCatalog getStars(Set<FieldType> markers) {
+            boolean[] marked = new boolean[counts.length];
+            int size = 0;
+            for (FieldType marker : markers) {
+                marked[marker.ordinal()] = true;
+                size += counts[marker.ordinal()];
+            }
+            int[] indices = new int[size];
+            int count = 0;
+            for (int i = 0; i < types.length; i++) {
+                if (marked[types[i]]) {
+                    indices[count++] = i;
+                }
+            }
+            return stars.select(indices, count);
+        }
+
+        /**
+         * Retrieves catalogue of stars of given field type.
+         *
+         * @param type Field type
+         * @return Catalogue of relevant stars
+         */
+        public StarCatalog getStars(FieldType type) {
+            return getStars(EnumSet.of(type));
+        }
+
+        /**
+         * Retrieves field type of i-th star of classified catalogue.
+         *
+         * @param i Star index
+         * @return Field type of the star
+         */
+        public FieldType getType(int i) {
+            return FieldType.values()[types[i]];
+        }
+
+        public int getCount(FieldType type) {
+            return counts[type.ordinal()];
+        }
+
+        public StarCatalog getClassifiedStars() {
+            return stars;
+        }
+    }
+
+    
     //equals and hashcode
     
     @Override
@@ -204,7 +518,7 @@ public class FieldMask implements WithCoordinates{
         if (Double.doubleToLongBits(this.cellSize) != Double.doubleToLongBits(other.cellSize)) {
             return false;
         }
-        if (!Arrays.deepEquals(this.mask, other.mask)) {
+        if (!this.getTemplate().equals(other.getTemplate())) {
             return false;
         }
         if (this.ra != other.ra && (this.ra == null || !this.ra.equals(other.ra))) {
@@ -221,7 +535,7 @@ public class FieldMask implements WithCoordinates{
         int hash = 3;
         hash = 47 * hash + this.density;
         hash = 47 * hash + (int) (Double.doubleToLongBits(this.cellSize) ^ (Double.doubleToLongBits(this.cellSize) >>> 32));
-        hash = 47 * hash + Arrays.deepHashCode(this.mask);
+        hash = 47 * hash + this.getTemplate().hashCode();
         hash = 47 * hash + (this.ra != null ? this.ra.hashCode() : 0);
         hash = 47 * hash + (this.dec != null ? this.dec.hashCode() : 0);
         return hash;
@@ -230,7 +544,8 @@ public class FieldMask implements WithCoordinates{
     @Override
     public String toString() {
         return "FieldMask{" + "matrixSize=" + density + ", cellSize=" + cellSize + 
-                ", mask=" + mask + ", ra=" + ra + ", dec=" + dec + '}';
+                ", clusterField=" + getCount(FieldType.CLUSTERFIELD) + 
+                ", field=" + getCount(FieldType.FIELD) + ", ra=" + ra + ", dec=" + dec + '}';
     }    
 
 }
@@ -11,11 +11,21 @@ public interface Function {
     
     /**
      * Empirical bivariate function may be described by matrix; this method is reponsible
-     * for retrieval of such a representation.
+     * for retrieval of such a representation. Kept for compatibility, returned matrix
+     * is a copy of function values.
      * 
      * @return Matrix that describes function
      */
     public float[][] getGrid();
+
+    /**
+     * Retrieves grid that holds values of 'this' function. Changes of the grid
+     * are reflected by the function, including memoised reductions, since
+     * every write to the grid changes its version.
+     * 
+     * @return Grid that describes function
+     */
+    public Grid getValues();
     
     /**
      * Retrieves size of single matrix cell. I.e. each cell has
@@ -33,6 +43,14 @@ public interface Function {
      * @param context Evaluation context in form of map
      */
     public void applyUnaryOperator(UnaryOperator operator, Map<String, Object> context);
+
+    /**
+     * Applies given primitive unary operator on each value of 'this' function.
+     * Unlike applyUnaryOperator(UnaryOperator, Map), no objects are allocated per cell.
+     * 
+     * @param operator Operator to be applied
+     */
+    public void applyUnaryOperator(GridUnaryOperator operator);
     
     /**
      * Applies binary operator on each value of 'this' function and function given as parameter.
@@ -44,5 +62,28 @@ public interface Function {
      * @param context Evaluation context in form of map
      */
     public void applyBinaryOperator(Function secondFunction, BinaryOperator operator, Map<String, Object> context);
+
+    /**
+     * Applies given primitive binary operator on each value of 'this' function and
+     * function given as parameter. Unlike applyBinaryOperator(Function, BinaryOperator, Map),
+     * no objects are allocated per cell.
+     * 
+     * @param secondFunction Second argument of given binary operator
+     * @param operator Operator to be applied
+     */
+    public void applyBinaryOperator(Function secondFunction, GridBinaryOperator operator);
+
+    /**
+     * Reduces values of 'this' function by given reducer. Rows are reduced in
+     * parallel, their sums are combined pairwise in a fixed tree, so the result
+     * does not depend on the number of threads. Result is memoised per grid
+     * version, i.e. repeated reductions by the same reducer instance are free
+     * until the grid is modified.
+     *
+     * @param reducer Reducer, it is shared by all threads and identifies memoised result
+     * @param numOfSums Number of sums maintained by the reducer
+     * @return Sums of all rows
+     */
+    public double[] reduce(GridReducer reducer, int numOfSums);
     
 }
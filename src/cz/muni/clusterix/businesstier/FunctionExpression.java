@@ -0,0 +1,323 @@
+package cz.muni.clusterix.businesstier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lazy cell-wise expression over functions. Operations like scale() or
+ * subtract() do not touch any values, they only build expression tree (DAG,
+ * expressions may be shared) whose leaves are functions. The expression is
+ * evaluated as late as possible, i.e. when its values are stored into a grid
+ * or reduced, in a single pass over rows of leaf grids. Each row is
+ * evaluated in small row buffers, so intermediate results never leave the
+ * cache and no intermediate grid is allocated.
+ *
+ * Leaves are read when the expression is evaluated, not when it is created.
+ *
+ * @author Tomas Sezima
+ */
+public abstract class FunctionExpression {
+
+    // number of rows (and columns) of all leaves
+    protected final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of rows (and columns) of evaluated values
+     */
+    protected FunctionExpression(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Creates expression whose values are values of given function.
+     *
+     * @param function Function, not NULL
+     * @return Leaf expression
+     */
+    public static FunctionExpression of(Function function) {
+        return new Leaf(function.getValues());
+    }
+
+
+    // public helpers
+
+    /**
+     * Multiplies values by given factor, see PmFunction.scale.
+     *
+     * @param scaleFactor Scale factor
+     * @return Scaled expression
+     */
+    public FunctionExpression scale(final float scaleFactor) {
+        return map(new GridUnaryOperator() {
+            @Override
+            public float apply(int x, int y, float value) {
+                return value * scaleFactor;
+            }
+        });
+    }
+
+    /**
+     * Subtracts values of given expression, see PmFunction.subtract.
+     *
+     * @param toSubtract Expression of the same size
+     * @return Difference of expressions
+     */
+    public FunctionExpression subtract(FunctionExpression toSubtract) {
+        return combine(toSubtract, new GridBinaryOperator() {
+            @Override
+            public float apply(int x, int y, float firstValue, float secondValue) {
+                return firstValue - secondValue;
+            }
+        });
+    }
+
+    /**
+     * Divides values by values of given expression, see PmFunction.divideBy.
+     *
+     * @param denominator Expression of the same size
+     * @return Ratio of expressions, NaN where denominator is 0
+     */
+    public FunctionExpression divideBy(FunctionExpression denominator) {
+        return combine(denominator, new GridBinaryOperator() {
+            @Override
+            public float apply(int x, int y, float firstValue, float secondValue) {
+                return secondValue != 0 ? firstValue / secondValue : Float.NaN;
+            }
+        });
+    }
+
+    /**
+     * Replaces values that are not above given treshold by 0.
+     *
+     * @param treshold Treshold
+     * @return Thresholded expression
+     */
+    public FunctionExpression threshold(final double treshold) {
+        return map(new GridUnaryOperator() {
+            @Override
+            public float apply(int x, int y, float value) {
+                return value > treshold ? value : 0;
+            }
+        });
+    }
+
+    /**
+     * Applies given operator on each value.
+     *
+     * @param operator Operator, it is shared by all threads evaluating the expression
+     * @return Mapped expression
+     */
+    public FunctionExpression map(GridUnaryOperator operator) {
+        return new Unary(this, operator);
+    }
+
+    /**
+     * Applies given operator on each value of 'this' and given expression.
+     *
+     * @param second Second argument of the operator, expression of the same size
+     * @param operator Operator, it is shared by all threads evaluating the expression
+     * @return Combined expression
+     */
+    public FunctionExpression combine(FunctionExpression second, GridBinaryOperator operator) {
+        if (size != second.size) {
+            throw new IllegalArgumentException("Can not process functions with different matrixes.");
+        }
+        return new Binary(this, second, operator);
+    }
+
+    /**
+     * Evaluates 'this' expression into given grid. The grid may be one of the
+     * leaves, as each row is evaluated before it is stored.
+     *
+     * @param target Grid of the same size
+     * @param config Execution configuration, default one is used if NULL
+     */
+    public void evaluateInto(final Grid target, ExecutionConfig config) {
+        if (target.getSize() != size) {
+            throw new IllegalArgumentException("Can not process functions with different matrixes.");
+        }
+        config = config != null ? config : ExecutionConfig.getDefault();
+        config.invokeRowBlocks(size, new RowProcessor() {
+            @Override
+            public void process(int fromRow, int toRow) {
+                Rows rows = new Rows(size);
+                float[] row = rows.take();
+                for (int x = fromRow; x < toRow; x++) {
+                    evaluate(x, row, rows);
+                    if (target instanceof HeapGrid) {
+                        System.arraycopy(row, 0, ((HeapGrid) target).getValues(), x * size, size);
+                    } else {
+                        int rowStart = target.index(x, 0);
+                        for (int y = 0; y < size; y++) {
+                            target.store(rowStart + y, row[y]);
+                        }
+                    }
+                }
+            }
+        });
+        target.modified();
+    }
+
+    /**
+     * Evaluates 'this' expression into new grid.
+     *
+     * @param storage Storage of the grid
+     * @param config Execution configuration, default one is used if NULL
+     * @return Grid holding values of the expression
+     */
+    public Grid evaluate(Grid.Storage storage, ExecutionConfig config) {
+        Grid grid = Grid.allocate(size, storage);
+        evaluateInto(grid, config);
+        return grid;
+    }
+
+    /**
+     * Reduces values of 'this' expression without storing them. Rows are
+     * reduced in parallel, their sums are combined pairwise in a fixed tree
+     * afterwards, so the result does not depend on the number of threads.
+     *
+     * @param reducer Reducer, it is shared by all threads evaluating the expression
+     * @param numOfSums Number of sums maintained by the reducer
+     * @param config Execution configuration, default one is used if NULL
+     * @return Sums of all rows
+     */
+    public double[] reduce(final GridReducer reducer, int numOfSums, ExecutionConfig config) {
+        final double[][] rowSums = new double[size][numOfSums];
+        config = config != null ? config : ExecutionConfig.getDefault();
+        config.invokeRowBlocks(size, new RowProcessor() {
+            @Override
+            public void process(int fromRow, int toRow) {
+                Rows rows = new Rows(size);
+                float[] row = rows.take();
+                for (int x = fromRow; x < toRow; x++) {
+                    evaluate(x, row, rows);
+                    reducer.reduce(x, row, rowSums[x]);
+                }
+            }
+        });
+        for (int stride = 1; stride < size; stride *= 2) {
+            for (int x = 0; x + stride < size; x += 2 * stride) {
+                for (int i = 0; i < numOfSums; i++) {
+                    rowSums[x][i] += rowSums[x + stride][i];
+                }
+            }
+        }
+        return size > 0 ? rowSums[0] : new double[numOfSums];
+    }
+
+
+    // protected helpers
+
+    /**
+     * Evaluates single row of 'this' expression.
+     *
+     * @param x Row number
+     * @param row Buffer the row is stored to
+     * @param rows Buffers for intermediate rows
+     */
+    protected abstract void evaluate(int x, float[] row, Rows rows);
+
+
+    // getters
+
+    public int getSize() {
+        return size;
+    }
+
+
+    // protected classes
+
+    /**
+     * Stack of row buffers owned by a single thread.
+     */
+    protected static class Rows {
+
+        private final int size;
+        private final List<float[]> free = new ArrayList<float[]>();
+
+        public Rows(int size) {
+            this.size = size;
+        }
+
+        public float[] take() {
+            return free.isEmpty() ? new float[size] : free.remove(free.size() - 1);
+        }
+
+        public void release(float[] row) {
+            free.add(row);
+        }
+    }
+
+
+    // private classes
+
+    private static class Leaf extends FunctionExpression {
+
+        private final Grid grid;
+
+        public Leaf(Grid grid) {
+            super(grid.getSize());
+            this.grid = grid;
+        }
+
+        @Override
+        protected void evaluate(int x, float[] row, Rows rows) {
+            if (grid instanceof HeapGrid) {
+                System.arraycopy(((HeapGrid) grid).getValues(), x * size, row, 0, size);
+            } else {
+                int rowStart = grid.index(x, 0);
+                for (int y = 0; y < size; y++) {
+                    row[y] = grid.get(rowStart + y);
+                }
+            }
+        }
+    }
+
+    private static class Unary extends FunctionExpression {
+
+        private final FunctionExpression argument;
+        private final GridUnaryOperator operator;
+
+        public Unary(FunctionExpression argument, GridUnaryOperator operator) {
+            super(argument.size);
+            this.argument = argument;
+            this.operator = operator;
+        }
+
+        @Override
+        protected void evaluate(int x, float[] row, Rows rows) {
+            argument.evaluate(x, row, rows);
+            for (int y = 0; y < size; y++) {
+                row[y] = operator.apply(x, y, row[y]);
+            }
+        }
+    }
+
+    private static class Binary extends FunctionExpression {
+
+        private final FunctionExpression first;
+        private final FunctionExpression second;
+        private final GridBinaryOperator operator;
+
+        public Binary(FunctionExpression first, FunctionExpression second, GridBinaryOperator operator) {
+            super(first.size);
+            this.first = first;
+            this.second = second;
+            this.operator = operator;
+        }
+
+        @Override
+        protected void evaluate(int x, float[] row, Rows rows) {
+            first.evaluate(x, row, rows);
+            float[] secondRow = rows.take();
+            second.evaluate(x, secondRow, rows);
+            for (int y = 0; y < size; y++) {
+                row[y] = operator.apply(x, y, row[y], secondRow[y]);
+            }
+            rows.release(secondRow);
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+package cz.muni.clusterix.businesstier;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Square matrix of float values that describes empirical bivariate function.
+ * Values are stored in a single row-major block, i.e. cell [x][y] is kept at
+ * index x * getSize() + y. Compared to float[][] this saves one object header
+ * and one pointer dereference per row and allows grids to be kept off-heap.
+ *
+ * @author Tomas Sezima
+ */
+public abstract class Grid {
+
+    /**
+     * Enumeration that describes allowed grid storages.
+     * HEAP - values are kept in float[] array,
+     * DIRECT - values are kept in direct (off-heap) buffer.
+     */
+    public enum Storage {
+        HEAP,
+        DIRECT
+    }
+
+    // number of rows (and columns)
+    protected final int size;
+    // incremented whenever values are modified, see modified()
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of rows (and columns), not negative
+     */
+    protected Grid(int size) {
+        if (size < 0 || (long) size * size > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException("Grid of size " + size + " could not be created.");
+        }
+        this.size = size;
+    }
+
+    /**
+     * Creates zeroed grid.
+     *
+     * @param size Number of rows (and columns)
+     * @param storage Storage to be used, not NULL
+     * @return New grid
+     */
+    public static Grid allocate(int size, Storage storage) {
+        return storage == Storage.DIRECT ? new DirectGrid(size) : new HeapGrid(size);
+    }
+
+    /**
+     * Creates heap grid holding copy of given matrix.
+     *
+     * @param matrix Square matrix
+     * @return New grid
+     */
+    public static Grid of(float[][] matrix) {
+        Grid grid = new HeapGrid(matrix.length);
+        for (int i = 0; i < matrix.length; i++) {
+            if (matrix[i].length != matrix.length) {
+                throw new IllegalArgumentException("Grid has to be created from square matrix.");
+            }
+            for (int u = 0; u < matrix.length; u++) {
+                grid.store(grid.index(i, u), matrix[i][u]);
+            }
+        }
+        return grid;
+    }
+
+
+    // public helpers
+
+    /**
+     * Retrieves value at given row-major index.
+     *
+     * @param index Index of the cell
+     * @return Cell value
+     */
+    public abstract float get(int index);
+
+    /**
+     * Sets value at given row-major index and marks 'this' grid as modified.
+     *
+     * @param index Index of the cell
+     * @param value Value to be set
+     */
+    public final void set(int index, float value) {
+        store(index, value);
+        modified();
+    }
+
+    /**
+     * Creates grid of the same size and storage holding copy of 'this' values.
+     *
+     * @return Grid copy
+     */
+    public abstract Grid copy();
+
+    public float get(int x, int y) {
+        return get(index(x, y));
+    }
+
+    public void set(int x, int y, float value) {
+        set(index(x, y), value);
+    }
+
+    /**
+     * Retrieves row-major index of cell [x][y].
+     *
+     * @param x Row
+     * @param y Column
+     * @return Index of the cell
+     */
+    public int index(int x, int y) {
+        return x * size + y;
+    }
+
+    /**
+     * Materializes 'this' grid as a new matrix. Changes of returned matrix are
+     * not reflected by 'this' grid and vice versa.
+     *
+     * @return Matrix holding copy of grid values
+     */
+    public float[][] toArray() {
+        float[][] matrix = new float[size][size];
+        for (int i = 0; i < size; i++) {
+            int rowStart = index(i, 0);
+            for (int u = 0; u < size; u++) {
+                matrix[i][u] = get(rowStart + u);
+            }
+        }
+        return matrix;
+    }
+
+
+    // package private helpers
+
+    /**
+     * Sets value at given row-major index without marking 'this' grid as
+     * modified. Used by bulk writers (operators, density estimators,
+     * expressions) that call modified() once they are done, so that inner
+     * loops do not touch shared version counter.
+     *
+     * @param index Index of the cell
+     * @param value Value to be set
+     */
+    abstract void store(int index, float value);
+
+    /**
+     * Marks values of 'this' grid as modified, i.e. invalidates reductions
+     * memoised for previous versions.
+     */
+    void modified() {
+        version.incrementAndGet();
+    }
+
+
+    // getters
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getLength() {
+        return size * size;
+    }
+
+    /**
+     * Retrieves version of values, it changes with every set() and with every
+     * bulk modification.
+     *
+     * @return Version of values
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+
+    // equals and hashcode, grids with equal values are equal regardless of storage
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < getLength(); i++) {
+            hash = 31 * hash + Float.floatToIntBits(get(i));
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !(obj instanceof Grid)) {
+            return false;
+        }
+        final Grid other = (Grid) obj;
+        if (this.size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < getLength(); i++) {
+            if (Float.floatToIntBits(get(i)) != Float.floatToIntBits(other.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + "size=" + size + '}';
+    }
+
+}
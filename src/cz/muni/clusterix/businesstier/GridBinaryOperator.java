@@ -0,0 +1,24 @@
+package cz.muni.clusterix.businesstier;
+
+/**
+ * Primitive-specialised binary operator. Unlike BinaryOperator it receives cell
+ * coordinates directly, parameters are expected to be captured by the operator
+ * once (e.g. as final fields) rather than looked up for each cell. Applying
+ * such an operator therefore does not allocate nor box any values.
+ *
+ * @author Tomas Sezima
+ */
+public interface GridBinaryOperator {
+
+    /**
+     * Applies operation to values of cell [x][y] of both functions.
+     *
+     * @param x Row of the cell
+     * @param y Column of the cell
+     * @param firstValue Cell value of the first function
+     * @param secondValue Cell value of the second function
+     * @return New cell value of the first function
+     */
+    public float apply(int x, int y, float firstValue, float secondValue);
+
+}
@@ -0,0 +1,23 @@
+package cz.muni.clusterix.businesstier;
+
+/**
+ * Reduction of grid values into a fixed number of sums, e.g. sum of squares
+ * of negative values together with their count. Rows are reduced separately,
+ * sums of rows are combined pairwise afterwards (row 2k with row 2k + 1, then
+ * results of neighbouring pairs and so on), the tree does not depend on the
+ * number of threads, so neither does the result.
+ *
+ * @author Tomas Sezima
+ */
+public interface GridReducer {
+
+    /**
+     * Adds values of single row to given sums.
+     *
+     * @param x Row number
+     * @param values Values of the row
+     * @param sums Sums of the row, zeroed before the call
+     */
+    public void reduce(int x, float[] values, double[] sums);
+
+}
@@ -0,0 +1,23 @@
+package cz.muni.clusterix.businesstier;
+
+/**
+ * Primitive-specialised unary operator. Unlike UnaryOperator it receives cell
+ * coordinates directly, parameters are expected to be captured by the operator
+ * once (e.g. as final fields) rather than looked up for each cell. Applying
+ * such an operator therefore does not allocate nor box any values.
+ *
+ * @author Tomas Sezima
+ */
+public interface GridUnaryOperator {
+
+    /**
+     * Applies operation to value of cell [x][y].
+     *
+     * @param x Row of the cell
+     * @param y Column of the cell
+     * @param value Cell value
+     * @return New cell value
+     */
+    public float apply(int x, int y, float value);
+
+}
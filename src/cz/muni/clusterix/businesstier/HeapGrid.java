@@ -0,0 +1,58 @@
+package cz.muni.clusterix.businesstier;
+
+import java.util.Arrays;
+
+/**
+ * Grid whose values are kept in a single float[] array.
+ *
+ * @author Tomas Sezima
+ */
+public class HeapGrid extends Grid {
+
+    private final float[] values;
+
+    /**
+     * Constructor. Creates zeroed grid.
+     *
+     * @param size Number of rows (and columns)
+     */
+    public HeapGrid(int size) {
+        super(size);
+        this.values = new float[size * size];
+    }
+
+    private HeapGrid(int size, float[] values) {
+        super(size);
+        this.values = values;
+    }
+
+    @Override
+    public float get(int index) {
+        return values[index];
+    }
+
+    @Override
+    void store(int index, float value) {
+        values[index] = value;
+    }
+
+    @Override
+    public Grid copy() {
+        return new HeapGrid(size, Arrays.copyOf(values, values.length));
+    }
+
+
+    // getters
+
+    /**
+     * Retrieves underlying row-major array, changes are reflected by 'this'
+     * grid. Writers have to call modified() once they are done, therefore the
+     * array is not exposed outside of the package.
+     *
+     * @return Grid values
+     */
+    float[] getValues() {
+        return values;
+    }
+
+}
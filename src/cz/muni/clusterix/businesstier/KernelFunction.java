@@ -0,0 +1,23 @@
+package cz.muni.clusterix.businesstier;
+
+/**
+ * Normal circular kernel used by density estimation engines. Argument of the
+ * kernel is squared distance of a star from a cell in smoothParam^2 units,
+ * i.e. dist / smoothParam^2, so that single implementation serves any
+ * bandwidth. Normalization (kernel volume) is applied by engines. Kernel to
+ * be used may be selected through Restrictions entity, exact exponential is
+ * used by default.
+ *
+ * @author Tomas Sezima
+ */
+public interface KernelFunction {
+
+    /**
+     * Evaluates exp(-0.5 * t).
+     *
+     * @param t Squared distance in smoothParam^2 units, non-negative
+     * @return Kernel value
+     */
+    public double evaluate(double t);
+
+}
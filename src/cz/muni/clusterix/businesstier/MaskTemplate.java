@@ -0,0 +1,166 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.businesstier.FieldMask.FieldType;
+import static java.lang.Math.*;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable cells of a field mask, i.e. the shape of the mask regardless of
+ * its position and scale. Single template may be shared by any number of
+ * masks. Templates of circular masks depend only on mask density and ratio of
+ * cluster radius to outer radius, they are kept in a bounded cache shared by
+ * all masks, so that masks of clusters of the same shape do not rasterise
+ * cells again.
+ *
+ * @author Tomas Sezima
+ */
+public final class MaskTemplate {
+
+    // maximal number of cached circular templates, the least recently used one is dropped
+    private static final int CACHE_CAPACITY = 32;
+    private static final Map<Long, MaskTemplate> circularTemplates =
+            new LinkedHashMap<Long, MaskTemplate>(CACHE_CAPACITY * 4 / 3 + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, MaskTemplate> eldest) {
+                    return size() > CACHE_CAPACITY;
+                }
+            };
+
+    private final int density;
+    // cell [i][u] is stored at bit i * density + u, NONE cells have no bit set
+    private final BitSet clusterField;
+    private final BitSet field;
+    // number of cells of each field type, indexed by FieldType ordinal
+    private final int[] counts;
+
+    /**
+     * Constructor. Given bit sets are copied.
+     *
+     * @param density Mask density
+     * @param clusterField Cells marked as CLUSTERFIELD
+     * @param field Cells marked as FIELD, disjoint with 'clusterField'
+     */
+    public MaskTemplate(int density, BitSet clusterField, BitSet field) {
+        if (clusterField.intersects(field)) {
+            throw new IllegalArgumentException("Cell can not be marked as both cluster field and field.");
+        }
+        this.density = density;
+        this.clusterField = (BitSet) clusterField.clone();
+        this.field = (BitSet) field.clone();
+        this.counts = new int[FieldType.values().length];
+        counts[FieldType.CLUSTERFIELD.ordinal()] = clusterField.cardinality();
+        counts[FieldType.FIELD.ordinal()] = field.cardinality();
+        counts[FieldType.NONE.ordinal()] = density * density
+                - counts[FieldType.CLUSTERFIELD.ordinal()] - counts[FieldType.FIELD.ordinal()];
+    }
+
+    /**
+     * Retrieves template of circular mask. Cells whose centers are within
+     * inner circle are marked as CLUSTERFIELD, cells whose centers are within
+     * outer circle (inscribed in the mask) as FIELD.
+     *
+     * @param density Mask density
+     * @param radiusRatio Ratio of inner circle radius to outer one
+     * @return Shared template
+     */
+    public static MaskTemplate getCircular(int density, float radiusRatio) {
+        Long key = ((long) density << 32) | (Float.floatToIntBits(radiusRatio) & 0xffffffffL);
+        synchronized (circularTemplates) {
+            MaskTemplate template = circularTemplates.get(key);
+            if (template != null) {
+                return template;
+            }
+        }
+        // rasterise outside of the lock, concurrent misses create equal templates
+        MaskTemplate template = createCircular(density, radiusRatio);
+        synchronized (circularTemplates) {
+            circularTemplates.put(key, template);
+        }
+        return template;
+    }
+
+
+    // public helpers
+
+    /**
+     * Retrieves field type of given cell.
+     *
+     * @param cell Index of the cell, i * density + u for cell [i][u]
+     * @return Field type of the cell
+     */
+    public FieldType getType(int cell) {
+        return clusterField.get(cell) ? FieldType.CLUSTERFIELD :
+                field.get(cell) ? FieldType.FIELD : FieldType.NONE;
+    }
+
+    /**
+     * Retrieves number of cells of given field type.
+     *
+     * @param type Field type
+     * @return Number of cells marked by 'type'
+     */
+    public int getCount(FieldType type) {
+        return counts[type.ordinal()];
+    }
+
+
+    // private helpers
+
+    private static MaskTemplate createCircular(int density, float radiusRatio) {
+        BitSet clusterField = new BitSet(density * density);
+        BitSet field = new BitSet(density * density);
+        int center = density / 2;
+        // radiuses in cells
+        double outerRadius = density / 2.0;
+        double radius = radiusRatio * outerRadius;
+        for (int i = 0; i < density; i++) {
+            for (int u = 0; u < density; u++) {
+                // mask is symetrical, there is no need to invert X and Y coordinates
+                double distance = hypot(i - center, u - center);
+                if (distance <= radius) {
+                    clusterField.set(i * density + u);
+                } else if (distance <= outerRadius) {
+                    field.set(i * density + u);
+                }
+            }
+        }
+        return new MaskTemplate(density, clusterField, field);
+    }
+
+
+    // getters
+
+    public int getDensity() {
+        return density;
+    }
+
+
+    // equals and hashcode
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final MaskTemplate other = (MaskTemplate) obj;
+        if (this.density != other.density) {
+            return false;
+        }
+        return this.clusterField.equals(other.clusterField) && this.field.equals(other.field);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 23 * hash + this.density;
+        hash = 23 * hash + this.clusterField.hashCode();
+        hash = 23 * hash + this.field.hashCode();
+        return hash;
+    }
+
+}
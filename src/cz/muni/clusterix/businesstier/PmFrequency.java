@@ -3,13 +3,10 @@ package cz.muni.clusterix.businesstier;
 import cz.muni.clusterix.helpers.Calc;
 import cz.muni.clusterix.entities.Restrictions;
 import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.StarCatalog;
 import static cz.muni.clusterix.helpers.Calc.*;
-import static cz.muni.clusterix.businesstier.PmFunction.CELLSIZE;
-import cz.muni.clusterix.entities.ExecutionContext;
-import cz.muni.clusterix.entities.Point;
 import static java.lang.Math.*;
 import java.util.Set;
-import org.apache.commons.math3.util.FastMath;
 import org.apache.log4j.Logger;
 
 /**
@@ -23,6 +20,8 @@ import org.apache.log4j.Logger;
 public class PmFrequency extends PmFunction {
 
     private static final Logger log = Logger.getLogger(FieldMask.class.getName());
+    // shared instance, so that gamma is memoised
+    private static final NegativeValues NEGATIVE_VALUES = new NegativeValues();
 
     // gaussian dispersion
     private final double smoothParam;
@@ -34,15 +33,39 @@ public class PmFrequency extends PmFunction {
      * @param restrictions User's restrictions, not NULL
      */
     public PmFrequency(Set<Star> stars, Restrictions restrictions){
-        super(restrictions);
+        this(stars, restrictions, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stars Stars that will be used to create frequency function
+     * @param restrictions User's restrictions, not NULL
+     * @param config Execution configuration, default one is used if NULL
+     */
+    public PmFrequency(Set<Star> stars, Restrictions restrictions, ExecutionConfig config){
+        this(StarCatalog.of(stars), restrictions, config);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stars Catalogue of stars that will be used to create frequency function
+     * @param restrictions User's restrictions, not NULL
+     * @param config Execution configuration, default one is used if NULL
+     */
+    public PmFrequency(StarCatalog stars, Restrictions restrictions, ExecutionConfig config){
+        super(restrictions, config);
         
         // check user's restrictions
         smoothParam = restrictions.getSmoothParam() == null ? 
                 Calc.getSmoothParam(stars) : restrictions.getSmoothParam();
         
         //evaluate empirical FF using normal circular kernel        
-        UnaryOperator kernelEst = new KernelEstimation(function.length / 2, restrictions, stars);
-        super.applyUnaryOperator(kernelEst, null);
+        DensityEstimator estimator = restrictions.getEstimator() != null ?
+                restrictions.getEstimator() : new ExactDensityEstimator();
+        estimator.estimate(this, stars, restrictions);
+        function.modified();
     }
 
     /**
@@ -56,30 +79,46 @@ public class PmFrequency extends PmFunction {
         super(alreadyCreated);
         this.smoothParam = smoothParam;
     }
+
+    /**
+     * Constructor. Given grid is shared rather than copied.
+     *
+     * @param alreadyCreated Frequency function representation
+     * @param smoothParam Gaussian dispersion value
+     */
+    public PmFrequency(Grid alreadyCreated, double smoothParam) {
+        super(alreadyCreated);
+        this.smoothParam = smoothParam;
+    }
     
 
     /**
      * Mean error of distribution is estimated as a mean of it's negative
-     * values. Straightforward operations like this does not have to be 
-     * parallelized (thread handling may be more time consuming than actual
-     * computation logic).
+     * values. Values are reduced in parallel, the result is memoised until
+     * the grid is modified.
      *
      * @return Mean err (gamma) of 'this' frequency distribution
      */
     public double getGamma() {
-        double err = 0;
-        int num = 0;
-        for (float[] row : this.function) {
-            for (int u = 0; u < row.length; u++) {
-                if (row[u] < 0) {
-                    err += square(row[u]);
-                    num++;
-                }
-            }
-        }
-        return num != 0 ? sqrt(err / num) : num;
+        double[] stats = reduce(NEGATIVE_VALUES, NegativeValues.SUMS);
+        double num = stats[NegativeValues.COUNT];
+        return num != 0 ? sqrt(stats[NegativeValues.SQUARES] / num) : num;
     }     
 
+
+    // package private helpers
+
+    /**
+     * Retrieves kernel function requested by given restrictions, exact one is
+     * used if not set. Used by density estimation engines.
+     *
+     * @param restrictions User's restrictions
+     * @return Kernel function
+     */
+    static KernelFunction getKernelOf(Restrictions restrictions) {
+        return restrictions.getKernel() != null ? restrictions.getKernel() : new ExactKernelFunction();
+    }
+
     
     // getters            
     
@@ -88,47 +127,6 @@ public class PmFrequency extends PmFunction {
     }
 
     
-    // private classes 
-    
-    
-    /**
-     * Kernel functions can be arbitrary in shape, but for most applications
-     * radially symmetrical functions are preferred. In this thesis normal circular
-     * kernels are used of the following form:
-     */
-    private class KernelEstimation implements UnaryOperator {
-        
-        private final int centralCoordinate;
-        private final Restrictions restrictions;
-        private final Set<Star> stars;
-        
-        public KernelEstimation(int functionCenter, Restrictions restrictions, Set<Star> stars){
-            this.centralCoordinate = functionCenter;
-            this.restrictions = restrictions;
-            this.stars = stars;
-        }
-
-        @Override
-        public float apply(float functionValue, ExecutionContext context) {            
-            
-            float result = 0;
-            Point pos = new Point(centralCoordinate - context.getCurrentXcoord(), 
-                    centralCoordinate - context.getCurrentYcoord());
-            
-            if (hypot(pos.getX() * CELLSIZE, pos.getY() * CELLSIZE) < restrictions.getMaxMu()){                    
-                for (Star star : stars) {
-                    double volume = 1.0 / (2 * PI * square(smoothParam));
-                    double dist = square(star.getProperMotion().getMuAlpha() - pos.getX() * CELLSIZE)
-                            + square(star.getProperMotion().getMuDelta() - pos.getY() * CELLSIZE);
-                    result += volume * FastMath.exp(-0.5 * (dist / square(smoothParam)));
-                }
-            }
-            return result;
-        }
-
-    }        
-    
-
     //hashcode, equals and clone
     
     /**
@@ -137,22 +135,35 @@ public class PmFrequency extends PmFunction {
      */    
     @Override
     public PmFrequency clone(){
-        // copy array
-        float[][] gridClone = new float[this.function.length][this.function.length];        
-        PmFrequency clone = new PmFrequency(gridClone, smoothParam);   
-        
-        BinaryOperator copyOperator = new BinaryOperator() {                        
-            @Override
-            public float apply(float firstFunctionValue, float secondFunctionValue, 
-                    ExecutionContext context) {
-                return secondFunctionValue;
-            }                                    
-        };
-                                
-        clone.applyBinaryOperator(this, copyOperator, null);                                            
+        // copy grid
+        PmFrequency clone = new PmFrequency(function.copy(), smoothParam);   
+        clone.setExecutionConfig(executionConfig);
         return clone;
     }
         
     // ancestor's equals and hascode are satisfactory...
+
+
+    // private classes
+
+    /**
+     * Gathers sum of squares and count of negative values.
+     */
+    private static class NegativeValues implements GridReducer {
+
+        private static final int SQUARES = 0;
+        private static final int COUNT = 1;
+        private static final int SUMS = 2;
+
+        @Override
+        public void reduce(int x, float[] values, double[] sums) {
+            for (float value : values) {
+                if (value < 0) {
+                    sums[SQUARES] += square(value);
+                    sums[COUNT]++;
+                }
+            }
+        }
+    }
         
 }
@@ -2,12 +2,12 @@ package cz.muni.clusterix.businesstier;
 
 import cz.muni.clusterix.entities.ExecutionContext;
 import cz.muni.clusterix.entities.Restrictions;
-import cz.muni.clusterix.helpers.ClusterixConstants;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import org.apache.log4j.Logger;
 
 /**
@@ -24,14 +24,29 @@ public class PmFunction implements Function{
     // grid size 0.08 masyear^-1 is well below the propper motion errors, this
     // value should be ideal for algoritm purposses
     protected static final double CELLSIZE = 0.08; //masyear^-1        
-    protected float[][] function;
+    // memoised reductions are dropped once there are more of them
+    private static final int MAX_MEMOISED_REDUCTIONS = 16;
+    protected Grid function;
+    // executor configuration, default one is used if not set
+    protected ExecutionConfig executionConfig;
+    // results of reductions by reducer instance, guarded by itself
+    private final Map<GridReducer, Reduction> reductions = new IdentityHashMap<GridReducer, Reduction>();
 
     /**
      * Constructor.
      * 
-     * @param function already created matrix
+     * @param function already created matrix, its values are copied
      */
     public PmFunction(float[][] function) {
+        this.function = Grid.of(function);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param function already created grid, it is shared rather than copied
+     */
+    public PmFunction(Grid function) {
         this.function = function;
     }
     
@@ -41,10 +56,20 @@ public class PmFunction implements Function{
      * @param restrictions  restrictions, proper motion limitation has to be set
      */
     public PmFunction(Restrictions restrictions){
+        this(restrictions, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param restrictions  restrictions, proper motion limitation has to be set
+     * @param config Execution configuration, default one is used if NULL
+     */
+    public PmFunction(Restrictions restrictions, ExecutionConfig config){
         if(restrictions != null && restrictions.getMaxMu() != null){
-            this.function = new float
-                    [2 * (int) Math.ceil(restrictions.getMaxMu() / CELLSIZE)]
-                    [2 * (int) Math.ceil(restrictions.getMaxMu() / CELLSIZE)];
+            this.executionConfig = config;
+            this.function = Grid.allocate(2 * (int) Math.ceil(restrictions.getMaxMu() / CELLSIZE),
+                    getExecutionConfig().getGridStorage());
         }else throw new IllegalArgumentException("Restrictions entity proposed to "
               + "PmFunction constructor has to have 'maximal motion' property set.");
         
@@ -58,19 +83,15 @@ public class PmFunction implements Function{
      *
      * @param scaleFactor Scale factor
      */
-    public void scale(float scaleFactor) {
-        Map<String, Object> params = new HashMap<String, Object>();
-        params.put(ClusterixConstants.SCALE_PARAM, scaleFactor);
-                
-        UnaryOperator scale = new UnaryOperator() {
+    public void scale(final float scaleFactor) {
+        GridUnaryOperator scale = new GridUnaryOperator() {
             @Override
-            public float apply(float functionValue, ExecutionContext context) {
-                float scaleParam = (Float) context.getParameters().get(ClusterixConstants.SCALE_PARAM);
-                return functionValue * scaleParam;
+            public float apply(int x, int y, float value) {
+                return value * scaleFactor;
             }
         };        
         
-        applyUnaryOperator(scale, params);
+        applyUnaryOperator(scale);
     }
 
     /**
@@ -81,19 +102,19 @@ public class PmFunction implements Function{
      */
     public void subtract(Function toSubtract) {
         
-        if(this.getGrid().length != toSubtract.getGrid().length){
+        if(this.function.getSize() != toSubtract.getValues().getSize()){
             throw new IllegalArgumentException("An attempt was made to subtract "
                     + "two functions with different matrix sizes.");
         }
         
-        BinaryOperator subtraction = new BinaryOperator() {
+        GridBinaryOperator subtraction = new GridBinaryOperator() {
             @Override
-            public float apply(float firstFunctionValue, float secondFunctionValue, ExecutionContext context) {                
-                return firstFunctionValue - secondFunctionValue;
+            public float apply(int x, int y, float firstValue, float secondValue) {                
+                return firstValue - secondValue;
             }
         };
         
-        applyBinaryOperator(toSubtract, subtraction, null);
+        applyBinaryOperator(toSubtract, subtraction);
     }
 
     /**
@@ -103,188 +124,494 @@ public class PmFunction implements Function{
      */
     public void divideBy(Function denominator){
         
-        if(this.getGrid().length != denominator.getGrid().length){
+        if(this.function.getSize() != denominator.getValues().getSize()){
             throw new IllegalArgumentException("An attempt was made to subtract "
                     + "two functions with different matrix sizes.");
         }
         
-        BinaryOperator division = new BinaryOperator() {
+        GridBinaryOperator division = new GridBinaryOperator() {
             @Override
-            public float apply(float firstFunctionValue, float secondFunctionValue, ExecutionContext context) {
-                return secondFunctionValue != 0 ? firstFunctionValue / secondFunctionValue : Float.NaN;
+            public float apply(int x, int y, float firstValue, float secondValue) {
+                return secondValue != 0 ? firstValue / secondValue : Float.NaN;
             }
         };
         
-        applyBinaryOperator(denominator, division, null);
+        applyBinaryOperator(denominator, division);
     }
     
 
     /**
      * Handles parallel application of given operator. First function will be
      * modified by applying given binary operator on each cell of both
-     * functions.
+     * functions. Operator is bridged to GridBinaryOperator, each task uses its
+     * own execution context. Functions of the contexts are copies of both
+     * functions taken once, before the operation starts.
      *
      * @param secondFunction Function to be used as second argument of opperation
      * @param operation Operator to be applied
      * @param context Operation context         
      */
     @Override
-    public void applyBinaryOperator(Function secondFunction, 
-            BinaryOperator operation, Map<String, Object> context){
-        // assert function grids have the same dimension.
-        if (this.function.length != secondFunction.getGrid().length) {
-            log.error("An attempt was made to process two functions with different matrix sizes.");
-            throw new IllegalArgumentException("Can not process functions with different matrixes.");
-        }
-            
-        int cores = ClusterixConstants.NUM_OF_AVAILABLE_PROCESSORS;
-        BinaryOperationExecutor[] executors = new BinaryOperationExecutor[cores];
-
-        // Split the kernel estimation between all available processors
-        for (int i = 0; i < cores; i++) {
-            executors[i] = new BinaryOperationExecutor(i, cores, 
-                    this.function, secondFunction.getGrid(), operation, context);
-            executors[i].start();
-        }
+    public void applyBinaryOperator(final Function secondFunction, 
+            final BinaryOperator operation, final Map<String, Object> context){
+        final List<float[][]> functions = getSnapshot(function, secondFunction.getValues());
+        applyBinary(secondFunction, new OperatorSupplier<GridBinaryOperator>() {
+            @Override
+            public GridBinaryOperator get() {
+                return new BinaryOperatorBridge(operation, 
+                        new ExecutionContext(0, 0, functions, context));
+            }
+        });
+    }
 
-        // Wait until the work is done and then continue in the processing
-        for (int i = 0; i < cores; i++) {
-            try {
-                executors[i].join();
-            } catch (InterruptedException ex) {
-                log.error("Program failed to handle join of used threads.");
+    /**
+     * Handles parallel application of given primitive operator. First function
+     * will be modified by applying given binary operator on each cell of both
+     * functions.
+     *
+     * @param secondFunction Function to be used as second argument of opperation
+     * @param operation Operator to be applied
+     */
+    @Override
+    public void applyBinaryOperator(Function secondFunction, final GridBinaryOperator operation){
+        applyBinary(secondFunction, new OperatorSupplier<GridBinaryOperator>() {
+            @Override
+            public GridBinaryOperator get() {
+                return operation;
             }
-        }        
+        });
     }
         
     
     /**
      * Handles parallel application of given operator. Each cell of 'this' function
-     * will be modified by applying given unary operator.         
+     * will be modified by applying given unary operator. Operator is bridged to
+     * GridUnaryOperator, each task uses its own execution context. Function of
+     * the contexts is a copy of 'this' function taken once, before the
+     * operation starts.
      *     
      * @param operator Operator to be applyed
      * @param context Operation context     
      */
     @Override
-    public void applyUnaryOperator(UnaryOperator operator, 
-        Map<String, Object> context){                    
-        
-        int cores = ClusterixConstants.NUM_OF_AVAILABLE_PROCESSORS;
-        UnaryOperationExecutor[] executors = new UnaryOperationExecutor[cores];
-
-        // Split the kernel estimation between all available processors
-        for (int i = 0; i < cores; i++) {
-            executors[i] = new UnaryOperationExecutor(i, cores, 
-                    this.function, operator, context);
-            executors[i].start();
+    public void applyUnaryOperator(final UnaryOperator operator, 
+        final Map<String, Object> context){                    
+        final List<float[][]> functions = getSnapshot(function);
+        applyUnary(new OperatorSupplier<GridUnaryOperator>() {
+            @Override
+            public GridUnaryOperator get() {
+                return new UnaryOperatorBridge(operator, 
+                        new ExecutionContext(0, 0, functions, context));
+            }
+        });
+    }
+
+    /**
+     * Handles parallel application of given primitive operator. Each cell of
+     * 'this' function will be modified by applying given unary operator.
+     *     
+     * @param operator Operator to be applyed
+     */
+    @Override
+    public void applyUnaryOperator(final GridUnaryOperator operator){
+        applyUnary(new OperatorSupplier<GridUnaryOperator>() {
+            @Override
+            public GridUnaryOperator get() {
+                return operator;
+            }
+        });
+    }
+
+    /**
+     * Reduces values of 'this' function in parallel, result is memoised per
+     * grid version. Reducers are told apart by identity, i.e. statistics that
+     * are gathered repeatedly should use a shared reducer instance.
+     *
+     * @param reducer Reducer, it is shared by all threads and identifies memoised result
+     * @param numOfSums Number of sums maintained by the reducer
+     * @return Sums of all rows, the array may be modified by the caller
+     */
+    @Override
+    public double[] reduce(GridReducer reducer, int numOfSums) {
+        Grid grid = function;
+        long version = grid.getVersion();
+        synchronized (reductions) {
+            Reduction memoised = reductions.get(reducer);
+            if (memoised != null && memoised.isValidFor(grid, version, numOfSums)) {
+                return memoised.sums.clone();
+            }
+        }
+        double[] sums = FunctionExpression.of(this).reduce(reducer, numOfSums, getExecutionConfig());
+        synchronized (reductions) {
+            if (reductions.size() >= MAX_MEMOISED_REDUCTIONS) {
+                reductions.clear();
+            }
+            reductions.put(reducer, new Reduction(grid, version, sums.clone()));
+        }
+        return sums;
+    }
+
+
+    // package private helpers
+
+    /**
+     * Applies given operator on rows [fromRow, toRow) of given grid in the
+     * calling thread. Inner loop does not allocate any objects.
+     *
+     * @param grid Grid to be modified
+     * @param operator Operator to be applied
+     * @param fromRow First row to be processed
+     * @param toRow Row following the last processed one
+     */
+    static void applyToRows(Grid grid, GridUnaryOperator operator, int fromRow, int toRow) {
+        int size = grid.getSize();
+        if (grid instanceof HeapGrid) {
+            // direct array access allows JIT to optimize the loop
+            float[] values = ((HeapGrid) grid).getValues();
+            for (int i = fromRow; i < toRow; i++) {
+                int rowStart = i * size;
+                for (int u = 0; u < size; u++) {
+                    values[rowStart + u] = operator.apply(i, u, values[rowStart + u]);
+                }
+            }
+        } else {
+            for (int i = fromRow; i < toRow; i++) {
+                int rowStart = grid.index(i, 0);
+                for (int u = 0; u < size; u++) {
+                    grid.store(rowStart + u, operator.apply(i, u, grid.get(rowStart + u)));
+                }
+            }
         }
+    }
 
-        // Wait until the work is done and then continue in the processing
-        for (int i = 0; i < cores; i++) {
-            try {
-                executors[i].join();
-            } catch (InterruptedException ex) {
-                log.error("Program failed to handle join of used threads.");
+    /**
+     * Applies given operator on rows [fromRow, toRow) of given grids in the
+     * calling thread, first grid is modified. Inner loop does not allocate any
+     * objects.
+     *
+     * @param first Grid to be modified
+     * @param second Second argument of the operator
+     * @param operator Operator to be applied
+     * @param fromRow First row to be processed
+     * @param toRow Row following the last processed one
+     */
+    static void applyToRows(Grid first, Grid second, GridBinaryOperator operator, 
+            int fromRow, int toRow) {
+        int size = first.getSize();
+        if (first instanceof HeapGrid && second instanceof HeapGrid) {
+            // direct array access allows JIT to optimize the loop
+            float[] firstValues = ((HeapGrid) first).getValues();
+            float[] secondValues = ((HeapGrid) second).getValues();
+            for (int i = fromRow; i < toRow; i++) {
+                int rowStart = i * size;
+                for (int u = 0; u < size; u++) {
+                    firstValues[rowStart + u] = operator.apply(i, u, 
+                            firstValues[rowStart + u], secondValues[rowStart + u]);
+                }
+            }
+        } else {
+            for (int i = fromRow; i < toRow; i++) {
+                int rowStart = first.index(i, 0);
+                for (int u = 0; u < size; u++) {
+                    first.store(rowStart + u, operator.apply(i, u, 
+                            first.get(rowStart + u), second.get(rowStart + u)));
+                }
             }
         }
-   
+    }
+
+
+    /**
+     * Retrieves the largest distance of columns from the center whose cells
+     * of given row are within maximal proper motion, -1 if there is no such
+     * cell. Cell is within maximal proper motion if hypot of its proper
+     * motions is below it, the same condition is evaluated at the border, so
+     * that row scans give exactly the cells that per-cell checks give.
+     *
+     * @param posX Distance of the row from the center
+     * @param maxMu Maximal proper motion
+     * @param size Number of columns of the grid
+     * @return Reach of the row, at most 'size'
+     */
+    static int getReach(int posX, double maxMu, int size) {
+        double rest = maxMu * maxMu - (posX * CELLSIZE) * (posX * CELLSIZE);
+        int reach = rest > 0 ? (int) (Math.sqrt(rest) / CELLSIZE) : -1;
+        while (reach >= 0 && !(Math.hypot(posX * CELLSIZE, reach * CELLSIZE) < maxMu)) {
+            reach--;
+        }
+        while (reach < size && Math.hypot(posX * CELLSIZE, (reach + 1) * CELLSIZE) < maxMu) {
+            reach++;
+        }
+        return reach;
+    }
+
+
+    // private helpers
+
+    /**
+     * Materializes given grids for execution contexts of legacy operators.
+     * The copies are shared by all tasks of an operation, i.e. they hold
+     * values prior to the operation regardless of the order of tasks.
+     *
+     * @param grids Grids of processed functions
+     * @return Unmodifiable list of matrices holding copies of grid values
+     */
+    private static List<float[][]> getSnapshot(Grid... grids) {
+        List<float[][]> functions = new ArrayList<float[][]>(grids.length);
+        for (Grid grid : grids) {
+            functions.add(grid.toArray());
+        }
+        return Collections.unmodifiableList(functions);
+    }
+
+    /**
+     * Splits application of unary operator between tasks according to
+     * configured partitioning.
+     *
+     * @param operators Supplier of operator instances, called once per task
+     */
+    private void applyUnary(final OperatorSupplier<GridUnaryOperator> operators) {
+        ExecutionConfig config = getExecutionConfig();
+        if (config.getPartitioning() == ExecutionConfig.Partitioning.ROW_BLOCKS) {
+            config.invokeRowBlocks(function.getSize(), new RowProcessor() {
+                @Override
+                public void process(int fromRow, int toRow) {
+                    applyToRows(function, operators.get(), fromRow, toRow);
+                }
+            });
+        } else {
+            int tasks = config.getParallelism();
+            List<UnaryOperationExecutor> executors = new ArrayList<UnaryOperationExecutor>(tasks);
+
+            // Split the operation between configured number of tasks and wait until the work is done
+            for (int i = 0; i < tasks; i++) {
+                executors.add(new UnaryOperationExecutor(i, tasks, 
+                        this.function, operators.get()));
+            }
+            config.invokeAll(executors);
+        }
+        function.modified();
+    }
+
+    /**
+     * Splits application of binary operator between tasks according to
+     * configured partitioning.
+     *
+     * @param secondFunction Function to be used as second argument of opperation
+     * @param operators Supplier of operator instances, called once per task
+     */
+    private void applyBinary(Function secondFunction, 
+            final OperatorSupplier<GridBinaryOperator> operators) {
+        // assert function grids have the same dimension.
+        final Grid second = secondFunction.getValues();
+        if (this.function.getSize() != second.getSize()) {
+            log.error("An attempt was made to process two functions with different matrix sizes.");
+            throw new IllegalArgumentException("Can not process functions with different matrixes.");
+        }
+            
+        ExecutionConfig config = getExecutionConfig();
+        if (config.getPartitioning() == ExecutionConfig.Partitioning.ROW_BLOCKS) {
+            config.invokeRowBlocks(function.getSize(), new RowProcessor() {
+                @Override
+                public void process(int fromRow, int toRow) {
+                    applyToRows(function, second, operators.get(), fromRow, toRow);
+                }
+            });
+        } else {
+            int tasks = config.getParallelism();
+            List<BinaryOperationExecutor> executors = new ArrayList<BinaryOperationExecutor>(tasks);
+
+            // Split the operation between configured number of tasks and wait until the work is done
+            for (int i = 0; i < tasks; i++) {
+                executors.add(new BinaryOperationExecutor(i, tasks, 
+                        this.function, second, operators.get()));
+            }
+            config.invokeAll(executors);
+        }
+        function.modified();
     }
 
     
     //getters    
     
+    /**
+     * Compatibility view of 'this' function's values. Returned matrix is a copy,
+     * i.e. its changes are not reflected by 'this' function; use getValues()
+     * to access the grid itself.
+     *
+     * @return Matrix holding copy of function values
+     */
     @Override
     public float[][] getGrid() {
-        return function;
+        return function.toArray();
     }        
+
+    @Override
+    public Grid getValues() {
+        return function;
+    }
     
     @Override
     public double getCellsize() {
         return CELLSIZE;
     }
 
+    /**
+     * Retrieves execution configuration used by 'this' function. Default
+     * configuration is returned unless other one was set.
+     *
+     * @return Execution configuration
+     */
+    public ExecutionConfig getExecutionConfig() {
+        return executionConfig != null ? executionConfig : ExecutionConfig.getDefault();
+    }
+
+    public void setExecutionConfig(ExecutionConfig executionConfig) {
+        this.executionConfig = executionConfig;
+    }
+
     
     // private classes
+
+    /**
+     * Result of a reduction together with grid version it was computed for.
+     */
+    private static class Reduction {
+
+        private final Grid grid;
+        private final long version;
+        private final double[] sums;
+
+        public Reduction(Grid grid, long version, double[] sums) {
+            this.grid = grid;
+            this.version = version;
+            this.sums = sums;
+        }
+
+        public boolean isValidFor(Grid grid, long version, int numOfSums) {
+            return this.grid == grid && this.version == version && sums.length == numOfSums;
+        }
+    }
+    
+    /**
+     * Supplies operator instance for a single task.
+     */
+    private interface OperatorSupplier<T> {
+        public T get();
+    }
+
+    /**
+     * Bridges UnaryOperator to GridUnaryOperator. Execution context is mutated
+     * on each call, bridge therefore must not be shared between threads.
+     */
+    protected static class UnaryOperatorBridge implements GridUnaryOperator {
+
+        private final UnaryOperator operator;
+        private final ExecutionContext context;
+
+        public UnaryOperatorBridge(UnaryOperator operator, ExecutionContext context) {
+            this.operator = operator;
+            this.context = context;
+        }
+
+        @Override
+        public float apply(int x, int y, float value) {
+            context.setCurrentXcoord(x);
+            context.setCurrentYcoord(y);
+            return operator.apply(value, context);
+        }
+    }
+
+    /**
+     * Bridges BinaryOperator to GridBinaryOperator. Execution context is mutated
+     * on each call, bridge therefore must not be shared between threads.
+     */
+    protected static class BinaryOperatorBridge implements GridBinaryOperator {
+
+        private final BinaryOperator operator;
+        private final ExecutionContext context;
+
+        public BinaryOperatorBridge(BinaryOperator operator, ExecutionContext context) {
+            this.operator = operator;
+            this.context = context;
+        }
+
+        @Override
+        public float apply(int x, int y, float firstValue, float secondValue) {
+            context.setCurrentXcoord(x);
+            context.setCurrentYcoord(y);
+            return operator.apply(firstValue, secondValue, context);
+        }
+    }
     
     /**
      * This class allows paralell computation of operations over proper motion
-     * functions.
+     * functions using strided partitioning.
      *
      * @author Tomas Sezima
      */
-    protected class BinaryOperationExecutor extends Thread {
+    protected class BinaryOperationExecutor implements Callable<Void> {
 
         private final int threadNo;
         private final int mod;
-        private final float[][] firstFunction;
-        private final float[][] secondFunction;        
-        private final BinaryOperator operation;
-        private final Map<String, Object> contextParams;
-
-        public BinaryOperationExecutor(int threadNo, int mod, float[][] firstFunction,
-                float[][] secondFunction, BinaryOperator operation, Map<String, Object> context) {
-            super("Thread " + threadNo);
+        private final Grid firstFunction;
+        private final Grid secondFunction;        
+        private final GridBinaryOperator operation;
+
+        public BinaryOperationExecutor(int threadNo, int mod, Grid firstFunction,
+                Grid secondFunction, GridBinaryOperator operation) {
             this.threadNo = threadNo;
             this.mod = mod;
             this.firstFunction = firstFunction;
             this.secondFunction = secondFunction;            
             this.operation = operation;
-            this.contextParams = context;
         }
 
         @Override
-        public void run() {
-            List<float[][]> functions = new ArrayList<float[][]>();
-            functions.add(firstFunction);
-            functions.add(secondFunction);
-            ExecutionContext context = new ExecutionContext(0, 0, functions, contextParams);
-            for (int i = 0; i < firstFunction.length; i++) {
-                for (int u = threadNo; u < firstFunction.length; u += mod) {
-                    context.setCurrentXcoord(i);
-                    context.setCurrentYcoord(u);
-                    firstFunction[i][u] = operation.apply(firstFunction[i][u], 
-                            secondFunction[i][u], context);                                                            
+        public Void call() {
+            int size = firstFunction.getSize();
+            for (int i = 0; i < size; i++) {
+                for (int u = threadNo; u < size; u += mod) {
+                    int index = firstFunction.index(i, u);
+                    firstFunction.store(index, operation.apply(i, u, firstFunction.get(index), 
+                            secondFunction.get(index)));
                 }
             }
+            return null;
         }
     }
 
     /**
      * This class allows paralell computation of operations over proper motion
-     * functions. 
+     * functions using strided partitioning. 
      *
      * @author Tomas Sezima
      */
-    protected class UnaryOperationExecutor extends Thread{
+    protected class UnaryOperationExecutor implements Callable<Void> {
 
         private final int threadNo;
         private final int mod;
-        private final float[][] function;                
-        private final UnaryOperator operation;
-        private final Map<String, Object> contextParams;
+        private final Grid function;                
+        private final GridUnaryOperator operation;
 
-        public UnaryOperationExecutor(int threadNo, int mod, float[][] function, 
-                UnaryOperator operation, Map<String, Object> context) {
-            super("Thread " + threadNo);
+        public UnaryOperationExecutor(int threadNo, int mod, Grid function, 
+                GridUnaryOperator operation) {
             this.threadNo = threadNo;
             this.mod = mod;
             this.function = function;                        
             this.operation = operation;
-            this.contextParams = context;
         }
 
         @Override
-        public void run() {
-            List<float[][]> functions = new ArrayList<float[][]>();
-            functions.add(function);            
-            ExecutionContext context = new ExecutionContext(0, 0, functions, contextParams);
-            for (int i = 0; i < function.length; i++) {
-                for (int u = threadNo; u < function.length; u += mod) {                    
-                    context.setCurrentXcoord(i);
-                    context.setCurrentYcoord(u);
-                    function[i][u] = operation.apply(function[i][u], context);                    
+        public Void call() {
+            int size = function.getSize();
+            for (int i = 0; i < size; i++) {
+                for (int u = threadNo; u < size; u += mod) {                    
+                    int index = function.index(i, u);
+                    function.store(index, operation.apply(i, u, function.get(index)));
                 }
             }
+            return null;
         }
     }        
     
@@ -294,7 +621,7 @@ public class PmFunction implements Function{
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 37 * hash + Arrays.deepHashCode(this.function);
+        hash = 37 * hash + (this.function != null ? this.function.hashCode() : 0);
         return hash;
     }
 
@@ -307,7 +634,7 @@ public class PmFunction implements Function{
             return false;
         }
         final PmFunction other = (PmFunction) obj;
-        if (!Arrays.deepEquals(this.function, other.function)) {
+        if (this.function != other.function && (this.function == null || !this.function.equals(other.function))) {
             return false;
         }
         return true;
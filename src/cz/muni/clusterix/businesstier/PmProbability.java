@@ -1,18 +1,16 @@
 package cz.muni.clusterix.businesstier;
 
 import cz.muni.clusterix.entities.Restrictions;
-import java.util.ArrayList;
 import java.util.List;
 import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.StarCatalog;
 import java.util.Set;
-import cz.muni.clusterix.entities.Point;
-import java.util.Collections;
+import java.util.Arrays;
 import static cz.muni.clusterix.helpers.Calc.*;
 import static cz.muni.clusterix.businesstier.PmFunction.CELLSIZE;
 import cz.muni.clusterix.entities.ExecutionContext;
 import cz.muni.clusterix.helpers.ClusterixConstants;
 import static java.lang.Math.*;
-import java.util.Comparator;
 import org.apache.log4j.Logger;
 
 /**
@@ -23,10 +21,16 @@ import org.apache.log4j.Logger;
 public class PmProbability extends PmFunction {
     
     private static final Logger log = Logger.getLogger(PmProbability.class.getName());
+    // ranges of fewer keys are sorted rather than partitioned during member selection
+    private static final int SELECTION_CUTOFF = 16;
+    // shared instance, so that statistics of a frequency function are memoised
+    private static final ClusterFreqStats CLUSTER_FREQ_STATS = new ClusterFreqStats();
 
     // inplicite err treshold is defined by GAMMACOEF * mean err    
     private final int expectedNumOfMembers;
     private final float gammaCoef;                    
+    // mean error of cluster frequency function, see PmFrequency.getGamma
+    private final double gamma;
     
     /**
      * Constructor.
@@ -39,23 +43,73 @@ public class PmProbability extends PmFunction {
     public PmProbability(PmFrequency clusterFreq, PmFrequency clusterFieldFreq, Restrictions rest) {        
         // share function in order to minimize memory requirements
         // i.e.: given clusterFreq function is being modified and therefore COULD NOT be used any further!
-        super(clusterFreq.getGrid());                
+        this(clusterFreq.getValues().getSize(), clusterFreq.reduce(CLUSTER_FREQ_STATS, ClusterFreqStats.SUMS),
+                clusterFieldFreq, rest, clusterFreq.getValues(), clusterFreq.executionConfig);
+        estimate(FunctionExpression.of(clusterFreq), clusterFieldFreq, rest);
+    }
+
+    /**
+     * Constructor. Cluster frequency function is not materialised, it is
+     * evaluated twice from its expression (e.g. cluster-field function minus
+     * scaled field function): once to retrieve its statistics and once
+     * together with probabilities.
+     *
+     * @param clusterFreq Expression of frequency function describing the cluster population, not NULL
+     * @param clusterFieldFreq Frequency function describing the cluster-field, not NULL
+     * population.
+     * @param rest Restrictions proposed by the user, not NULL
+     */
+    public PmProbability(FunctionExpression clusterFreq, PmFrequency clusterFieldFreq, Restrictions rest) {
+        this(clusterFreq.getSize(), getStats(clusterFreq, clusterFieldFreq), clusterFieldFreq, rest,
+                Grid.allocate(clusterFreq.getSize(), clusterFieldFreq.getExecutionConfig().getGridStorage()),
+                clusterFieldFreq.executionConfig);
+        estimate(clusterFreq, clusterFieldFreq, rest);
+    }
+
+    /**
+     * Constructor. Cluster frequency function (cluster-field function minus
+     * scaled field function) is never stored: its statistics are gathered by
+     * a streaming reduction, probabilities are computed from both frequency
+     * functions by a dedicated kernel afterwards.
+     *
+     * @param clusterFieldFreq Frequency function describing the cluster-field, not NULL
+     * population.
+     * @param fieldFreq Frequency function describing the field population, not NULL;
+     * its grid is overwritten by probabilities, i.e. it COULD NOT be used any further!
+     * @param fieldRatio Ratio of cluster-field area to field area
+     * @param rest Restrictions proposed by the user, not NULL
+     */
+    public PmProbability(PmFrequency clusterFieldFreq, PmFrequency fieldFreq, float fieldRatio, 
+            Restrictions rest) {
+        this(fieldFreq.getValues().getSize(), getStats(FunctionExpression.of(clusterFieldFreq)
+                .subtract(FunctionExpression.of(fieldFreq).scale(fieldRatio)), clusterFieldFreq),
+                clusterFieldFreq, rest, fieldFreq.getValues(), clusterFieldFreq.executionConfig);
+        getExecutionConfig().invokeRowBlocks(function.getSize(), 
+                new ProbabilityKernel(clusterFieldFreq.getValues(), fieldRatio, rest));
+        function.modified();
+    }
+
+    /**
+     * Sets up probability function from statistics of cluster frequency
+     * function, probabilities are left to be evaluated into 'values' by
+     * public constructors.
+     */
+    private PmProbability(int size, double[] stats, PmFrequency clusterFieldFreq, 
+            Restrictions rest, Grid values, ExecutionConfig config) {
+        super(values);
+        setExecutionConfig(config);
         
         // check input params
-        if(clusterFreq.getGrid().length != clusterFieldFreq.getGrid().length){           
+        if(size != clusterFieldFreq.getValues().getSize() || values.getSize() != size){           
             throw new IllegalArgumentException("An attempt was made to create "
                     + "proper motion probability function using frequency "
                     + "functions of different sizes.");
         }                
         
-        this.expectedNumOfMembers = getExpNumOfClusterStars(clusterFreq);
+        this.expectedNumOfMembers = getExpNumOfClusterStars(stats);
         this.gammaCoef = rest.getGammaCoef() != null ? 
                 rest.getGammaCoef() : ClusterixConstants.DEFAULT_GAMMA_COEF;                
-        
-        // init        
-        BinaryOperator probabEst = new ProbabilityEstimation(clusterFreq.getGrid().length / 2, 
-                clusterFreq.getGamma(), rest);
-        applyBinaryOperator(clusterFieldFreq, probabEst, null);
+        this.gamma = getGamma(stats);
     }
 
 
@@ -67,30 +121,49 @@ public class PmProbability extends PmFunction {
      * @return Stars with assigned probabilities
      */
     public List<Star> assignProbabsTo(Set<Star> stars) {
-        int center = (int) (super.function.length / 2);                        
-        for (Star star : stars) {
+        return assignProbabsTo(StarCatalog.of(stars));
+    }
+
+    /**
+     * Assigns membership probability to each star of given catalogue, the
+     * most probable stars are marked as cluster members. Probabilities and
+     * membership are stored in the catalogue; members are selected without
+     * sorting the catalogue, stars are ordered and materialised only when the
+     * returned list is accessed, using execution configuration of 'this'
+     * function.
+     *
+     * @param stars Catalogue of stars
+     * @return Stars with assigned probabilities, ordered by probabilities
+     */
+    public List<Star> assignProbabsTo(StarCatalog stars) {
+        int size = super.function.getSize();
+        int center = (int) (size / 2);
+        float[] muAlphas = stars.getMuAlphas();
+        float[] muDeltas = stars.getMuDeltas();
+        long[] keys = new long[stars.size()];
+        for (int i = 0; i < stars.size(); i++) {
             //retrieve PM possition in grid
-            int xCoord = center - (int) Math.round(star.getProperMotion().getMuAlpha() / CELLSIZE);
-            int yCoord = center - (int) Math.round(star.getProperMotion().getMuDelta() / CELLSIZE);
+            int xCoord = center - (int) Math.round(muAlphas[i] / CELLSIZE);
+            int yCoord = center - (int) Math.round(muDeltas[i] / CELLSIZE);
 
             //assign probability
-            if (xCoord >= 0 && xCoord < super.function.length && 
-                    xCoord >= 0 && yCoord < super.function.length) {                
-                star.setProbability(super.function[xCoord][yCoord]);
-            } else star.setProbability(0.0f);            
+            float probability = 0.0f;
+            if (xCoord >= 0 && xCoord < size && 
+                    yCoord >= 0 && yCoord < size) {                
+                probability = super.function.get(xCoord, yCoord);
+            }
+            stars.setProbability(i, probability);
+            keys[i] = RankedStars.getKey(probability, i);
         }
 
-        // transform set into list and order it by probabilities
-        List<Star> list = new ArrayList<Star>(stars);
-        Collections.sort(list, new ProbabilityComparator());
-
-        // mark most probable cluster members        
-        // TODO: optimize multiple iteration over star set
-        for (int i = 0; i < stars.size(); i++) {
-            list.get(i).setIsClusterStar(i < expectedNumOfMembers);            
+        // mark most probable cluster members, i.e. stars of the smallest keys
+        int members = Math.min(expectedNumOfMembers, keys.length);
+        selectSmallest(keys, members);
+        for (int rank = 0; rank < keys.length; rank++) {
+            stars.setIsClusterStar((int) keys[rank], rank < members);
         }
 
-        return list;
+        return new RankedStars(stars, getExecutionConfig());
     }                
     
     
@@ -107,32 +180,121 @@ public class PmProbability extends PmFunction {
     
     // private helpers
     
+    /**
+     * Evaluates probabilities from cluster frequency function expression in a
+     * single pass, grid of 'this' function may be one of its leaves.
+     */
+    private void estimate(FunctionExpression clusterFreq, PmFrequency clusterFieldFreq, Restrictions rest) {
+        GridBinaryOperator probabEst = new ProbabilityEstimation(clusterFreq.getSize() / 2, gamma, rest);
+        clusterFreq.combine(FunctionExpression.of(clusterFieldFreq), probabEst)
+                .evaluateInto(function, getExecutionConfig());
+    }
+
     /**
      * The non-parametric aproach gives an expected number of cluster members
      * from the integrated volume of the cluster frequency function in the areas
      * of high cluster density where F(x) > GAMMACOEF * gamma. Method
      * getExpNumOfClusterStars() is responsible for retrieveing such a value
-     * from 'cluster frequency function' object. Straightforward operations like
-     * this does not have to be parallelized (thread handling may be more time 
-     * consuming than actual computation logic).
+     * from statistics of 'cluster frequency function'. Note, that the number
+     * is retrieved before gamma coefficient is set, i.e. all positive values
+     * are integrated.
      *
      * @return expected number of cluster stars.
      */
-    private int getExpNumOfClusterStars(PmFrequency function) {
-        double result = 0;
-        double treshold = gammaCoef * function.getGamma();        
-        
-        for(float[] row : function.getGrid()){
-            for(int i = 0; i < function.getGrid().length; i++){
-                if(row[i] > treshold){
-                    result += row[i];
+    private int getExpNumOfClusterStars(double[] stats) {
+        return (int) Math.ceil(stats[ClusterFreqStats.POSITIVE_SUM] * square(this.getCellsize()));
+    }
+
+    /**
+     * Gathers statistics of cluster frequency function given by expression,
+     * see ClusterFreqStats.
+     */
+    private static double[] getStats(FunctionExpression clusterFreq, PmFrequency clusterFieldFreq) {
+        return clusterFreq.reduce(CLUSTER_FREQ_STATS, ClusterFreqStats.SUMS, clusterFieldFreq.executionConfig);
+    }
+
+    /**
+     * Mean error of cluster frequency function, see PmFrequency.getGamma.
+     */
+    private static double getGamma(double[] stats) {
+        double num = stats[ClusterFreqStats.NEGATIVE_COUNT];
+        return num != 0 ? sqrt(stats[ClusterFreqStats.NEGATIVE_SQUARES] / num) : num;
+    }
+
+    /**
+     * Reorders given keys so that the 'count' smallest ones take the first
+     * 'count' positions (in arbitrary order). Quickselect with median of
+     * three pivots is used, ranges that do not shrink fast enough are sorted.
+     */
+    private static void selectSmallest(long[] keys, int count) {
+        int from = 0;
+        int to = keys.length;
+        int depth = 2 * (32 - Integer.numberOfLeadingZeros(keys.length));
+        while (to - from > SELECTION_CUTOFF && from < count && count < to) {
+            if (depth-- == 0) {
+                Arrays.sort(keys, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            long pivot = median(keys[from], keys[middle], keys[to - 1]);
+            // Hoare partition, keys are unique
+            int i = from;
+            int u = to - 1;
+            while (i <= u) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[u] > pivot) {
+                    u--;
                 }
+                if (i <= u) {
+                    long swap = keys[i];
+                    keys[i++] = keys[u];
+                    keys[u--] = swap;
+                }
+            }
+            // [from, u] <= pivot <= [i, to)
+            if (count <= u + 1) {
+                to = u + 1;
+            } else if (count >= i) {
+                from = i;
+            } else {
+                return;
             }
         }
-        
-        return (int) Math.ceil(result * square(this.getCellsize()));
+        if (from < count && count < to) {
+            Arrays.sort(keys, from, to);
+        }
+    }
+
+    private static long median(long a, long b, long c) {
+        return a < b ? (b < c ? b : a < c ? c : a) : (a < c ? a : b < c ? c : b);
     }
     
+    /**
+     * Gathers statistics of cluster frequency function required by
+     * getGamma and getExpNumOfClusterStars.
+     */
+    private static class ClusterFreqStats implements GridReducer {
+
+        private static final int NEGATIVE_SQUARES = 0;
+        private static final int NEGATIVE_COUNT = 1;
+        private static final int POSITIVE_SUM = 2;
+        private static final int SUMS = 3;
+
+        @Override
+        public void reduce(int x, float[] values, double[] sums) {
+            for (float value : values) {
+                if (value < 0) {
+                    sums[NEGATIVE_SQUARES] += square(value);
+                    sums[NEGATIVE_COUNT]++;
+                } else if (value > 0) {
+                    sums[POSITIVE_SUM] += value;
+                }
+            }
+        }
+    }
+
     /**
      * According to Bayesian theory, for an individual found in the 2-D space at
      * position (a, b), the probability of belonging to cluster population is:
@@ -142,26 +304,32 @@ public class PmProbability extends PmFunction {
      * where Chis are the (empirical) frequency functions of cluster+field (cf)
      * and field (c) star's propper motions.
      */
-    protected class ProbabilityEstimation implements BinaryOperator{
+    protected class ProbabilityEstimation implements BinaryOperator, GridBinaryOperator{
         
         private final int centralCoordinate;
         private final double treshold;
-        private final Restrictions restrictions;
+        private final double maxMu;
         
         public ProbabilityEstimation(int functionCenter, double treshold, Restrictions restrictions){
             this.centralCoordinate = functionCenter;
             this.treshold = treshold;
-            this.restrictions = restrictions;        
+            this.maxMu = restrictions.getMaxMu();
         }                
 
         @Override
-        public float apply(float firstFunctionValue, float secondFunctionValue, ExecutionContext context) {                                                            
+        public float apply(float firstFunctionValue, float secondFunctionValue, ExecutionContext context) {
+            return apply(context.getCurrentXcoord(), context.getCurrentYcoord(), 
+                    firstFunctionValue, secondFunctionValue);
+        }
+
+        @Override
+        public float apply(int x, int y, float firstFunctionValue, float secondFunctionValue) {                                                            
             
             float result = 0;
-            Point pos = new Point(centralCoordinate - context.getCurrentXcoord(),
-                    centralCoordinate - context.getCurrentYcoord());
+            int posX = centralCoordinate - x;
+            int posY = centralCoordinate - y;
             
-            if (hypot(pos.getX() * CELLSIZE, pos.getY() * CELLSIZE) < restrictions.getMaxMu()){
+            if (hypot(posX * CELLSIZE, posY * CELLSIZE) < maxMu){
                 result = firstFunctionValue > treshold ? firstFunctionValue / secondFunctionValue : 0;
             }
             return result;
@@ -170,20 +338,57 @@ public class PmProbability extends PmFunction {
     }
     
     /**
-     * Compares stars according to their membership probability. All stars in sorted 
-     * set has to have probabilities assigned.
+     * Computes probabilities directly from cluster-field and field frequency
+     * functions, i.e. P = (Chi_cf - ratio * Chi_f) / Chi_cf for cells within
+     * maximal proper motion whose cluster frequency exceeds gamma, see
+     * ProbabilityEstimation. Cells within maximal proper motion are resolved
+     * once per row rather than for each cell. Results are written into
+     * 'this' function's grid, which may be the field function's grid.
      */
-    private class ProbabilityComparator implements Comparator<Star>{
+    private class ProbabilityKernel implements RowProcessor {
+
+        private final Grid clusterField;
+        private final float fieldRatio;
+        private final double maxMu;
+
+        public ProbabilityKernel(Grid clusterField, float fieldRatio, Restrictions restrictions) {
+            this.clusterField = clusterField;
+            this.fieldRatio = fieldRatio;
+            this.maxMu = restrictions.getMaxMu();
+        }
+
         @Override
-        public int compare(Star o1, Star o2) {            
-            int result = 0;
-            if(o1.getProbability() != null && o2.getProbability() != null){
-                result =  o2.getProbability().compareTo(o1.getProbability());
+        public void process(int fromRow, int toRow) {
+            int size = function.getSize();
+            int center = size / 2;
+            boolean heap = function instanceof HeapGrid && clusterField instanceof HeapGrid;
+            float[] values = heap ? ((HeapGrid) function).getValues() : null;
+            float[] clusterFieldValues = heap ? ((HeapGrid) clusterField).getValues() : null;
+            for (int x = fromRow; x < toRow; x++) {
+                // cells [x][center - reach, center + reach] are within maximal proper motion
+                int reach = getReach(center - x, maxMu, size);
+                int from = Math.max(0, center - reach);
+                int to = Math.min(size, center + reach + 1);
+                int rowStart = function.index(x, 0);
+                for (int y = 0; y < size; y++) {
+                    int index = rowStart + y;
+                    float result = 0;
+                    if (y >= from && y < to) {
+                        float clusterFieldValue = heap ? clusterFieldValues[index] : clusterField.get(index);
+                        float fieldValue = heap ? values[index] : function.get(index);
+                        float clusterValue = clusterFieldValue - fieldValue * fieldRatio;
+                        result = clusterValue > gamma ? clusterValue / clusterFieldValue : 0;
+                    }
+                    if (heap) {
+                        values[index] = result;
+                    } else {
+                        function.store(index, result);
+                    }
+                }
             }
-            return result;
-        }                
+        }
     }
-        
+    
     // ancestor's equals and hascode are satisfactory...
     
 }
@@ -0,0 +1,66 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.PmMoments;
+import cz.muni.clusterix.entities.StarCatalog;
+
+/**
+ * Stars of a stellar field prepared for membership evaluation by
+ * StellarField.prepare, i.e. stars that satisfy restrictions split into
+ * samples defined by field masks, together with statistics gathered during
+ * the same pass.
+ *
+ * @author Tomas Sezima
+ */
+public class PreparedField {
+
+    // stars under CLUSTERFIELD and FIELD cells of the mask
+    private final StarCatalog clusterFieldStars;
+    private final StarCatalog fieldStars;
+    // stars under CLUSTERFIELD or FIELD cells of the vicinity mask
+    private final StarCatalog candidates;
+    // maximal mean proper motion of stars that satisfy restrictions
+    private final double maxMu;
+    private final PmMoments clusterFieldMoments;
+
+    /**
+     * Constructor.
+     *
+     * @param clusterFieldStars Cluster + field sample
+     * @param fieldStars Field sample
+     * @param candidates Stars probabilities are assigned to
+     * @param maxMu Maximal mean proper motion of stars that satisfy restrictions
+     * @param clusterFieldMoments Proper motion moments of cluster + field sample
+     */
+    public PreparedField(StarCatalog clusterFieldStars, StarCatalog fieldStars,
+            StarCatalog candidates, double maxMu, PmMoments clusterFieldMoments) {
+        this.clusterFieldStars = clusterFieldStars;
+        this.fieldStars = fieldStars;
+        this.candidates = candidates;
+        this.maxMu = maxMu;
+        this.clusterFieldMoments = clusterFieldMoments;
+    }
+
+
+    // getters
+
+    public StarCatalog getClusterFieldStars() {
+        return clusterFieldStars;
+    }
+
+    public StarCatalog getFieldStars() {
+        return fieldStars;
+    }
+
+    public StarCatalog getCandidates() {
+        return candidates;
+    }
+
+    public double getMaxMu() {
+        return maxMu;
+    }
+
+    public PmMoments getClusterFieldMoments() {
+        return clusterFieldMoments;
+    }
+
+}
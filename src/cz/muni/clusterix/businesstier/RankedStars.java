@@ -0,0 +1,194 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.StarCatalog;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+
+/**
+ * Unmodifiable list of stars of a catalogue ordered by their probabilities
+ * (descending), stars of equal probability are kept in catalogue order. The
+ * order is established when the list is accessed for the first time, i.e.
+ * consumers that need membership only do not pay for sorting. Large
+ * catalogues are sorted in parallel over primitive keys.
+ *
+ * Probabilities must not be changed once the list is accessed.
+ *
+ * @author Tomas Sezima
+ */
+public class RankedStars extends AbstractList<Star> implements RandomAccess {
+
+    // catalogues with fewer stars are sorted by the calling thread
+    private static final int PARALLEL_SORT_THRESHOLD = 64 * 1024;
+
+    private final StarCatalog stars;
+    // execution configuration, default one is used if NULL
+    private final ExecutionConfig config;
+    private volatile Star[] ranked;
+
+    /**
+     * Constructor.
+     *
+     * @param stars Catalogue of stars with assigned probabilities
+     * @param config Execution configuration, default one is used if NULL
+     */
+    public RankedStars(StarCatalog stars, ExecutionConfig config) {
+        this.stars = stars;
+        this.config = config;
+    }
+
+
+    // public helpers
+
+    @Override
+    public Star get(int index) {
+        return getRanked()[index];
+    }
+
+    @Override
+    public int size() {
+        return stars.size();
+    }
+
+    /**
+     * Maps probability of i-th star to key, ascending (signed) order of keys
+     * corresponds to descending order of probabilities as defined by
+     * Float.compareTo, followed by ascending order of indices.
+     *
+     * @param probability Probability of the star
+     * @param i Index of the star
+     * @return Unique key of the star
+     */
+    static long getKey(float probability, int i) {
+        int bits = Float.floatToIntBits(probability);
+        return ((long) ~(bits ^ ((bits >> 31) & Integer.MAX_VALUE)) << 32) | i;
+    }
+
+
+    // private helpers
+
+    private Star[] getRanked() {
+        Star[] result = ranked;
+        if (result == null) {
+            synchronized (this) {
+                result = ranked;
+                if (result == null) {
+                    result = rank();
+                    ranked = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private Star[] rank() {
+        float[] probabilities = stars.getProbabilities();
+        long[] keys = new long[stars.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = getKey(probabilities[i], i);
+        }
+        if (keys.length < PARALLEL_SORT_THRESHOLD) {
+            Arrays.sort(keys);
+        } else {
+            sort(keys, config != null ? config : ExecutionConfig.getDefault());
+        }
+        Star[] result = new Star[keys.length];
+        for (int rank = 0; rank < keys.length; rank++) {
+            result[rank] = stars.getStar((int) keys[rank]);
+        }
+        return result;
+    }
+
+    /**
+     * Sorts runs of the array in parallel and merges neighbouring runs in
+     * parallel rounds afterwards.
+     */
+    private static void sort(long[] keys, ExecutionConfig config) {
+        int runs = config.getParallelism();
+        int[] bounds = new int[runs + 1];
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(runs);
+        for (int run = 0; run < runs; run++) {
+            bounds[run + 1] = (int) ((long) keys.length * (run + 1) / runs);
+            tasks.add(new SortTask(keys, bounds[run], bounds[run + 1]));
+        }
+        config.invokeAll(tasks);
+
+        long[] source = keys;
+        long[] target = new long[keys.length];
+        while (bounds.length > 2) {
+            int[] merged = new int[bounds.length / 2 + 1];
+            tasks.clear();
+            for (int run = 0; run + 1 < bounds.length; run += 2) {
+                int to = bounds[Math.min(run + 2, bounds.length - 1)];
+                tasks.add(new MergeTask(source, target, bounds[run], bounds[run + 1], to));
+                merged[run / 2 + 1] = to;
+            }
+            config.invokeAll(tasks);
+            long[] swap = source;
+            source = target;
+            target = swap;
+            bounds = merged;
+        }
+        if (source != keys) {
+            System.arraycopy(source, 0, keys, 0, keys.length);
+        }
+    }
+
+
+    // private classes
+
+    private static class SortTask implements Callable<Void> {
+
+        private final long[] keys;
+        private final int from;
+        private final int to;
+
+        public SortTask(long[] keys, int from, int to) {
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Void call() {
+            Arrays.sort(keys, from, to);
+            return null;
+        }
+    }
+
+    /**
+     * Merges sorted runs [from, middle) and [middle, to) of 'source' into the
+     * same range of 'target'.
+     */
+    private static class MergeTask implements Callable<Void> {
+
+        private final long[] source;
+        private final long[] target;
+        private final int from;
+        private final int middle;
+        private final int to;
+
+        public MergeTask(long[] source, long[] target, int from, int middle, int to) {
+            this.source = source;
+            this.target = target;
+            this.from = from;
+            this.middle = middle;
+            this.to = to;
+        }
+
+        @Override
+        public Void call() {
+            int i = from;
+            int u = middle;
+            for (int k = from; k < to; k++) {
+                target[k] = u >= to || (i < middle && source[i] <= source[u]) ? source[i++] : source[u++];
+            }
+            return null;
+        }
+    }
+
+}
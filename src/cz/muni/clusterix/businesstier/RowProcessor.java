@@ -0,0 +1,20 @@
+package cz.muni.clusterix.businesstier;
+
+/**
+ * Functional interface that represents processing of contiguous block of grid
+ * rows. Blocks handed to a single processor never overlap, so implementations
+ * may write to processed rows without synchronization.
+ *
+ * @author Tomas Sezima
+ */
+public interface RowProcessor {
+
+    /**
+     * Processes rows [fromRow, toRow).
+     *
+     * @param fromRow First row to be processed
+     * @param toRow Row following the last processed one
+     */
+    public void process(int fromRow, int toRow);
+
+}
@@ -0,0 +1,168 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.StarCatalog;
+import static cz.muni.clusterix.businesstier.PmFunction.CELLSIZE;
+import static java.lang.Math.*;
+
+/**
+ * Exact density estimation engine that takes advantage of separability of
+ * normal circular kernel, exp(-(dx^2 + dy^2) / 2h^2) = exp(-dx^2 / 2h^2) *
+ * exp(-dy^2 / 2h^2). For each star one vector of row weights and one vector
+ * of column weights is evaluated and the star contributes to the grid by their
+ * outer product. Number of exponentials is therefore (rows + columns) * stars
+ * instead of cells * stars, no star contribution is neglected, so the result
+ * equals the exact kernel sum up to rounding.
+ *
+ * Stars are processed in blocks, so that column weights of a block fit in
+ * cache. Grid is split into row blocks that are processed in parallel, so
+ * that threads never write to the same cell.
+ *
+ * @author Tomas Sezima
+ */
+public class SeparableDensityEstimator implements DensityEstimator {
+
+    // number of stars whose weights are held at once
+    private static final int STARS_PER_BLOCK = 256;
+
+    @Override
+    public void estimate(PmFrequency function, StarCatalog stars, Restrictions restrictions) {
+        ExecutionConfig config = function.getExecutionConfig();
+        Grid grid = function.getValues();
+        int size = grid.getSize();
+        double smoothParam = function.getSmoothParam();
+        double maxMu = restrictions.getMaxMu();
+        KernelFunction kernel = PmFrequency.getKernelOf(restrictions);
+
+        // cells [x][center - reach, center + reach] are within maximal proper motion
+        int[] reaches = new int[size];
+        for (int x = 0; x < size; x++) {
+            reaches[x] = PmFunction.getReach(size / 2 - x, maxMu, size);
+        }
+        for (int from = 0; from < stars.size(); from += STARS_PER_BLOCK) {
+            int to = min(from + STARS_PER_BLOCK, stars.size());
+            double[][] columnWeights = new double[to - from][size];
+            config.invokeRowBlocks(to - from, new WeightEstimation(stars.getMuDeltas(), from,
+                    smoothParam, kernel, columnWeights));
+            config.invokeRowBlocks(size, new BlockAccumulation(grid, stars, from, to,
+                    smoothParam, kernel, reaches, columnWeights));
+        }
+    }
+
+
+    // private helpers
+
+    /**
+     * Evaluates weights of given star component for all rows (or columns) of
+     * the grid. Weight of i-th row is kernel value of (mu - pos_i)^2 / h^2,
+     * positions are evaluated the same way ExactDensityEstimator does.
+     */
+    private static void getWeights(float mu, double smoothParam, KernelFunction kernel,
+            double[] weights) {
+        int center = weights.length / 2;
+        double inverseSquare = 1 / (smoothParam * smoothParam);
+        for (int i = 0; i < weights.length; i++) {
+            double d = mu - (center - i) * CELLSIZE;
+            weights[i] = kernel.evaluate((d * d) * inverseSquare);
+        }
+    }
+
+
+    // private classes
+
+    /**
+     * Evaluates column weights of stars [from, from + rows) of a star block.
+     */
+    private static class WeightEstimation implements RowProcessor {
+
+        private final float[] mus;
+        private final int from;
+        private final double smoothParam;
+        private final KernelFunction kernel;
+        private final double[][] weights;
+
+        public WeightEstimation(float[] mus, int from, double smoothParam, KernelFunction kernel,
+                double[][] weights) {
+            this.mus = mus;
+            this.from = from;
+            this.smoothParam = smoothParam;
+            this.kernel = kernel;
+            this.weights = weights;
+        }
+
+        @Override
+        public void process(int fromRow, int toRow) {
+            for (int s = fromRow; s < toRow; s++) {
+                getWeights(mus[from + s], smoothParam, kernel, weights[s]);
+            }
+        }
+    }
+
+    /**
+     * Adds contributions of stars [from, to) to rows of the grid. Row weight
+     * of a star (normalized by kernel volume) is evaluated once per row and
+     * multiplies star's column weights, contributions are summed in double
+     * precision before they are added to the grid.
+     */
+    private static class BlockAccumulation implements RowProcessor {
+
+        private final Grid grid;
+        private final float[] muAlphas;
+        private final int from;
+        private final int to;
+        private final double smoothParam;
+        private final KernelFunction kernel;
+        private final int[] reaches;
+        private final double[][] columnWeights;
+
+        public BlockAccumulation(Grid grid, StarCatalog stars, int from, int to, double smoothParam,
+                KernelFunction kernel, int[] reaches, double[][] columnWeights) {
+            this.grid = grid;
+            this.muAlphas = stars.getMuAlphas();
+            this.from = from;
+            this.to = to;
+            this.smoothParam = smoothParam;
+            this.kernel = kernel;
+            this.reaches = reaches;
+            this.columnWeights = columnWeights;
+        }
+
+        @Override
+        public void process(int fromRow, int toRow) {
+            int size = grid.getSize();
+            int center = size / 2;
+            double volume = 1.0 / (2 * PI * smoothParam * smoothParam);
+            double inverseSquare = 1 / (smoothParam * smoothParam);
+            double[] sums = new double[size];
+            float[] values = grid instanceof HeapGrid ? ((HeapGrid) grid).getValues() : null;
+
+            for (int x = fromRow; x < toRow; x++) {
+                if (reaches[x] < 0) {
+                    continue;
+                }
+                int colFrom = max(0, center - reaches[x]);
+                int colTo = min(size, center + reaches[x] + 1);
+                for (int y = colFrom; y < colTo; y++) {
+                    sums[y] = 0;
+                }
+                for (int s = from; s < to; s++) {
+                    double d = muAlphas[s] - (center - x) * CELLSIZE;
+                    double rowWeight = volume * kernel.evaluate((d * d) * inverseSquare);
+                    double[] weights = columnWeights[s - from];
+                    for (int y = colFrom; y < colTo; y++) {
+                        sums[y] += rowWeight * weights[y];
+                    }
+                }
+                int rowStart = grid.index(x, 0);
+                for (int y = colFrom; y < colTo; y++) {
+                    if (values != null) {
+                        values[rowStart + y] += (float) sums[y];
+                    } else {
+                        grid.store(rowStart + y, (float) (grid.get(rowStart + y) + sums[y]));
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.StarCatalog;
+import java.util.Arrays;
+
+/**
+ * Zone index over star positions of a catalogue. Sky is split into
+ * declination strips of equal height, stars of each strip are sorted by right
+ * ascension. Index is built once per catalogue, it is immutable and may be
+ * shared by any number of threads, e.g. by stellar fields of clusters that
+ * are evaluated against the same catalogue.
+ *
+ * Queries retrieve stars within given distance from a center in both
+ * coordinates, i.e. the square that bounds the cone in the projection used by
+ * field masks. Only strips overlapping the square are visited and only the
+ * right ascension range of the square is scanned in each of them, so the cost
+ * of a query is proportional to the number of retrieved stars rather than to
+ * the size of the catalogue.
+ *
+ * @author Tomas Sezima
+ */
+public final class StarIndex {
+
+    // default strip height in degrees, comparable to radiuses of open clusters
+    public static final float DEFAULT_ZONE_HEIGHT = 0.1f;
+    private static final float MIN_DEC = -90.0f;
+
+    private final StarCatalog stars;
+    private final float zoneHeight;
+    // stars of zone z are stored at [zoneStarts[z], zoneStarts[z + 1]), sorted by RA
+    private final int[] zoneStarts;
+    private final int[] order;
+    // coordinates in the index order, so that scans do not jump over the catalogue
+    private final float[] ras;
+    private final float[] decs;
+
+    /**
+     * Constructor. Creates index of default strip height.
+     *
+     * @param stars Indexed catalogue, it must not be extended afterwards
+     */
+    public StarIndex(StarCatalog stars) {
+        this(stars, DEFAULT_ZONE_HEIGHT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stars Indexed catalogue, it must not be extended afterwards
+     * @param zoneHeight Height of declination strips in degrees
+     */
+    public StarIndex(StarCatalog stars, float zoneHeight) {
+        if (!(zoneHeight > 0)) {
+            throw new IllegalArgumentException("Zone height has to be positive.");
+        }
+        this.stars = stars;
+        this.zoneHeight = zoneHeight;
+        int size = stars.size();
+        float[] catalogueRas = stars.getRas();
+        float[] catalogueDecs = stars.getDecs();
+
+        // counting sort by zone...
+        this.zoneStarts = new int[getZone(-MIN_DEC) + 2];
+        int[] zones = new int[size];
+        for (int i = 0; i < size; i++) {
+            zones[i] = getZone(catalogueDecs[i]);
+            zoneStarts[zones[i] + 1]++;
+        }
+        for (int zone = 1; zone < zoneStarts.length; zone++) {
+            zoneStarts[zone] += zoneStarts[zone - 1];
+        }
+        int[] byZone = new int[size];
+        int[] next = Arrays.copyOf(zoneStarts, zoneStarts.length - 1);
+        for (int i = 0; i < size; i++) {
+            byZone[next[zones[i]]++] = i;
+        }
+
+        // ...followed by sort by RA within each zone, ties are kept in catalogue order
+        this.order = new int[size];
+        long[] keys = new long[size];
+        for (int zone = 0; zone < zoneStarts.length - 1; zone++) {
+            int from = zoneStarts[zone];
+            int to = zoneStarts[zone + 1];
+            for (int i = from; i < to; i++) {
+                int star = byZone[i];
+                keys[i] = (long) getSortableBits(catalogueRas[star]) << 32 | star;
+            }
+            Arrays.sort(keys, from, to);
+            for (int i = from; i < to; i++) {
+                order[i] = (int) keys[i];
+            }
+        }
+        this.ras = new float[size];
+        this.decs = new float[size];
+        for (int i = 0; i < size; i++) {
+            ras[i] = catalogueRas[order[i]];
+            decs[i] = catalogueDecs[order[i]];
+        }
+    }
+
+
+    // public helpers
+
+    /**
+     * Retrieves stars whose coordinates differ from the center by at most
+     * 'radius' in both right ascension and declination.
+     *
+     * @param ra Right ascension of the center in degrees
+     * @param dec Declination of the center in degrees
+     * @param radius Maximal difference of coordinates in degrees
+     * @return Catalogue indices of retrieved stars in ascending order
+     */
+    public int[] query(float ra, float dec, float radius) {
+        float minRa = ra - radius;
+        float maxRa = ra + radius;
+        float minDec = dec - radius;
+        float maxDec = dec + radius;
+        int[] result = new int[16];
+        int count = 0;
+        int lastZone = getZone(maxDec);
+        for (int zone = getZone(minDec); zone <= lastZone; zone++) {
+            int to = zoneStarts[zone + 1];
+            for (int i = getFirstNotBelow(minRa, zoneStarts[zone], to); i < to && ras[i] <= maxRa; i++) {
+                if (decs[i] >= minDec && decs[i] <= maxDec) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, count * 2);
+                    }
+                    result[count++] = order[i];
+                }
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        // keep catalogue order, so that results do not depend on the index
+        Arrays.sort(result);
+        return result;
+    }
+
+
+    // private helpers
+
+    /**
+     * Retrieves zone of given declination, declinations out of range are
+     * assigned to the border zones.
+     */
+    private int getZone(float dec) {
+        int zone = (int) Math.floor((dec - MIN_DEC) / zoneHeight);
+        int lastZone = (int) Math.floor(-2 * MIN_DEC / zoneHeight);
+        return zone < 0 ? 0 : zone > lastZone ? lastZone : zone;
+    }
+
+    /**
+     * Retrieves the first index of [from, to) whose RA is not below 'ra'.
+     */
+    private int getFirstNotBelow(float ra, int from, int to) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ras[middle] < ra) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Retrieves bits of given float whose signed order is the numeric order
+     * of floats.
+     */
+    private static int getSortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+
+    // getters
+
+    public StarCatalog getCatalog() {
+        return stars;
+    }
+
+    public float getZoneHeight() {
+        return zoneHeight;
+    }
+
+}
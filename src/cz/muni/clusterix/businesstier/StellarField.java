@@ -7,13 +7,16 @@ import cz.muni.clusterix.entities.OpenCluster;
 import cz.muni.clusterix.entities.ProperMotion;
 import cz.muni.clusterix.entities.Result;
 import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.StarCatalog;
 import cz.muni.clusterix.exceptions.NoDataFoundException;
+import cz.muni.clusterix.entities.PmMoments;
 import cz.muni.clusterix.entities.PmStat;
 import cz.muni.clusterix.helpers.ClusterixConstants;
-import java.util.EnumSet;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import org.apache.log4j.Logger;
 
 /**
@@ -27,8 +30,18 @@ import org.apache.log4j.Logger;
 public class StellarField {
 
     static Logger log = Logger.getLogger(StellarField.class.getName());
+    // fields with fewer stars are prepared by the calling thread
+    private static final int PARALLEL_PREPARATION_THRESHOLD = 64 * 1024;
+    // number of chunks per task, so that uneven chunks are balanced
+    private static final int CHUNKS_PER_TASK = 4;
+    // relative enlargement of squares retrieved from the index
+    private static final float REGION_SLACK = 1e-3f;
     // all retrieved stars
-    private final Set<Star> stars;
+    private final StarCatalog stars;
+    // execution configuration of created functions, default one is used if NULL
+    private final ExecutionConfig config;
+    // index of 'stars', NULL if the whole field is prepared
+    private final StarIndex index;
     
     /**
      * Constructor.
@@ -36,7 +49,53 @@ public class StellarField {
      * @param stars Stars related to incestigated stellar field
      */
     public StellarField(Set<Star> stars) {
+        this(stars, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stars Catalogue of stars related to incestigated stellar field
+     */
+    public StellarField(StarCatalog stars) {
+        this(stars, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stars Stars related to incestigated stellar field
+     * @param config Execution configuration, default one is used if NULL
+     */
+    public StellarField(Set<Star> stars, ExecutionConfig config) {
+        this(StarCatalog.of(stars), config);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stars Catalogue of stars related to incestigated stellar field
+     * @param config Execution configuration, default one is used if NULL
+     */
+    public StellarField(StarCatalog stars, ExecutionConfig config) {
         this.stars = stars;
+        this.config = config;
+        this.index = null;
+    }
+
+    /**
+     * Constructor. Field is backed by indexed catalogue, only stars within
+     * the squares covered by masks are prepared for membership evaluation.
+     * Maximal mean proper motion of prepared fields is retrieved from the
+     * whole catalogue, so that results match the ones of unindexed field.
+     *
+     * @param index Index of catalogue of stars, it may be shared by more fields
+     * @param config Execution configuration, default one is used if NULL
+     */
+    public StellarField(StarIndex index, ExecutionConfig config) {
+        this.stars = index.getCatalog();
+        this.config = config;
+        this.index = index;
     }
 
     /**
@@ -53,34 +112,36 @@ public class StellarField {
     public Result evaluateProbabilities(OpenCluster cluster, FieldMask mask, Restrictions restrictions) throws NoDataFoundException {
 
         //separates stars that will be used for cluster+field PDF from those that will
-        //be used for creating field PDF
-        Set<Star> toProcess = this.getFilteredStars(restrictions);
-        Set<Star> clusterFieldStars = mask.getMarkedStars(toProcess, EnumSet.of(FieldType.CLUSTERFIELD));
-        Set<Star> fieldStars = mask.getMarkedStars(toProcess, EnumSet.of(FieldType.FIELD));
+        //be used for creating field PDF and from those that probabilities are assigned to
+        FieldMask vicinity = cluster.getDefaultMask(ClusterixConstants.DEFAULT_MASK_DENSITY);
+        PreparedField prepared = prepare(mask, vicinity, restrictions);
            
         // Actual plane size could be smaller than the one proposed via Restriction
-        restrictions.setMaxMu(getOptimalPlaneSize(toProcess, restrictions));        
+        double maxMu = prepared.getMaxMu();
+        restrictions.setMaxMu(restrictions.getMaxMu() != null && restrictions.getMaxMu() < maxMu ? 
+                restrictions.getMaxMu() : maxMu);        
+        if (restrictions.getSmoothParam() == null && prepared.getClusterFieldMoments().getCount() > 0) {
+            restrictions.setSmooth(Calc.getSmoothParam(prepared.getClusterFieldMoments()));
+        }
 
         // ...now calculate PM frequency functions...
-        PmFrequency clusterFieldFreq = new PmFrequency(clusterFieldStars, restrictions);        
-        restrictions.setSmooth(clusterFieldFreq.getSmoothParam()); 
-        PmFrequency fieldFreq = new PmFrequency(fieldStars, restrictions);
-        fieldFreq.scale(mask.getRatio(FieldType.CLUSTERFIELD, FieldType.FIELD));
-        PmFrequency clusterFreq = clusterFieldFreq.clone();
-        clusterFreq.subtract(fieldFreq);
-
-        // ...create PM probability function...
-        PmProbability result = new PmProbability(clusterFreq, clusterFieldFreq, restrictions);
+        PmFrequency clusterFieldFreq = new PmFrequency(prepared.getClusterFieldStars(), restrictions, config);        
+        PmFrequency fieldFreq = new PmFrequency(prepared.getFieldStars(), restrictions, config);
+
+        // ...create PM probability function, cluster function is never stored and
+        // probabilities overwrite field function...
+        PmProbability result = new PmProbability(clusterFieldFreq, fieldFreq, 
+                mask.getRatio(FieldType.CLUSTERFIELD, FieldType.FIELD), restrictions);
         restrictions.setGammaCoef(result.getGammaCoef());                         
         
         // ...assign probabilities to filtered stars around the cluster...
-        FieldMask vicinity = cluster.getDefaultMask(ClusterixConstants.DEFAULT_MASK_DENSITY);
-        Set<Star> candidates = vicinity.getMarkedStars(toProcess, EnumSet.of(FieldType.CLUSTERFIELD, FieldType.FIELD));        
+        StarCatalog candidates = prepared.getCandidates();
         List<Star> assigned = result.assignProbabsTo(candidates);
         
-        // ...retrieve proper motion stats                
-        ProperMotion fieldMotion = getMotionOf(assigned, false);
-        ProperMotion clusterMotion = getMotionOf(assigned, true);
+        // ...retrieve proper motion stats of members and field in a single pass
+        PmMoments[] motions = getMotionsOf(candidates);
+        ProperMotion fieldMotion = getMotionOf(motions[MotionTask.FIELD]);
+        ProperMotion clusterMotion = getMotionOf(motions[MotionTask.MEMBERS]);
         cluster.setMotion(clusterMotion);       
 
         log.info("Results were retrieved for cluster " + cluster.getName());        
@@ -96,77 +157,209 @@ public class StellarField {
      * @return stars that satisfy given restrictions
      */
     public Set<Star> getFilteredStars(Restrictions rest) {
-        Set<Star> filtered = new HashSet<Star>();
-        for (Star star : stars) {                        
-            if ((rest.getMaxMag() == null || star.getMagnitude() < rest.getMaxMag()) && 
-                    (rest.getMaxMuErr() == null || star.getProperMotion().getMeanMuErr() < rest.getMaxMuErr()) && 
-                    (rest.getMaxMu() == null || star.getProperMotion().getMeanMu() < rest.getMaxMu())) {                
-                filtered.add(star);
+        return new HashSet<Star>(getFilteredCatalog(rest).toStars());
+    }
+
+    /**
+     * GetFilteredCatalog method retrieves catalogue of stars that satisfy
+     * given restrictions.
+     *
+     * @param rest Restrictions
+     * @return catalogue of stars that satisfy given restrictions
+     */
+    public StarCatalog getFilteredCatalog(Restrictions rest) {
+        int[] filtered = new int[stars.size()];
+        int count = 0;
+        for (int i = 0; i < stars.size(); i++) {                        
+            if (satisfies(stars, i, stars.getMeanMu(i), rest)) {                
+                filtered[count++] = i;
+            }
+        }
+        return stars.select(filtered, count);
+    }
+
+    /**
+     * Prepares stars for membership evaluation in a single pass. Stars that
+     * satisfy given restrictions are classified by both masks, their maximal
+     * mean proper motion is tracked and moments of cluster + field sample are
+     * accumulated. Large fields are processed in parallel chunks, order of
+     * stars is kept. Fields backed by an index prepare only stars retrieved
+     * from the index for squares covered by both masks, maximal mean proper
+     * motion is still tracked over all stars of the catalogue. Moments are
+     * accumulated in star order once chunks are merged, so that they do not
+     * depend on chunking of either field.
+     *
+     * @param mask Definition of cluster-field and field samples
+     * @param vicinity Mask whose CLUSTERFIELD and FIELD stars are probability candidates
+     * @param rest Restrictions
+     * @return Prepared samples and statistics
+     */
+    public PreparedField prepare(FieldMask mask, FieldMask vicinity, Restrictions rest) {
+        StarCatalog source = index != null ? getRegion(mask, vicinity) : stars;
+        ExecutionConfig executionConfig = config != null ? config : ExecutionConfig.getDefault();
+        int chunks = source.size() < PARALLEL_PREPARATION_THRESHOLD ? 1 :
+                executionConfig.getParallelism() * CHUNKS_PER_TASK;
+        List<PreparationTask> tasks = new ArrayList<PreparationTask>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            tasks.add(new PreparationTask(source, (int) ((long) source.size() * chunk / chunks),
+                    (int) ((long) source.size() * (chunk + 1) / chunks), mask, vicinity, rest));
+        }
+        if (chunks == 1) {
+            tasks.get(0).call();
+        } else executionConfig.invokeAll(tasks);
+
+        // merge chunks in order
+        int[][] buckets = new int[PreparationTask.BUCKETS][];
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            int size = 0;
+            for (PreparationTask task : tasks) {
+                size += task.counts[bucket];
+            }
+            buckets[bucket] = new int[size];
+            int offset = 0;
+            for (PreparationTask task : tasks) {
+                System.arraycopy(task.indices[bucket], 0, buckets[bucket], offset, task.counts[bucket]);
+                offset += task.counts[bucket];
             }
         }
-        return filtered;
+        double maxMu = 0;
+        for (PreparationTask task : tasks) {
+            maxMu = Math.max(maxMu, task.maxMu);
+        }
+        if (index != null) {
+            // plane size is given by the whole catalogue, as it is for unindexed fields
+            maxMu = getMaxMu(stars, rest);
+        }
+        PmMoments moments = new PmMoments();
+        float[] muAlphas = source.getMuAlphas();
+        float[] muDeltas = source.getMuDeltas();
+        for (int i : buckets[PreparationTask.CLUSTERFIELD]) {
+            moments.add(muAlphas[i], muDeltas[i]);
+        }
+        return new PreparedField(
+                source.select(buckets[PreparationTask.CLUSTERFIELD], buckets[PreparationTask.CLUSTERFIELD].length),
+                source.select(buckets[PreparationTask.FIELD], buckets[PreparationTask.FIELD].length),
+                source.select(buckets[PreparationTask.CANDIDATE], buckets[PreparationTask.CANDIDATE].length),
+                maxMu, moments);
     }
 
     
     // private helpers
+
+    /**
+     * Retrieves stars of the indexed catalogue that may be marked by either
+     * of the masks.
+     */
+    private StarCatalog getRegion(FieldMask mask, FieldMask vicinity) {
+        int[] first = query(mask);
+        int[] second = query(vicinity);
+        // merge sorted indices, stars covered by both masks are taken once
+        int[] region = new int[first.length + second.length];
+        int count = 0;
+        int i = 0;
+        int u = 0;
+        while (i < first.length || u < second.length) {
+            int next = u == second.length || (i < first.length && first[i] <= second[u]) ?
+                    first[i] : second[u];
+            if (i < first.length && first[i] == next) {
+                i++;
+            }
+            if (u < second.length && second[u] == next) {
+                u++;
+            }
+            region[count++] = next;
+        }
+        return stars.select(region, count);
+    }
+
+    /**
+     * Retrieves maximal mean proper motion of stars of given catalogue that
+     * satisfy restrictions, 0 if there is no such star.
+     */
+    private static double getMaxMu(StarCatalog stars, Restrictions rest) {
+        double maxMu = 0;
+        for (int i = 0; i < stars.size(); i++) {
+            double meanMu = stars.getMeanMu(i);
+            if (satisfies(stars, i, meanMu, rest)) {
+                maxMu = Math.max(maxMu, meanMu);
+            }
+        }
+        return maxMu;
+    }
+
+    private int[] query(FieldMask mask) {
+        float halfSize = mask.getHalfSize() / (float) ClusterixConstants.ARCSECS_IN_DEGREE;
+        // slack covers rounding of mask coordinates, extra stars are classified as NONE
+        return index.query(mask.getRightAscension().getDegrees(), mask.getDeclination().getDegrees(),
+                halfSize * (1 + REGION_SLACK));
+    }
     
     /**
-     * This method returns implicit maximum PM that will be used to estimate
-     * sizes of empirical frequency (and propability density) function grids.
+     * Checks whether i-th star of given catalogue satisfies restrictions.
      *
-     * @param stars Stars to be checked for PMs
-     * @param rest Restrictions to be checked for max PM definition
-     * @return Optimal plane size
-     */
-    private double getOptimalPlaneSize(Set<Star> stars, Restrictions rest) {
-        double max = 0;
-        for (Star star : stars) {
-            if(star.getProperMotion().getMeanMu() > max){
-                max = star.getProperMotion().getMeanMu();
-            }            
-        }
-        return rest.getMaxMu() != null && rest.getMaxMu() < max ? rest.getMaxMu() : max;        
-    }    
+     * @param stars Catalogue of stars
+     * @param i Star index
+     * @param meanMu Mean proper motion of the star
+     * @param rest Restrictions
+     * @return 'True' if the star satisfies all restrictions
+     */
+    private static boolean satisfies(StarCatalog stars, int i, double meanMu, Restrictions rest) {
+        return (rest.getMaxMag() == null || stars.getMagnitudes()[i] < rest.getMaxMag()) && 
+                (rest.getMaxMuErr() == null || stars.getMeanMuErr(i) < rest.getMaxMuErr()) && 
+                (rest.getMaxMu() == null || meanMu < rest.getMaxMu());
+    }
     
     
     /**
-     * Retrieves proper motion of probable cluster members (for boolean parameter set 
-     * to 'true') or field candidates (boolean parameter set to 'false').
-     * TODO: stars are sorted, it is not necessary to iterate over whole set in order
-     * to mark cluster/field members...
-     * 
-     * @param stars List of stars to be examined
-     * @param clusterMembers 'True' if cluster members should be evaluated, 'false' otherwise
-     * @return Mean proper motion of relevant set of stars
+     * Accumulates proper motion statistics of probable cluster members and of
+     * field candidates in a single pass. Large catalogues are processed in
+     * parallel chunks whose accumulators are merged in order.
+     *
+     * @param stars Catalogue of stars with assigned membership
+     * @return Moments of field candidates (at MotionTask.FIELD) and of
+     * cluster members (at MotionTask.MEMBERS)
      */
-    private ProperMotion getMotionOf(List<Star> stars, boolean clusterMembers) {                
-        ProperMotion result = null;        
-        
-        // retrieve stats          
-        int numOfStars = 0;
-        PmStat pmStat = new PmStat(0, 0);
-        PmStat pmErrStat = new PmStat(0, 0);        
-        for(Star star : stars){
-            if(clusterMembers == star.isClusterStar()){
-                // sum PMs of each star
-                pmStat.addToAlpha(star.getProperMotion().getMuAlpha());
-                pmStat.addToDelta(star.getProperMotion().getMuDelta());                
-                if(star.getProperMotion().getMuAlphaErr() != null &&
-                        star.getProperMotion().getMuDeltaErr() != null){
-                    // sum PM ERR squares
-                    pmErrStat.addToAlpha(Calc.square(star.getProperMotion().getMuAlphaErr()));
-                    pmErrStat.addToDelta(Calc.square(star.getProperMotion().getMuDeltaErr()));                    
-                }
-                numOfStars++;
+    private PmMoments[] getMotionsOf(StarCatalog stars) {
+        ExecutionConfig executionConfig = config != null ? config : ExecutionConfig.getDefault();
+        int chunks = stars.size() < PARALLEL_PREPARATION_THRESHOLD ? 1 :
+                executionConfig.getParallelism() * CHUNKS_PER_TASK;
+        List<MotionTask> tasks = new ArrayList<MotionTask>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            tasks.add(new MotionTask(stars, (int) ((long) stars.size() * chunk / chunks),
+                    (int) ((long) stars.size() * (chunk + 1) / chunks)));
+        }
+        if (chunks == 1) {
+            tasks.get(0).call();
+        } else executionConfig.invokeAll(tasks);
+
+        PmMoments[] motions = {new PmMoments(), new PmMoments()};
+        for (MotionTask task : tasks) {
+            for (int group = 0; group < motions.length; group++) {
+                motions[group].merge(task.motions[group]);
             }
         }
-                
+        return motions;
+    }
+
+    /**
+     * Retrieves proper motion of relevant set of stars (probable cluster
+     * members or field candidates) from its statistics.
+     * 
+     * @param moments Statistics of relevant set of stars
+     * @return Mean proper motion of relevant set of stars, NULL for empty set
+     */
+    private ProperMotion getMotionOf(PmMoments moments) {                
+        ProperMotion result = null;        
+        long numOfStars = moments.getCount();
         if(numOfStars > 0){
-            float muAlpha = (float) (pmStat.getAlphaStat() / Calc.square(numOfStars));            
-            float muDelta = (float) (pmStat.getDeltaStat() / Calc.square(numOfStars));
+            PmStat mean = moments.getMean();
+            PmStat errSquares = moments.getErrSquares();
+            // mean / n equals sum / n^2, the scaling used so far is kept on purpose
+            float muAlpha = (float) (mean.getAlphaStat() / numOfStars);            
+            float muDelta = (float) (mean.getDeltaStat() / numOfStars);
             // assume that ALL or NONE stars were proposed with PM errors
-            float muAlphaErr = (float) (pmErrStat.getAlphaStat() / Calc.square(numOfStars));
-            float muDeltaErr = (float) (pmErrStat.getDeltaStat() / Calc.square(numOfStars));
+            float muAlphaErr = (float) (errSquares.getAlphaStat() / Calc.square(numOfStars));
+            float muDeltaErr = (float) (errSquares.getDeltaStat() / Calc.square(numOfStars));
             result = new ProperMotion(muAlpha, muAlphaErr, muDelta, muDeltaErr);
         }
         
@@ -174,9 +367,114 @@ public class StellarField {
     }
     
     
+    // private classes
+
+    /**
+     * Prepares contiguous chunk of stars, see prepare(FieldMask, FieldMask, Restrictions).
+     */
+    private static class PreparationTask implements Callable<Void> {
+
+        private static final int CLUSTERFIELD = 0;
+        private static final int FIELD = 1;
+        private static final int CANDIDATE = 2;
+        private static final int BUCKETS = 3;
+
+        private final StarCatalog stars;
+        private final int from;
+        private final int to;
+        private final FieldMask mask;
+        private final FieldMask vicinity;
+        private final Restrictions rest;
+        // catalogue indices of stars of each bucket
+        private final int[][] indices = new int[BUCKETS][];
+        private final int[] counts = new int[BUCKETS];
+        private double maxMu;
+
+        public PreparationTask(StarCatalog stars, int from, int to, FieldMask mask,
+                FieldMask vicinity, Restrictions rest) {
+            this.stars = stars;
+            this.from = from;
+            this.to = to;
+            this.mask = mask;
+            this.vicinity = vicinity;
+            this.rest = rest;
+        }
+
+        @Override
+        public Void call() {
+            byte[] maskTypes = new byte[to - from];
+            byte[] vicinityTypes = new byte[to - from];
+            mask.classify(stars, from, to, maskTypes, 0);
+            vicinity.classify(stars, from, to, vicinityTypes, 0);
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                indices[bucket] = new int[to - from];
+            }
+            byte clusterField = (byte) FieldType.CLUSTERFIELD.ordinal();
+            byte field = (byte) FieldType.FIELD.ordinal();
+            for (int i = from; i < to; i++) {
+                double meanMu = stars.getMeanMu(i);
+                if (!satisfies(stars, i, meanMu, rest)) {
+                    continue;
+                }
+                maxMu = Math.max(maxMu, meanMu);
+                byte maskType = maskTypes[i - from];
+                if (maskType == clusterField) {
+                    indices[CLUSTERFIELD][counts[CLUSTERFIELD]++] = i;
+                } else if (maskType == field) {
+                    indices[FIELD][counts[FIELD]++] = i;
+                }
+                byte vicinityType = vicinityTypes[i - from];
+                if (vicinityType == clusterField || vicinityType == field) {
+                    indices[CANDIDATE][counts[CANDIDATE]++] = i;
+                }
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * Accumulates proper motion statistics of contiguous chunk of stars,
+     * see getMotionsOf(StarCatalog).
+     */
+    private static class MotionTask implements Callable<Void> {
+
+        private static final int FIELD = 0;
+        private static final int MEMBERS = 1;
+
+        private final StarCatalog stars;
+        private final int from;
+        private final int to;
+        private final PmMoments[] motions = {new PmMoments(), new PmMoments()};
+
+        public MotionTask(StarCatalog stars, int from, int to) {
+            this.stars = stars;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Void call() {
+            float[] muAlphas = stars.getMuAlphas();
+            float[] muDeltas = stars.getMuDeltas();
+            float[] muAlphaErrs = stars.getMuAlphaErrs();
+            float[] muDeltaErrs = stars.getMuDeltaErrs();
+            for (int i = from; i < to; i++) {
+                motions[stars.isClusterStar(i) ? MEMBERS : FIELD].add(muAlphas[i], muDeltas[i],
+                        muAlphaErrs[i], muDeltaErrs[i]);
+            }
+            return null;
+        }
+    }
+
+    
     //getters
     
     public Set<Star> getStars() {
+        return new HashSet<Star>(stars.toStars());
+    }
+
+    public StarCatalog getCatalog() {
         return stars;
     }
         
@@ -192,7 +490,7 @@ public class StellarField {
             return false;
         }
         final StellarField other = (StellarField) obj;
-        if (this.stars != other.stars && (this.stars == null || !this.stars.equals(other.stars))) {
+        if (this.stars != other.stars && (this.stars == null || !this.getStars().equals(other.getStars()))) {
             return false;
         }
         return true;
@@ -201,7 +499,7 @@ public class StellarField {
     @Override
     public int hashCode() {
         int hash = 5;
-        hash = 79 * hash + (this.stars != null ? this.stars.hashCode() : 0);
+        hash = 79 * hash + (this.stars != null ? this.getStars().hashCode() : 0);
         return hash;
     }
     
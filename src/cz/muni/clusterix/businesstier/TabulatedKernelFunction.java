@@ -0,0 +1,102 @@
+package cz.muni.clusterix.businesstier;
+
+import static java.lang.Math.*;
+
+/**
+ * Kernel function that interpolates linearly between values of exp(-0.5 * t)
+ * precomputed in equidistant points. Error of linear interpolation of
+ * exp(-0.5 * t) over a step of length d is at most d^2 / 32 of the value at
+ * the start of the step. Step d = sqrt(16 * maxRelativeError) keeps it below
+ * half of maxRelativeError and the value drops by less than half over the
+ * step, so relative error is below maxRelativeError. Table spans arguments
+ * up to cutoff^2, where cutoff is kernel support radius in smoothParam units,
+ * the kernel is 0 beyond it (see TruncatedDensityEstimator).
+ *
+ * Table is created once and it is immutable, so single instance may be shared
+ * by any number of threads and frequency functions of any bandwidth.
+ *
+ * @author Tomas Sezima
+ */
+public class TabulatedKernelFunction implements KernelFunction {
+
+    // default bound of relative error within kernel support
+    public static final double DEFAULT_MAX_RELATIVE_ERROR = 1e-6;
+    // larger errors would make the bound above inexact
+    private static final double MAX_RELATIVE_ERROR_LIMIT = 0.1;
+
+    private final double maxRelativeError;
+    private final double cutoff;
+    private final double inverseStep;
+    private final double lastPosition;
+    // value of i-th point is stored at [2i], slope of following step at [2i + 1]
+    private final double[] table;
+
+    /**
+     * Constructor. Default error bound is used, kernel support is derived from
+     * default tolerance of TruncatedDensityEstimator.
+     */
+    public TabulatedKernelFunction() {
+        this(DEFAULT_MAX_RELATIVE_ERROR);
+    }
+
+    /**
+     * Constructor. Kernel support is derived from default tolerance of
+     * TruncatedDensityEstimator.
+     *
+     * @param maxRelativeError Bound of relative error, from interval (0, 0.1]
+     */
+    public TabulatedKernelFunction(double maxRelativeError) {
+        this(maxRelativeError, TruncatedDensityEstimator.getCutoffOf(
+                TruncatedDensityEstimator.DEFAULT_TOLERANCE));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxRelativeError Bound of relative error, from interval (0, 0.1]
+     * @param cutoff Kernel support radius in smoothParam units, positive
+     */
+    public TabulatedKernelFunction(double maxRelativeError, double cutoff) {
+        if (!(maxRelativeError > 0 && maxRelativeError <= MAX_RELATIVE_ERROR_LIMIT)) {
+            throw new IllegalArgumentException("Maximal relative error has to be from interval (0, 0.1].");
+        }
+        if (!(cutoff > 0)) {
+            throw new IllegalArgumentException("Kernel cutoff has to be positive number.");
+        }
+        this.maxRelativeError = maxRelativeError;
+        this.cutoff = cutoff;
+        double step = sqrt(16 * maxRelativeError);
+        int steps = (int) ceil(cutoff * cutoff / step);
+        this.inverseStep = 1 / step;
+        this.lastPosition = cutoff * cutoff * inverseStep;
+        this.table = new double[2 * (steps + 1)];
+        for (int i = 0; i <= steps; i++) {
+            table[2 * i] = exp(-0.5 * i * step);
+        }
+        for (int i = 0; i < steps; i++) {
+            table[2 * i + 1] = table[2 * i + 2] - table[2 * i];
+        }
+    }
+
+    @Override
+    public double evaluate(double t) {
+        double position = t * inverseStep;
+        if (!(position < lastPosition)) {
+            return 0;
+        }
+        int i = (int) position;
+        return table[2 * i] + (position - i) * table[2 * i + 1];
+    }
+
+
+    // getters
+
+    public double getMaxRelativeError() {
+        return maxRelativeError;
+    }
+
+    public double getCutoff() {
+        return cutoff;
+    }
+
+}
@@ -0,0 +1,160 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.StarCatalog;
+import static cz.muni.clusterix.businesstier.PmFunction.CELLSIZE;
+import static java.lang.Math.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Density estimation engine that evaluates kernel sum star by star. Each star
+ * contributes only to cells within 'cutoff' * smoothParam distance from its proper
+ * motion, i.e. kernel contributions smaller than tolerance are neglected.
+ * Computational complexity is therefore O(stars * window^2) instead of
+ * O(cells * stars). Grid is split into row bands that are processed in parallel,
+ * so that threads never write to the same cell.
+ *
+ * @author Tomas Sezima
+ */
+public class TruncatedDensityEstimator implements DensityEstimator {
+
+    // relative kernel value below which star contributions are neglected
+    public static final double DEFAULT_TOLERANCE = 1e-7;
+
+    // kernel support radius in smoothParam units
+    private final double cutoff;
+
+    /**
+     * Constructor. Kernel support is derived from default tolerance.
+     */
+    public TruncatedDensityEstimator() {
+        this(getCutoffOf(DEFAULT_TOLERANCE));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cutoff Kernel support radius in smoothParam units, positive
+     */
+    public TruncatedDensityEstimator(double cutoff) {
+        if (cutoff <= 0) {
+            throw new IllegalArgumentException("Kernel cutoff has to be positive number.");
+        }
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * Retrieves kernel support radius (in smoothParam units) beyond which normal
+     * kernel drops below given fraction of its maximum, i.e. solves
+     * exp(-0.5 * k^2) = tolerance.
+     *
+     * @param tolerance Relative kernel value, from interval (0, 1)
+     * @return Kernel support radius
+     */
+    public static double getCutoffOf(double tolerance) {
+        if (tolerance <= 0 || tolerance >= 1) {
+            throw new IllegalArgumentException("Tolerance has to be from interval (0, 1).");
+        }
+        return sqrt(-2 * log(tolerance));
+    }
+
+    @Override
+    public void estimate(PmFrequency function, StarCatalog stars, Restrictions restrictions) {
+        Grid grid = function.getValues();
+        ExecutionConfig config = function.getExecutionConfig();
+        int tasks = config.getParallelism();
+        int bandSize = (int) ceil((double) grid.getSize() / tasks);
+        List<BandExecutor> executors = new ArrayList<BandExecutor>(tasks);
+
+        // Split the grid into row bands and wait until the work is done
+        for (int i = 0; i < tasks; i++) {
+            executors.add(new BandExecutor(grid, i * bandSize,
+                    min((i + 1) * bandSize, grid.getSize()), stars,
+                    function.getSmoothParam(), PmFrequency.getKernelOf(restrictions),
+                    restrictions.getMaxMu()));
+        }
+        config.invokeAll(executors);
+    }
+
+
+    // getters
+
+    public double getCutoff() {
+        return cutoff;
+    }
+
+
+    // private classes
+
+    /**
+     * Scatters kernel contributions of all stars into rows [fromRow, toRow)
+     * of the grid.
+     */
+    private class BandExecutor implements Callable<Void> {
+
+        private final Grid grid;
+        private final int fromRow;
+        private final int toRow;
+        private final int numOfStars;
+        private final float[] muAlphas;
+        private final float[] muDeltas;
+        private final double smoothParam;
+        private final KernelFunction kernel;
+        private final double maxMu;
+
+        public BandExecutor(Grid grid, int fromRow, int toRow, StarCatalog stars,
+                double smoothParam, KernelFunction kernel, double maxMu) {
+            this.grid = grid;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.numOfStars = stars.size();
+            this.muAlphas = stars.getMuAlphas();
+            this.muDeltas = stars.getMuDeltas();
+            this.smoothParam = smoothParam;
+            this.kernel = kernel;
+            this.maxMu = maxMu;
+        }
+
+        @Override
+        public Void call() {
+            int size = grid.getSize();
+            int center = size / 2;
+            double halfWidth = cutoff * smoothParam / CELLSIZE;
+            double volume = 1.0 / (2 * PI * smoothParam * smoothParam);
+            double inverseSquare = 1 / (smoothParam * smoothParam);
+
+            for (int s = 0; s < numOfStars; s++) {
+                // retrieve star's window, clipped by 'this' band
+                double x = center - muAlphas[s] / CELLSIZE;
+                double y = center - muDeltas[s] / CELLSIZE;
+                int rowFrom = (int) max(ceil(x - halfWidth), fromRow);
+                int rowTo = (int) min(floor(x + halfWidth) + 1, toRow);
+                int colFrom = (int) max(ceil(y - halfWidth), 0);
+                int colTo = (int) min(floor(y + halfWidth) + 1, size);
+
+                for (int i = rowFrom; i < rowTo; i++) {
+                    double dx = muAlphas[s] - (center - i) * CELLSIZE;
+                    int rowStart = grid.index(i, 0);
+                    for (int u = colFrom; u < colTo; u++) {
+                        double dy = muDeltas[s] - (center - u) * CELLSIZE;
+                        grid.store(rowStart + u, (float) (grid.get(rowStart + u)
+                                + volume * kernel.evaluate((dx * dx + dy * dy) * inverseSquare)));
+                    }
+                }
+            }
+
+            // apply proper motion limitation
+            for (int i = fromRow; i < toRow; i++) {
+                for (int u = 0; u < size; u++) {
+                    if (hypot((center - i) * CELLSIZE, (center - u) * CELLSIZE) >= maxMu) {
+                        grid.store(grid.index(i, u), 0);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.StarCatalog;
+import static cz.muni.clusterix.businesstier.PmFunction.CELLSIZE;
+import static cz.muni.clusterix.helpers.Calc.expOfNonPositive;
+import static java.lang.Math.*;
+
+/**
+ * Density estimation engine that evaluates the same kernel sum as
+ * ExactDensityEstimator, but processes whole grid rows against star arrays
+ * instead of calling kernel operator for each cell. For each row and star
+ * the kernel is evaluated over all columns of the row within maximal proper
+ * motion in a single loop of multiplications and additions (exponential is
+ * approximated by Calc.expOfNonPositive), which JIT compiler vectorizes
+ * where the processor supports it and runs as scalar code otherwise.
+ * Relative error of each kernel contribution is below 1e-8 within 6.3
+ * smoothParam distance from the star. Kernel function requested by
+ * restrictions is used instead of the approximation if set, table lookups
+ * are not vectorized though.
+ *
+ * Grid is split into row blocks that are processed in parallel, so that
+ * threads never write to the same cell.
+ *
+ * @author Tomas Sezima
+ */
+public class VectorizedDensityEstimator implements DensityEstimator {
+
+    @Override
+    public void estimate(PmFrequency function, StarCatalog stars, Restrictions restrictions) {
+        function.getExecutionConfig().invokeRowBlocks(function.getValues().getSize(),
+                new RowEstimation(function.getValues(), stars, function.getSmoothParam(),
+                        restrictions.getKernel(), restrictions.getMaxMu()));
+    }
+
+
+    // private classes
+
+    /**
+     * Evaluates kernel sums of rows of the grid, sums are accumulated in
+     * double precision.
+     */
+    private static class RowEstimation implements RowProcessor {
+
+        private final Grid grid;
+        private final int numOfStars;
+        private final float[] muAlphas;
+        private final float[] muDeltas;
+        private final double smoothParam;
+        // kernel function, polynomial approximation is used if NULL
+        private final KernelFunction kernel;
+        private final double maxMu;
+
+        public RowEstimation(Grid grid, StarCatalog stars, double smoothParam,
+                KernelFunction kernel, double maxMu) {
+            this.grid = grid;
+            this.numOfStars = stars.size();
+            this.muAlphas = stars.getMuAlphas();
+            this.muDeltas = stars.getMuDeltas();
+            this.smoothParam = smoothParam;
+            this.kernel = kernel;
+            this.maxMu = maxMu;
+        }
+
+        @Override
+        public void process(int fromRow, int toRow) {
+            int size = grid.getSize();
+            int center = size / 2;
+            double volume = 1.0 / (2 * PI * smoothParam * smoothParam);
+            double coef = -0.5 / (smoothParam * smoothParam);
+            double[] positions = new double[size];
+            for (int y = 0; y < size; y++) {
+                positions[y] = (center - y) * CELLSIZE;
+            }
+            double[] sums = new double[size];
+
+            for (int x = fromRow; x < toRow; x++) {
+                int reach = PmFunction.getReach(center - x, maxMu, size);
+                if (reach < 0) {
+                    continue;
+                }
+                int colFrom = max(0, center - reach);
+                int colTo = min(size, center + reach + 1);
+                for (int y = colFrom; y < colTo; y++) {
+                    sums[y] = 0;
+                }
+                for (int s = 0; s < numOfStars; s++) {
+                    double dx = muAlphas[s] - (center - x) * CELLSIZE;
+                    double rowArgument = coef * (dx * dx);
+                    double muDelta = muDeltas[s];
+                    if (kernel == null) {
+                        for (int y = colFrom; y < colTo; y++) {
+                            double dy = muDelta - positions[y];
+                            sums[y] += expOfNonPositive(rowArgument + coef * (dy * dy));
+                        }
+                    } else {
+                        for (int y = colFrom; y < colTo; y++) {
+                            double dy = muDelta - positions[y];
+                            sums[y] += kernel.evaluate(-2 * (rowArgument + coef * (dy * dy)));
+                        }
+                    }
+                }
+                int rowStart = grid.index(x, 0);
+                for (int y = colFrom; y < colTo; y++) {
+                    grid.store(rowStart + y, (float) (volume * sums[y]));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,300 @@
+package cz.muni.clusterix.commandline;
+
+import cz.muni.clusterix.entities.Declination;
+import cz.muni.clusterix.entities.ProperMotion;
+import cz.muni.clusterix.entities.RightAscension;
+import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.StarCatalog;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming parser of tab separated star catalogues. Lines are tokenized
+ * directly in a byte buffer and numbers are parsed without creating
+ * intermediate Strings. Syntax accepted is the one of sample data files
+ * (https://github.com/seziCZ/Clusterix): lines starting with '#' and empty
+ * lines are skipped, other lines contain star number, right ascension,
+ * declination, proper motion in alpha, its error, proper motion in delta and
+ * its error separated by single tabulators; remaining columns are ignored.
+ * Lines may be terminated by '\n', '\r\n' or '\r'. Catalogue is expected to be
+ * in ASCII compatible encoding.
+ *
+ * Malformed tokens are reported as InputMismatchException, missing ones as
+ * NoSuchElementException (the same way Scanner does), getLineNumber() then
+ * retrieves number of the offending line.
+ *
+ * @author Tomas Sezima
+ */
+public class CatalogueParser {
+
+    private static final byte COMMENT_CHAR = '#';
+    private static final byte DATA_SEPARATOR = '\t';
+    // values with more significant digits are parsed by Float.parseFloat
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // tokens accepted by the slow path
+    private static final Pattern DECIMAL = Pattern.compile(
+            "[+-]?(NaN|Infinity|(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?)");
+    // magnitude is not part of catalogues, single boxed instance is shared
+    private static final Float NO_MAGNITUDE = 0.0f;
+
+    // parsed stars are added either to collection or to catalogue
+    private final Collection<Star> stars;
+    private final StarCatalog catalog;
+    // number of line being parsed
+    private int lineNumber;
+    // end of the token parsed most recently
+    private int tokenEnd;
+
+    /**
+     * Constructor.
+     *
+     * @param stars Collection parsed stars are added to
+     */
+    public CatalogueParser(Collection<Star> stars) {
+        this(stars, 1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stars Collection parsed stars are added to
+     * @param firstLineNumber Number of the first parsed line
+     */
+    public CatalogueParser(Collection<Star> stars, int firstLineNumber) {
+        this.stars = stars;
+        this.catalog = null;
+        this.lineNumber = firstLineNumber;
+    }
+
+    /**
+     * Constructor. Parsed values are stored directly, no Star objects are
+     * created.
+     *
+     * @param catalog Catalogue parsed stars are added to
+     * @param firstLineNumber Number of the first parsed line
+     */
+    public CatalogueParser(StarCatalog catalog, int firstLineNumber) {
+        this.stars = null;
+        this.catalog = catalog;
+        this.lineNumber = firstLineNumber;
+    }
+
+    /**
+     * Parses all complete lines between buffer's position and limit. Buffer
+     * position is moved behind the last parsed line, so that remaining bytes
+     * may be completed by further input (e.g. after buffer.compact()).
+     *
+     * @param buffer Buffer containing catalogue data
+     * @param endOfInput 'True' if no more data follow, the last line does
+     * not have to be terminated then
+     */
+    public void parse(ByteBuffer buffer, boolean endOfInput) {
+        int limit = buffer.limit();
+        int lineStart = buffer.position();
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r') {
+                lineEnd++;
+            }
+
+            // retrieve beginning of the next line, wait for more data if line is not complete
+            int next;
+            if (lineEnd == limit) {
+                if (!endOfInput) break;
+                next = limit;
+            } else if (buffer.get(lineEnd) == '\r') {
+                if (lineEnd + 1 == limit && !endOfInput) break;
+                next = lineEnd + 1 < limit && buffer.get(lineEnd + 1) == '\n' ? lineEnd + 2 : lineEnd + 1;
+            } else next = lineEnd + 1;
+
+            // drop commented and empty lines
+            if (lineEnd > lineStart && buffer.get(lineStart) != COMMENT_CHAR) {
+                parseLine(buffer, lineStart, lineEnd);
+            }
+            lineNumber++;
+            lineStart = next;
+            buffer.position(lineStart);
+        }
+    }
+
+
+    // getters
+
+    /**
+     * Retrieves number of the line to be parsed next, or number of the
+     * offending line if parsing failed.
+     *
+     * @return Line number
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+
+    // private helpers
+
+    private void parseLine(ByteBuffer buffer, int from, int to) {
+        tokenEnd = from - 1;
+        int no = parseInt(buffer, nextToken(buffer, to), tokenEnd);
+        float ra = parseFloat(buffer, nextToken(buffer, to), tokenEnd);
+        float dec = parseFloat(buffer, nextToken(buffer, to), tokenEnd);
+        float raPm = parseFloat(buffer, nextToken(buffer, to), tokenEnd);
+        float raPmErr = parseFloat(buffer, nextToken(buffer, to), tokenEnd);
+        float decPm = parseFloat(buffer, nextToken(buffer, to), tokenEnd);
+        float decPmErr = parseFloat(buffer, nextToken(buffer, to), tokenEnd);
+
+        if (catalog != null) {
+            catalog.add(no, NO_MAGNITUDE, ra, dec, raPm, raPmErr, decPm, decPmErr);
+            return;
+        }
+
+        //store as star
+        RightAscension ascension = new RightAscension(ra, 0.0f);
+        Declination declination = new Declination(dec, 0.0f);
+        ProperMotion motion = new ProperMotion(raPm, raPmErr, decPm, decPmErr);
+        stars.add(new Star(no, NO_MAGNITUDE, ascension, declination, motion));
+    }
+
+    /**
+     * Moves to the token following the most recent one.
+     *
+     * @return Start of the token, its end is stored in 'tokenEnd'
+     */
+    private int nextToken(ByteBuffer buffer, int lineEnd) {
+        int start = tokenEnd + 1;
+        if (start > lineEnd) {
+            throw new NoSuchElementException();
+        }
+        int end = start;
+        while (end < lineEnd && buffer.get(end) != DATA_SEPARATOR) {
+            end++;
+        }
+        tokenEnd = end;
+        return start;
+    }
+
+    private int parseInt(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        if (i == to) {
+            throw new InputMismatchException();
+        }
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new InputMismatchException();
+            }
+            result = result * 10 + digit;
+            if (result > (long) Integer.MAX_VALUE + 1) {
+                throw new InputMismatchException();
+            }
+        }
+        result = negative ? -result : result;
+        if (result > Integer.MAX_VALUE) {
+            throw new InputMismatchException();
+        }
+        return (int) result;
+    }
+
+    /**
+     * Parses decimal number of form [sign]digits[.digits][(e|E)[sign]digits].
+     * Numbers whose mantissa fits into double exactly are evaluated directly,
+     * the others (and special values such as NaN) by Float.parseFloat.
+     */
+    private float parseFloat(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean anyDigit = false;
+        boolean dot = false;
+        for (; i < to; i++) {
+            byte c = buffer.get(i);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (digits < MAX_FAST_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) digits++;
+                    if (dot) scale++;
+                } else {
+                    // precision exceeded, fall back
+                    return parseFloatSlow(buffer, from, to);
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else break;
+        }
+        if (!anyDigit) {
+            return parseFloatSlow(buffer, from, to);
+        }
+
+        int exponent = 0;
+        if (i < to) {
+            byte c = buffer.get(i);
+            if (c != 'e' && c != 'E') {
+                return parseFloatSlow(buffer, from, to);
+            }
+            i++;
+            boolean negativeExp = false;
+            if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExp = buffer.get(i) == '-';
+                i++;
+            }
+            if (i == to) {
+                throw new InputMismatchException();
+            }
+            for (; i < to; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9 || exponent > 1000) {
+                    return parseFloatSlow(buffer, from, to);
+                }
+                exponent = exponent * 10 + digit;
+            }
+            exponent = negativeExp ? -exponent : exponent;
+        }
+
+        int exp10 = exponent - scale;
+        if (exp10 < -22 || exp10 > 22) {
+            return parseFloatSlow(buffer, from, to);
+        }
+        double value = exp10 >= 0 ? mantissa * POWERS_OF_TEN[exp10] : mantissa / POWERS_OF_TEN[-exp10];
+        return (float) (negative ? -value : value);
+    }
+
+    private float parseFloatSlow(ByteBuffer buffer, int from, int to) {
+        byte[] token = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            token[i - from] = buffer.get(i);
+        }
+        String value = new String(token, StandardCharsets.US_ASCII);
+        // Float.parseFloat is more benevolent (whitespaces, type suffixes, hex)
+        if (!DECIMAL.matcher(value).matches()) {
+            throw new InputMismatchException();
+        }
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException ex) {
+            throw new InputMismatchException();
+        }
+    }
+
+}
@@ -15,6 +15,17 @@ public class CommandlineConstants {
     public static final int CONFIG_PATH_POSITION = 1;
     public static final int OUTPUT_PATH_POSITION = 2;
     
+    // batch mode parameters, i.e. --batch <data> <manifest> <output dir>
+    public static final String BATCH_FLAG = "--batch";
+    public static final int BATCH_NUM_OF_ARGS = 4;
+    public static final int BATCH_DATA_PATH_POSITION = 1;
+    public static final int BATCH_MANIFEST_PATH_POSITION = 2;
+    public static final int BATCH_OUTPUT_DIR_POSITION = 3;
+    public static final String BATCH_OUTPUT_SUFFIX = ".txt";
+    
+    // data files larger than this (in bytes) are memory-mapped and parsed in parallel
+    public static final long MAPPED_LOADING_THRESHOLD = 32 * 1024 * 1024;
+    
     // config constants        
     public static final String CLUSTER_RA_PARAM = "cluster_ra";
     public static final String CLUSTER_DEC_PARAM = "cluster_dec";
@@ -1,6 +1,7 @@
 package cz.muni.clusterix.commandline;
 
 import com.floreysoft.jmte.Engine;
+import cz.muni.clusterix.businesstier.ExecutionConfig;
 import cz.muni.clusterix.entities.Restrictions;
 import cz.muni.clusterix.entities.Declination;
 import cz.muni.clusterix.entities.OpenCluster;
@@ -8,24 +9,30 @@ import cz.muni.clusterix.entities.ProperMotion;
 import cz.muni.clusterix.entities.Result;
 import cz.muni.clusterix.entities.RightAscension;
 import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.StarCatalog;
 import cz.muni.clusterix.helpers.ClusterixConstants;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.io.IOUtils;
@@ -40,9 +47,19 @@ public class DataAccessor {
 
     private static final Logger log = Logger.getLogger(DataAccessor.class.getName());
 
-    private static final String COMMENT_CHAR = "#";
     private static final String DATA_SEPARATOR = "\t";
     private static final String OUTPUT_HEADER_PATH = "resultheader.vm";
+    // cluster blocks of batch manifests start by [cluster name]
+    private static final String BATCH_BLOCK_START = "[";
+    private static final String BATCH_BLOCK_END = "]";
+    // initial size of catalogue read buffer, it grows if a line does not fit
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // memory-mapped catalogues are split into chunks of the following size range
+    private static final long MIN_CHUNK_SIZE = 64 * 1024;
+    private static final long MAX_CHUNK_SIZE = 256 * 1024 * 1024;
+    // number of chunks per task, so that uneven chunks are balanced
+    private static final int CHUNKS_PER_TASK = 4;
+    private static final int LINE_SEARCH_BUFFER_SIZE = 4 * 1024;
 
     private final Engine engine;
 
@@ -59,42 +76,108 @@ public class DataAccessor {
      * @throws java.nio.file.FileSystemException
      */
     public Set<Star> getStars(Path path) throws FileSystemException, IOException {
-        Set<Star> stars = new HashSet<Star>();
-        BufferedReader reader = Files.newBufferedReader(path, Charset.defaultCharset());
-        String line = reader.readLine();
-        int lineNumberCounter = 1;
-        // for each line...
-        while (line != null) {
-            // drop commented and empty lines
-            if (!line.startsWith(COMMENT_CHAR) && !line.isEmpty()) {
-                Scanner s = new Scanner(line).useDelimiter("\\t");
-                s.useLocale(Locale.ENGLISH);
+        return new HashSet<Star>(getCatalog(path).toStars());
+    }
 
-                try {
-                    // retrieve parameters
-                    int no = s.nextInt();
-                    float ra = s.nextFloat();
-                    float dec = s.nextFloat();
-                    float ra_pm = s.nextFloat();
-                    float ra_pm_err = s.nextFloat();
-                    float dec_pm = s.nextFloat();
-                    float dec_pm_err = s.nextFloat();
-                    //store as star
-                    RightAscension ascension = new RightAscension(ra, 0.0f);
-                    Declination declination = new Declination(dec, 0.0f);
-                    ProperMotion motion = new ProperMotion(ra_pm, ra_pm_err, dec_pm, dec_pm_err);
-
-                    stars.add(new Star(no, 0.0f, ascension, declination, motion));
-                } catch (Exception ex) {
+    /**
+     * Retrieves all Stars from given file, the same way getCatalog(Path, ExecutionConfig)
+     * does.
+     *
+     * @param path Path to file that contains relevant data
+     * @param config Execution configuration chunks are parsed by
+     * @return Set of retrieved Stars
+     * @throws java.nio.file.FileSystemException
+     */
+    public Set<Star> getStars(Path path, ExecutionConfig config) throws FileSystemException, IOException {
+        return new HashSet<Star>(getCatalog(path, config).toStars());
+    }
+
+    /**
+     * Retrieves catalogue of all stars in given file, in order of appearance.
+     * File have to have structure defined in sample files
+     * (https://github.com/seziCZ/Clusterix), exception is thrown otherwise.
+     *
+     * @param path Path to file that contains relevant data
+     * @return Catalogue of retrieved stars
+     * @throws java.nio.file.FileSystemException
+     */
+    public StarCatalog getCatalog(Path path) throws FileSystemException, IOException {
+        StarCatalog catalog = new StarCatalog();
+        CatalogueParser parser = new CatalogueParser(catalog, 1);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                endOfInput = channel.read(buffer) < 0;
+                buffer.flip();
+                parser.parse(buffer, endOfInput);
+                if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                    // single line does not fit into the buffer
+                    ByteBuffer larger = ByteBuffer.allocate(2 * buffer.capacity());
+                    buffer = larger.put(buffer);
+                } else buffer.compact();
+            }
+        } catch (RuntimeException ex) {
+            // malformed or missing tokens, invalid coordinates
+            throw new FileSystemException("Datafile " + path.getFileName()
+                    + " has syntax error at line " + parser.getLineNumber()
+                    + ". Underlying error is " + ex.getClass());
+        } finally {
+            channel.close();
+        }
+        return catalog;
+    }
+
+    /**
+     * Retrieves catalogue of all stars in given file, the same way
+     * getCatalog(Path) does. File is memory-mapped and split into newline
+     * aligned chunks that are parsed in parallel by given execution
+     * configuration, which pays off for large catalogues.
+     *
+     * @param path Path to file that contains relevant data
+     * @param config Execution configuration chunks are parsed by
+     * @return Catalogue of retrieved stars
+     * @throws java.nio.file.FileSystemException
+     */
+    public StarCatalog getCatalog(Path path, ExecutionConfig config) throws FileSystemException, IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            // split file into chunks, each of them ends by line terminator (or end of file)
+            long size = channel.size();
+            int chunks = (int) Math.max(config.getParallelism() * CHUNKS_PER_TASK,
+                    size / MAX_CHUNK_SIZE + 1);
+            long chunkSize = Math.max(size / chunks, MIN_CHUNK_SIZE);
+            List<ChunkParser> parsers = new ArrayList<ChunkParser>();
+            long chunkStart = 0;
+            while (chunkStart < size) {
+                long chunkEnd = getLineStart(channel, chunkStart + chunkSize, size);
+                parsers.add(new ChunkParser(channel.map(FileChannel.MapMode.READ_ONLY,
+                        chunkStart, chunkEnd - chunkStart)));
+                chunkStart = chunkEnd;
+            }
+            config.invokeAll(parsers);
+
+            // merge results, line numbers of chunks are relative to chunk beginning
+            int stars = 0;
+            int precedingLines = 0;
+            for (ChunkParser parser : parsers) {
+                if (parser.getError() != null) {
                     throw new FileSystemException("Datafile " + path.getFileName()
-                            + " has syntax error at line " + lineNumberCounter
-                            + ". Underlying error is " + ex.getClass());
+                            + " has syntax error at line " + (precedingLines + parser.getLineNumber())
+                            + ". Underlying error is " + parser.getError().getClass());
                 }
+                precedingLines += parser.getLineNumber() - 1;
+                stars += parser.getCatalog().size();
+            }
+            StarCatalog result = new StarCatalog(stars);
+            for (ChunkParser parser : parsers) {
+                result.addAll(parser.getCatalog());
             }
-            lineNumberCounter++;
-            line = reader.readLine();
+            return result;
+        } finally {
+            channel.close();
         }
-        return stars;
     }
 
     /**
@@ -121,6 +204,44 @@ public class DataAccessor {
         return cluster;
     }
 
+    /**
+     * Retrieves cluster configurations from batch manifest. Manifest consists
+     * of blocks, each of them starts by line containing cluster name in square
+     * brackets (e.g. [NGC 2682]) and continues by properties of the cluster in
+     * the format of configuration files. Lines preceding the first block may
+     * contain comments only.
+     *
+     * @param path Path to manifest file
+     * @return Cluster configurations in order of appearance, keyed by cluster name
+     * @throws java.nio.file.FileSystemException
+     */
+    public Map<String, Properties> getBatchConfigs(Path path) throws FileSystemException, IOException {
+        Map<String, Properties> configs = new LinkedHashMap<String, Properties>();
+        String name = null;
+        StringBuilder block = new StringBuilder();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(path, Charset.defaultCharset())) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.startsWith(BATCH_BLOCK_START) && trimmed.endsWith(BATCH_BLOCK_END)) {
+                addBatchConfig(configs, name, block);
+                name = trimmed.substring(1, trimmed.length() - 1).trim();
+                if (name.isEmpty() || configs.containsKey(name)) {
+                    throw new FileSystemException("Manifest " + path.getFileName()
+                            + " has empty or duplicate cluster name at line " + lineNumber + ".");
+                }
+                block.setLength(0);
+            } else if (name != null) {
+                block.append(line).append('\n');
+            } else if (!trimmed.isEmpty() && !trimmed.startsWith("#") && !trimmed.startsWith("!")) {
+                throw new FileSystemException("Manifest " + path.getFileName()
+                        + " has property outside of cluster block at line " + lineNumber + ".");
+            }
+        }
+        addBatchConfig(configs, name, block);
+        return configs;
+    }
+
     /**
      * Retrieves restrictions from proposed property file.
      *
@@ -223,7 +344,44 @@ public class DataAccessor {
     }
 
     
-    // private helpers          
+    // private helpers
+
+    /**
+     * Retrieves position of the first line that starts at given position or
+     * after it.
+     *
+     * @param channel Channel to be searched
+     * @param position Position the search starts at
+     * @param size Size of the channel
+     * @return Start of the line, or size if there is no such line
+     */
+    private long getLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(LINE_SEARCH_BUFFER_SIZE);
+        // position itself starts a line if it follows line terminator
+        long current = position - 1;
+        while (current < size) {
+            buffer.clear();
+            int read = channel.read(buffer, current);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return current + i + 1;
+                }
+            }
+            current += read;
+        }
+        return size;
+    }
+          
+
+    private void addBatchConfig(Map<String, Properties> configs, String name,
+            CharSequence block) throws IOException {
+        if (name != null) {
+            Properties properties = new Properties();
+            properties.load(new StringReader(block.toString()));
+            configs.put(name, properties);
+        }
+    }
 
     private void validateValuesAreFloats(Properties properties, String[] keys) {
         for (String key : keys) {
@@ -261,4 +419,46 @@ public class DataAccessor {
         }
         return builder.toString();
     }
+
+
+    // private classes
+
+    /**
+     * Parses single chunk of memory-mapped catalogue. Syntax errors are stored
+     * rather than thrown, so that line number may be evaluated once preceding
+     * chunks are parsed.
+     */
+    private static class ChunkParser implements Callable<Void> {
+
+        private final ByteBuffer chunk;
+        private final StarCatalog catalog = new StarCatalog();
+        private final CatalogueParser parser = new CatalogueParser(catalog, 1);
+        private RuntimeException error;
+
+        public ChunkParser(ByteBuffer chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public Void call() {
+            try {
+                parser.parse(chunk, true);
+            } catch (RuntimeException ex) {
+                error = ex;
+            }
+            return null;
+        }
+
+        public StarCatalog getCatalog() {
+            return catalog;
+        }
+
+        public int getLineNumber() {
+            return parser.getLineNumber();
+        }
+
+        public RuntimeException getError() {
+            return error;
+        }
+    }
 }
@@ -1,22 +1,35 @@
 package cz.muni.clusterix.commandline;
 
 import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.businesstier.ExecutionConfig;
+import cz.muni.clusterix.businesstier.StarIndex;
 import cz.muni.clusterix.businesstier.StellarField;
 import cz.muni.clusterix.entities.OpenCluster;
 import cz.muni.clusterix.entities.Result;
-import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.StarCatalog;
 import cz.muni.clusterix.helpers.ClusterixConstants;
+import java.io.IOException;
 import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Main class that is used to run Clusterix in a command line fashion.
+ * Main class that is used to run Clusterix in a command line fashion. Single
+ * cluster is evaluated by "data config output" parameters, multiple clusters
+ * against shared data file by "--batch data manifest outputDir" parameters,
+ * see DataAccessor.getBatchConfigs for manifest format.
  *
  * @author Tomas Sezima
  */
@@ -24,50 +37,184 @@ public class Main {
 
     private static final Logger log = Logger.getLogger(Main.class.getName());
 
-    public static void main(String[] args) {        
+    public static void main(String[] args) {
         try {
-            // verify that the user proposed expected number of params
-            if (args == null || args.length != CommandlineConstants.EXPECTED_NUM_OF_ARGS) {
-                throw new IllegalArgumentException("Data, configuration and output "
-                        + "file paths have to be proposed as application parameters.");
+            if (args != null && args.length > 0 && CommandlineConstants.BATCH_FLAG.equals(args[0])) {
+                runBatch(args);
+            } else {
+                runSingle(args);
             }
+        } catch (Exception ex) {
+            // errors are printed to standard output
+            log.log(Level.SEVERE, "EXECUTION ABORTED: {0}", getMessage(ex));
+        } finally {
+            // release worker threads
+            ExecutionConfig.shutdownDefault();
+        }
+    }
+
+
+    // private helpers
+
+    private static void runSingle(String[] args) throws Exception {
+        // verify that the user proposed expected number of params
+        if (args == null || args.length != CommandlineConstants.EXPECTED_NUM_OF_ARGS) {
+            throw new IllegalArgumentException("Data, configuration and output "
+                    + "file paths have to be proposed as application parameters.");
+        }
+
+        DataAccessor manipulator = new DataAccessor();
+
+        // retrieve configuration file
+        Properties config = new Properties();
+        Path configPath = Paths.get(args[CommandlineConstants.CONFIG_PATH_POSITION]);
+        if(!Files.isReadable(configPath)){
+            throw new FileSystemException("Proposed configuration file ( " + configPath +
+                    ") does not exists or could not be read.");
+        }
+        config.load(Files.newInputStream(configPath));
+        manipulator.validateConfig(config);
+
+        // retrieve output file
+        Path outputPath = Paths.get(args[CommandlineConstants.OUTPUT_PATH_POSITION]);
 
+        // execute and store data
+        StarCatalog stars = loadCatalog(manipulator,
+                Paths.get(args[CommandlineConstants.DATA_PATH_POSITION]));
+        evaluate(manipulator, new StellarField(stars), config, outputPath);
+    }
+
+    /**
+     * Evaluates all clusters of the manifest against single data file. The
+     * catalogue is loaded and indexed once, so that each cluster prepares only
+     * stars around it. Clusters are evaluated concurrently and their results
+     * are written to separate files. Failure of a cluster is logged and does
+     * not abort evaluation of the others.
+     */
+    private static void runBatch(String[] args) throws Exception {
+        if (args.length != CommandlineConstants.BATCH_NUM_OF_ARGS) {
+            throw new IllegalArgumentException("Data file, manifest file and output directory "
+                    + "have to be proposed as parameters of " + CommandlineConstants.BATCH_FLAG + " mode.");
+        }
+
+        DataAccessor manipulator = new DataAccessor();
+
+        // retrieve manifest
+        Path manifestPath = Paths.get(args[CommandlineConstants.BATCH_MANIFEST_PATH_POSITION]);
+        if (!Files.isReadable(manifestPath)) {
+            throw new FileSystemException("Proposed manifest file (" + manifestPath
+                    + ") does not exists or could not be read.");
+        }
+        Map<String, Properties> configs = manipulator.getBatchConfigs(manifestPath);
+        if (configs.isEmpty()) {
+            throw new IllegalArgumentException("Proposed manifest file (" + manifestPath
+                    + ") does not define any cluster.");
+        }
+
+        // retrieve output directory
+        Path outputDir = Paths.get(args[CommandlineConstants.BATCH_OUTPUT_DIR_POSITION]);
+        Files.createDirectories(outputDir);
+
+        // execute, clusters share indexed catalogue as well as the default worker pool
+        StarIndex index = new StarIndex(loadCatalog(manipulator,
+                Paths.get(args[CommandlineConstants.BATCH_DATA_PATH_POSITION])));
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(configs.size(), ClusterixConstants.NUM_OF_AVAILABLE_PROCESSORS));
+        try {
+            List<String> names = new ArrayList<String>(configs.keySet());
+            List<Path> outputPaths = new ArrayList<Path>(names.size());
+            for (String name : names) {
+                Path outputPath = outputDir.resolve(getFileName(name)
+                        + CommandlineConstants.BATCH_OUTPUT_SUFFIX);
+                if (outputPaths.contains(outputPath)) {
+                    throw new IllegalArgumentException("Clusters of the manifest share output file "
+                            + outputPath + ", their names differ only in unsafe characters.");
+                }
+                outputPaths.add(outputPath);
+            }
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                futures.add(executor.submit(new ClusterTask(index, configs.get(names.get(i)),
+                        outputPaths.get(i))));
+            }
+
+            int failed = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException ex) {
+                    failed++;
+                    log.log(Level.SEVERE, "CLUSTER {0} FAILED: {1}",
+                            new Object[]{names.get(i), getMessage(ex.getCause())});
+                }
+            }
+            log.log(Level.INFO, "Batch finished: {0} cluster(s) evaluated, {1} failed.",
+                    new Object[]{names.size() - failed, failed});
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static StarCatalog loadCatalog(DataAccessor manipulator, Path dataPath)
+            throws FileSystemException, IOException {
+        if(!Files.isReadable(dataPath)){
+            throw new FileSystemException("Proposed data file (" + dataPath +
+                    ")does not exists or could not be read.");
+        }
+        return Files.size(dataPath) > CommandlineConstants.MAPPED_LOADING_THRESHOLD ?
+                manipulator.getCatalog(dataPath, ExecutionConfig.getDefault()) :
+                manipulator.getCatalog(dataPath);
+    }
+
+    /**
+     * Evaluates single cluster described by validated configuration and
+     * writes its results into output file.
+     */
+    private static void evaluate(DataAccessor manipulator, StellarField field,
+            Properties config, Path outputPath) throws Exception {
+        OpenCluster cluster = manipulator.getCluster(config);
+        Restrictions restrictions = manipulator.getRestriction(config);
+        Result probabilities = field.evaluateProbabilities(cluster,
+                cluster.getDefaultMask(ClusterixConstants.DEFAULT_MASK_DENSITY), restrictions);
+        manipulator.writeResults(outputPath, config, restrictions, cluster, probabilities);
+    }
+
+    /**
+     * Replaces characters that are not safe in file names by underscores.
+     */
+    private static String getFileName(String clusterName) {
+        return clusterName.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private static String getMessage(Throwable ex) {
+        return ex.getMessage() == null ? ex.getClass().getName() : ex.getMessage();
+    }
+
+
+    // private classes
+
+    /**
+     * Evaluates single cluster of the batch. Each task has its own
+     * DataAccessor, so that output templates are not shared among threads.
+     */
+    private static class ClusterTask implements Callable<Void> {
+
+        private final StarIndex index;
+        private final Properties config;
+        private final Path outputPath;
+
+        public ClusterTask(StarIndex index, Properties config, Path outputPath) {
+            this.index = index;
+            this.config = config;
+            this.outputPath = outputPath;
+        }
+
+        @Override
+        public Void call() throws Exception {
             DataAccessor manipulator = new DataAccessor();
-            
-            // retrieve configuration file
-            Properties config = new Properties();
-            Path configPath = Paths.get(args[CommandlineConstants.CONFIG_PATH_POSITION]);
-            if(!Files.isReadable(configPath)){
-                throw new FileSystemException("Proposed configuration file ( " + configPath + 
-                        ") does not exists or could not be read.");
-            }            
-            config.load(Files.newInputStream(configPath));
             manipulator.validateConfig(config);
-            
-            // retrieve output file
-            Path outputPath = Paths.get(args[CommandlineConstants.OUTPUT_PATH_POSITION]);            
-            
-            // retrieve data file
-            Path dataPath = Paths.get(args[CommandlineConstants.DATA_PATH_POSITION]);
-            if(!Files.isReadable(dataPath)){
-                throw new FileSystemException("Proposed data file (" + dataPath + 
-                        ")does not exists or could not be read.");
-            }
-            
-            // execute            
-            Set<Star> stars = manipulator.getStars(dataPath);
-            OpenCluster cluster = manipulator.getCluster(config);
-            Restrictions restrictions = manipulator.getRestriction(config);
-            StellarField field = new StellarField(stars);             
-            Result probabilities = field.evaluateProbabilities(cluster, 
-                    cluster.getDefaultMask(ClusterixConstants.DEFAULT_MASK_DENSITY), restrictions);
-            
-            // store data
-            manipulator.writeResults(outputPath, config, restrictions, cluster, probabilities);
-        } catch (Exception ex) {            
-            // errors are printed to standard output
-            String message = ex.getMessage() == null ? ex.getClass().getName() : ex.getMessage();            
-            log.log(Level.SEVERE, "EXECUTION ABORTED: {0}", message);            
+            evaluate(manipulator, new StellarField(index, null), config, outputPath);
+            return null;
         }
     }
 }
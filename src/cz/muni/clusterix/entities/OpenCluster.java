@@ -1,8 +1,7 @@
 package cz.muni.clusterix.entities;
 
+import cz.muni.clusterix.businesstier.CircularFieldMask;
 import cz.muni.clusterix.businesstier.FieldMask;
-import cz.muni.clusterix.businesstier.FieldMask.FieldType;
-import cz.muni.clusterix.helpers.Calc;
 import cz.muni.clusterix.helpers.ClusterixConstants;
 import org.apache.log4j.Logger;
 
@@ -58,7 +57,9 @@ public class OpenCluster implements WithCoordinates, WithMotion{
     /**
      * This method creates mask that describes default stellar field segregation. Stars within
      * cluster radius are marked as "cluster + field", stars at distance up to 
-     * 'radius' * 'outerRadius' are described as "field" stars.
+     * 'radius' * 'outerRadius' are described as "field" stars. Returned mask
+     * is a CircularFieldMask, i.e. stars are classified by their distance from
+     * the center until cells are replaced by setMask().
      * 
      * @param matrixSize Density of the mask to be created
      * @return implicit FieldMask     
@@ -71,25 +72,7 @@ public class OpenCluster implements WithCoordinates, WithMotion{
             throw new IllegalArgumentException("Matrix size has to be odd.");
         }
                 
-        float maskDiameter = outterRadius * 2 * ClusterixConstants.SEC_IN_MINUTE; // in arcsecs
-        float cellSize = maskDiameter / matrixSize;
-
-        // create mask        
-        Point center = new Point(matrixSize / 2, matrixSize / 2);
-        FieldType[][] mask = new FieldType[matrixSize][matrixSize];
-        for (int i = 0; i < matrixSize; i++) {
-            for (int u = 0; u < matrixSize; u++) {
-                Point pos = new Point(i, u);       
-                // mask is symetrical, there is no need to invert X and Y coordinates
-                if (Calc.getDistance(pos, center) * cellSize <= radius * ClusterixConstants.SEC_IN_MINUTE) {
-                    mask[i][u] = FieldType.CLUSTERFIELD;
-                }else if (Calc.getDistance(pos, center) * cellSize > radius * ClusterixConstants.SEC_IN_MINUTE
-                        && Calc.getDistance(pos, center) * cellSize <= outterRadius * ClusterixConstants.SEC_IN_MINUTE) {
-                    mask[i][u] = FieldType.FIELD;
-                }else mask[i][u] = FieldType.NONE;                                
-            }
-        }
-        return new FieldMask(matrixSize, cellSize, mask, centerRa, centerDec);
+        return new CircularFieldMask(matrixSize, centerRa, centerDec, radius, outterRadius);
     }
        
     
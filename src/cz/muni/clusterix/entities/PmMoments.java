@@ -0,0 +1,128 @@
+package cz.muni.clusterix.entities;
+
+/**
+ * Running mean and variance of proper motions in both axis (alpha, delta),
+ * accumulated in a single pass by Welford's algorithm, together with sums of
+ * squared proper motion errors. Accumulators of disjoint samples (e.g.
+ * evaluated by different threads) may be merged.
+ *
+ * @author Tomas Sezima
+ */
+public class PmMoments {
+
+    private long count;
+    private double meanAlpha;
+    private double meanDelta;
+    // sums of squared differences from the mean
+    private double m2Alpha;
+    private double m2Delta;
+    // sums of squared PM errors of stars proposed with both errors
+    private double errSquaresAlpha;
+    private double errSquaresDelta;
+
+    /**
+     * Constructor. Creates accumulator of empty sample.
+     */
+    public PmMoments() {}
+
+
+    // public helpers
+
+    /**
+     * Adds single proper motion to the sample.
+     *
+     * @param muAlpha Proper motion in alpha
+     * @param muDelta Proper motion in delta
+     */
+    public void add(double muAlpha, double muDelta) {
+        count++;
+        double alphaDiff = muAlpha - meanAlpha;
+        double deltaDiff = muDelta - meanDelta;
+        meanAlpha += alphaDiff / count;
+        meanDelta += deltaDiff / count;
+        m2Alpha += alphaDiff * (muAlpha - meanAlpha);
+        m2Delta += deltaDiff * (muDelta - meanDelta);
+    }
+
+    /**
+     * Adds single proper motion and its errors to the sample. Errors are
+     * summed only if both of them are known.
+     *
+     * @param muAlpha Proper motion in alpha
+     * @param muDelta Proper motion in delta
+     * @param muAlphaErr Proper motion error in alpha, NaN if unknown
+     * @param muDeltaErr Proper motion error in delta, NaN if unknown
+     */
+    public void add(double muAlpha, double muDelta, double muAlphaErr, double muDeltaErr) {
+        add(muAlpha, muDelta);
+        if (!Double.isNaN(muAlphaErr) && !Double.isNaN(muDeltaErr)) {
+            errSquaresAlpha += muAlphaErr * muAlphaErr;
+            errSquaresDelta += muDeltaErr * muDeltaErr;
+        }
+    }
+
+    /**
+     * Adds all proper motions accumulated by other accumulator to 'this' one.
+     *
+     * @param other Accumulator of disjoint sample
+     */
+    public void merge(PmMoments other) {
+        if (other.count == 0) {
+            return;
+        }
+        errSquaresAlpha += other.errSquaresAlpha;
+        errSquaresDelta += other.errSquaresDelta;
+        long total = count + other.count;
+        double alphaDiff = other.meanAlpha - meanAlpha;
+        double deltaDiff = other.meanDelta - meanDelta;
+        double weight = (double) count * other.count / total;
+        meanAlpha += alphaDiff * other.count / total;
+        meanDelta += deltaDiff * other.count / total;
+        m2Alpha += other.m2Alpha + alphaDiff * alphaDiff * weight;
+        m2Delta += other.m2Delta + deltaDiff * deltaDiff * weight;
+        count = total;
+    }
+
+
+    // getters
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Retrieves aritmetic means of the sample.
+     *
+     * @return Means of alpha and delta PMs, NULL for empty sample
+     */
+    public PmStat getMean() {
+        return count > 0 ? new PmStat(meanAlpha, meanDelta) : null;
+    }
+
+    /**
+     * Retrieves standard deviations of the sample, see Calc.getPmDeviation.
+     *
+     * @return Deviations of alpha and delta PMs, NULL for empty sample
+     */
+    public PmStat getDeviation() {
+        return count > 0 ? new PmStat(Math.sqrt(m2Alpha / count), Math.sqrt(m2Delta / count)) : null;
+    }
+
+    /**
+     * Retrieves sums of squared proper motion errors of stars that were
+     * added with both errors known.
+     *
+     * @return Sums of squared alpha and delta PM errors
+     */
+    public PmStat getErrSquares() {
+        return new PmStat(errSquaresAlpha, errSquaresDelta);
+    }
+
+    @Override
+    public String toString() {
+        return "PmMoments{" + "count=" + count + ", meanAlpha=" + meanAlpha + ", meanDelta="
+                + meanDelta + ", m2Alpha=" + m2Alpha + ", m2Delta=" + m2Delta + ", errSquaresAlpha="
+                + errSquaresAlpha + ", errSquaresDelta=" + errSquaresDelta + '}';
+    }
+
+}
@@ -1,5 +1,8 @@
 package cz.muni.clusterix.entities;
 
+import cz.muni.clusterix.businesstier.DensityEstimator;
+import cz.muni.clusterix.businesstier.KernelFunction;
+
 /**
  * This class represents restrictions placed upon the probability search.
  *
@@ -17,6 +20,10 @@ public class Restrictions {
     private Double smooth;
     // gamma factor
     private Float gammaCoef;
+    // density estimation engine, exact kernel summation is used if not set
+    private DensityEstimator estimator;
+    // kernel function, exact exponential is used if not set
+    private KernelFunction kernel;
 
     
     //constructor
@@ -68,6 +75,14 @@ public class Restrictions {
         return gammaCoef;
     }    
 
+    public DensityEstimator getEstimator() {
+        return estimator;
+    }
+
+    public KernelFunction getKernel() {
+        return kernel;
+    }
+
     public void setMaxMu(Double maxMu) {
         this.maxMu = maxMu;
     }
@@ -87,6 +102,14 @@ public class Restrictions {
     public void setMaxMuErr(Float maxMuErr) {
         this.maxMuErr = maxMuErr;
     }
+
+    public void setEstimator(DensityEstimator estimator) {
+        this.estimator = estimator;
+    }
+
+    public void setKernel(KernelFunction kernel) {
+        this.kernel = kernel;
+    }
     
     
     
@@ -100,6 +123,8 @@ public class Restrictions {
         hash = 47 * hash + (this.maxMuErr != null ? this.maxMuErr.hashCode() : 0);
         hash = 47 * hash + (this.smooth != null ? this.smooth.hashCode() : 0);
         hash = 47 * hash + (this.gammaCoef != null ? this.gammaCoef.hashCode() : 0);
+        hash = 47 * hash + (this.estimator != null ? this.estimator.hashCode() : 0);
+        hash = 47 * hash + (this.kernel != null ? this.kernel.hashCode() : 0);
         return hash;
     }
 
@@ -127,13 +152,20 @@ public class Restrictions {
         if (this.gammaCoef != other.gammaCoef && (this.gammaCoef == null || !this.gammaCoef.equals(other.gammaCoef))) {
             return false;
         }
+        if (this.estimator != other.estimator && (this.estimator == null || !this.estimator.equals(other.estimator))) {
+            return false;
+        }
+        if (this.kernel != other.kernel && (this.kernel == null || !this.kernel.equals(other.kernel))) {
+            return false;
+        }
         return true;
     }
 
     @Override
     public String toString() {
         return "Restrictions{" + "maxMag=" + maxMag + ", maxMu=" + maxMu + ", maxMuErr=" 
-                + maxMuErr + ", smooth=" + smooth + ", gammaCoef=" + gammaCoef + '}';
+                + maxMuErr + ", smooth=" + smooth + ", gammaCoef=" + gammaCoef + ", estimator=" + estimator
+                + ", kernel=" + kernel + '}';
     }        
     
 }
@@ -0,0 +1,348 @@
+package cz.muni.clusterix.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Columnar (structure of arrays) representation of a set of stars. Properties
+ * of i-th star are stored at i-th position of primitive columns, so that hot
+ * loops iterate over arrays rather than over Star, ProperMotion and boxed
+ * values. Missing values (proper motion errors, probability) are stored as
+ * NaN. Star objects are materialised on demand only; catalogues
+ * created from Star objects keep them, so that the same instances are
+ * returned (and updated with probabilities assigned in the catalogue).
+ *
+ * Column getters return backing arrays, only the first size() values are valid.
+ *
+ * @author Tomas Sezima
+ */
+public class StarCatalog {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int size;
+    private int[] nos;
+    private float[] magnitudes;
+    private float[] ras;
+    private float[] decs;
+    private float[] muAlphas;
+    private float[] muAlphaErrs;
+    private float[] muDeltas;
+    private float[] muDeltaErrs;
+    private float[] probabilities;
+    private boolean[] clusterStars;
+    // star objects the values were taken from or were materialised, allocated lazily
+    private Star[] stars;
+
+    /**
+     * Constructor. Creates empty catalogue.
+     */
+    public StarCatalog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor. Creates empty catalogue.
+     *
+     * @param capacity Expected number of stars
+     */
+    public StarCatalog(int capacity) {
+        capacity = Math.max(capacity, 1);
+        nos = new int[capacity];
+        magnitudes = new float[capacity];
+        ras = new float[capacity];
+        decs = new float[capacity];
+        muAlphas = new float[capacity];
+        muAlphaErrs = new float[capacity];
+        muDeltas = new float[capacity];
+        muDeltaErrs = new float[capacity];
+        probabilities = new float[capacity];
+        clusterStars = new boolean[capacity];
+    }
+
+    /**
+     * Creates catalogue of given stars, the stars are kept so that they are
+     * returned by getStar(int).
+     *
+     * @param stars Stars
+     * @return Catalogue containing given stars in iteration order
+     */
+    public static StarCatalog of(Collection<Star> stars) {
+        StarCatalog catalog = new StarCatalog(stars.size());
+        for (Star star : stars) {
+            catalog.add(star);
+        }
+        return catalog;
+    }
+
+
+    // public helpers
+
+    /**
+     * Appends star to 'this' catalogue.
+     *
+     * @param no Star id
+     * @param magnitude Magnitude
+     * @param ra Right ascension in degrees
+     * @param dec Declination in degrees
+     * @param muAlpha Proper motion in alpha
+     * @param muAlphaErr Error of proper motion in alpha, NaN if not known
+     * @param muDelta Proper motion in delta
+     * @param muDeltaErr Error of proper motion in delta, NaN if not known
+     * @return Index of appended star
+     */
+    public int add(int no, float magnitude, float ra, float dec, float muAlpha,
+            float muAlphaErr, float muDelta, float muDeltaErr) {
+        if (ra < RightAscension.MIN_DEGREES || ra > RightAscension.MAX_DEGREES
+                || dec < Declination.MIN_DEGREES || dec > Declination.MAX_DEGREES) {
+            throw new IllegalArgumentException("Proposed coordinates (" + ra + ", "
+                    + dec + " degrees) are not valid values.");
+        }
+        ensureCapacity(size + 1);
+        nos[size] = no;
+        magnitudes[size] = magnitude;
+        ras[size] = ra;
+        decs[size] = dec;
+        muAlphas[size] = muAlpha;
+        muAlphaErrs[size] = muAlphaErr;
+        muDeltas[size] = muDelta;
+        muDeltaErrs[size] = muDeltaErr;
+        probabilities[size] = Float.NaN;
+        return size++;
+    }
+
+    /**
+     * Appends star to 'this' catalogue, the star is kept so that it is
+     * returned by getStar(int).
+     *
+     * @param star Star to be appended
+     * @return Index of appended star
+     */
+    public int add(Star star) {
+        ProperMotion motion = star.getProperMotion();
+        int index = add(star.getNo(), star.getMagnitude(),
+                star.getRightAscension().getDegrees(), star.getDeclination().getDegrees(),
+                motion.getMuAlpha(), toFloat(motion.getMuAlphaErr()),
+                motion.getMuDelta(), toFloat(motion.getMuDeltaErr()));
+        probabilities[index] = toFloat(star.getProbability());
+        clusterStars[index] = Boolean.TRUE.equals(star.isClusterStar());
+        getStarsArray()[index] = star;
+        return index;
+    }
+
+    /**
+     * Appends all stars of given catalogue to 'this' one.
+     *
+     * @param other Catalogue to be appended
+     */
+    public void addAll(StarCatalog other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.nos, 0, nos, size, other.size);
+        System.arraycopy(other.magnitudes, 0, magnitudes, size, other.size);
+        System.arraycopy(other.ras, 0, ras, size, other.size);
+        System.arraycopy(other.decs, 0, decs, size, other.size);
+        System.arraycopy(other.muAlphas, 0, muAlphas, size, other.size);
+        System.arraycopy(other.muAlphaErrs, 0, muAlphaErrs, size, other.size);
+        System.arraycopy(other.muDeltas, 0, muDeltas, size, other.size);
+        System.arraycopy(other.muDeltaErrs, 0, muDeltaErrs, size, other.size);
+        System.arraycopy(other.probabilities, 0, probabilities, size, other.size);
+        System.arraycopy(other.clusterStars, 0, clusterStars, size, other.size);
+        if (other.stars != null) {
+            System.arraycopy(other.stars, 0, getStarsArray(), size, other.size);
+        }
+        size += other.size;
+    }
+
+    /**
+     * Creates catalogue that contains selected stars of 'this' catalogue.
+     * Star objects kept by 'this' catalogue are shared.
+     *
+     * @param indices Indices of selected stars
+     * @param count Number of valid indices
+     * @return Catalogue of selected stars
+     */
+    public StarCatalog select(int[] indices, int count) {
+        StarCatalog selected = new StarCatalog(count);
+        for (int i = 0; i < count; i++) {
+            int index = indices[i];
+            selected.nos[i] = nos[index];
+            selected.magnitudes[i] = magnitudes[index];
+            selected.ras[i] = ras[index];
+            selected.decs[i] = decs[index];
+            selected.muAlphas[i] = muAlphas[index];
+            selected.muAlphaErrs[i] = muAlphaErrs[index];
+            selected.muDeltas[i] = muDeltas[index];
+            selected.muDeltaErrs[i] = muDeltaErrs[index];
+            selected.probabilities[i] = probabilities[index];
+            selected.clusterStars[i] = clusterStars[index];
+        }
+        if (stars != null) {
+            Star[] selectedStars = selected.getStarsArray();
+            for (int i = 0; i < count; i++) {
+                selectedStars[i] = stars[indices[i]];
+            }
+        }
+        selected.size = count;
+        return selected;
+    }
+
+    /**
+     * Retrieves mean proper motion of i-th star, see ProperMotion.getMeanMu().
+     *
+     * @param i Star index
+     * @return Mean of alpha and delta PMs
+     */
+    public double getMeanMu(int i) {
+        return Math.hypot(muAlphas[i], muDeltas[i]);
+    }
+
+    /**
+     * Retrieves mean proper motion error of i-th star, see
+     * ProperMotion.getMeanMuErr().
+     *
+     * @param i Star index
+     * @return Mean error of alpha and delta PMs, 0 if errors are not known
+     */
+    public double getMeanMuErr(int i) {
+        if (!Float.isNaN(muAlphaErrs[i]) && !Float.isNaN(muDeltaErrs[i])) {
+            return Math.hypot(muAlphaErrs[i], muDeltaErrs[i]);
+        }
+        return 0;
+    }
+
+    /**
+     * Materialises i-th star. Star the values were taken from is returned
+     * (updated with probability and membership of the catalogue) if there is
+     * one, new Star is created and kept otherwise.
+     *
+     * @param i Star index
+     * @return Star object
+     */
+    public Star getStar(int i) {
+        Star star = getStarsArray()[i];
+        if (star == null) {
+            ProperMotion motion = new ProperMotion(muAlphas[i], toObject(muAlphaErrs[i]),
+                    muDeltas[i], toObject(muDeltaErrs[i]));
+            star = new Star(nos[i], magnitudes[i], new RightAscension(ras[i], 0.0f),
+                    new Declination(decs[i], 0.0f), motion);
+            stars[i] = star;
+        }
+        if (!Float.isNaN(probabilities[i])) {
+            star.setProbability(probabilities[i]);
+            star.setIsClusterStar(clusterStars[i]);
+        }
+        return star;
+    }
+
+    /**
+     * Materialises all stars of 'this' catalogue, see getStar(int).
+     *
+     * @return Stars in catalogue order
+     */
+    public List<Star> toStars() {
+        List<Star> result = new ArrayList<Star>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(getStar(i));
+        }
+        return result;
+    }
+
+
+    // getters and setters
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int[] getNos() {
+        return nos;
+    }
+
+    public float[] getMagnitudes() {
+        return magnitudes;
+    }
+
+    public float[] getRas() {
+        return ras;
+    }
+
+    public float[] getDecs() {
+        return decs;
+    }
+
+    public float[] getMuAlphas() {
+        return muAlphas;
+    }
+
+    public float[] getMuAlphaErrs() {
+        return muAlphaErrs;
+    }
+
+    public float[] getMuDeltas() {
+        return muDeltas;
+    }
+
+    public float[] getMuDeltaErrs() {
+        return muDeltaErrs;
+    }
+
+    public float[] getProbabilities() {
+        return probabilities;
+    }
+
+    public boolean isClusterStar(int i) {
+        return clusterStars[i];
+    }
+
+    public void setProbability(int i, float probability) {
+        probabilities[i] = probability;
+    }
+
+    public void setIsClusterStar(int i, boolean clusterStar) {
+        clusterStars[i] = clusterStar;
+    }
+
+
+    // private helpers
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > nos.length) {
+            int length = Math.max(capacity, nos.length + (nos.length >> 1));
+            nos = Arrays.copyOf(nos, length);
+            magnitudes = Arrays.copyOf(magnitudes, length);
+            ras = Arrays.copyOf(ras, length);
+            decs = Arrays.copyOf(decs, length);
+            muAlphas = Arrays.copyOf(muAlphas, length);
+            muAlphaErrs = Arrays.copyOf(muAlphaErrs, length);
+            muDeltas = Arrays.copyOf(muDeltas, length);
+            muDeltaErrs = Arrays.copyOf(muDeltaErrs, length);
+            probabilities = Arrays.copyOf(probabilities, length);
+            clusterStars = Arrays.copyOf(clusterStars, length);
+            if (stars != null) {
+                stars = Arrays.copyOf(stars, length);
+            }
+        }
+    }
+
+    private Star[] getStarsArray() {
+        if (stars == null) {
+            stars = new Star[nos.length];
+        }
+        return stars;
+    }
+
+    private static float toFloat(Float value) {
+        return value != null ? value : Float.NaN;
+    }
+
+    private static Float toObject(float value) {
+        return Float.isNaN(value) ? null : value;
+    }
+
+}
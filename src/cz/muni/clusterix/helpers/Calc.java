@@ -3,6 +3,8 @@ package cz.muni.clusterix.helpers;
 import cz.muni.clusterix.entities.PmStat;
 import java.util.Set;
 import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.StarCatalog;
+import cz.muni.clusterix.entities.PmMoments;
 import java.util.Random;
 import cz.muni.clusterix.entities.Point;
 import cz.muni.clusterix.entities.Declination;
@@ -19,6 +21,8 @@ import static java.lang.Math.*;
 public class Calc {
 
     private static final int SILVERMANS_RULE_DIMENSION = 2;
+    // smaller arguments of expOfNonPositive are clamped
+    private static final double EXP_MIN_ARGUMENT = -40;
 
     // static helper, could not be inicialized...
     private Calc() {}    
@@ -32,11 +36,50 @@ public class Calc {
      * @return smoothing parameter
      */
     public static double getSmoothParam(Set<Star> stars) {
-        PmStat means = getPmMean(stars);
-        PmStat deviations = getPmDeviation(stars, means);
-        double variance = square(deviations.getAlphaStat()) + square(deviations.getDeltaStat());
-        return pow(4.0 / (SILVERMANS_RULE_DIMENSION + 2.0), 1.0 / (SILVERMANS_RULE_DIMENSION + 4.0))
-                * sqrt(variance / SILVERMANS_RULE_DIMENSION) * pow(stars.size(), -1.0 / (SILVERMANS_RULE_DIMENSION + 4.0));
+        return getSmoothParam(StarCatalog.of(stars));
+    }
+
+    /**
+     * GetSmoothParam returns sample's implicit smoothing parameter (gaussian dispersion) estimated 
+     * by Silverman's rule of thumb. Deviations are retrieved in a single pass.
+     *      
+     * @param stars Catalogue whose proper motions will be used to determine smoothing parameter
+     * @return smoothing parameter
+     */
+    public static double getSmoothParam(StarCatalog stars) {
+        return getSmoothParam(getPmMoments(stars));
+    }
+
+    /**
+     * GetSmoothParam returns sample's implicit smoothing parameter (gaussian dispersion) estimated 
+     * by Silverman's rule of thumb.     
+     *      
+     * @param moments Moments of proper motions of the sample, not empty
+     * @return smoothing parameter
+     */
+    public static double getSmoothParam(PmMoments moments) {
+        return getSmoothParam(moments.getDeviation(), moments.getCount());
+    }
+
+    /**
+     * Accumulates moments of proper motions and sums of squared proper motion
+     * errors of stars of given catalogue in a single pass.
+     *
+     * @param stars Catalogue to be scaned for PMs
+     * @return Moments of the catalogue, empty for NULL catalogue
+     */
+    public static PmMoments getPmMoments(StarCatalog stars) {
+        PmMoments moments = new PmMoments();
+        if (stars != null) {
+            float[] muAlphas = stars.getMuAlphas();
+            float[] muDeltas = stars.getMuDeltas();
+            float[] muAlphaErrs = stars.getMuAlphaErrs();
+            float[] muDeltaErrs = stars.getMuDeltaErrs();
+            for (int i = 0; i < stars.size(); i++) {
+                moments.add(muAlphas[i], muDeltas[i], muAlphaErrs[i], muDeltaErrs[i]);
+            }
+        }
+        return moments;
     }
 
     /**
@@ -49,16 +92,31 @@ public class Calc {
      * @return standard deviations of PMs in PmStat object
      */
     public static PmStat getPmDeviation(Set<Star> stars, PmStat mean) {
+        return getPmDeviation(stars != null ? StarCatalog.of(stars) : null, mean);
+    }
+
+    /**
+     * This method estimates standard deviation of propper motions associated
+     * with stars of given catalogue.
+     *
+     * @param stars Catalogue whose proper motions will be used to determine
+     * standard deviation
+     * @param mean Aritmetic means (alpha, delta) of investigated sample
+     * @return standard deviations of PMs in PmStat object
+     */
+    public static PmStat getPmDeviation(StarCatalog stars, PmStat mean) {
         PmStat deviation = null;
 
         if (stars != null && !stars.isEmpty()) {
-            deviation = new PmStat(0, 0);
-            for (Star star : stars) {
-                deviation.addToAlpha(square(star.getProperMotion().getMuAlpha() - mean.getAlphaStat()));
-                deviation.addToDelta(square(star.getProperMotion().getMuDelta() - mean.getDeltaStat()));                
+            float[] muAlphas = stars.getMuAlphas();
+            float[] muDeltas = stars.getMuDeltas();
+            double alpha = 0;
+            double delta = 0;
+            for (int i = 0; i < stars.size(); i++) {
+                alpha += square(muAlphas[i] - mean.getAlphaStat());
+                delta += square(muDeltas[i] - mean.getDeltaStat());
             }
-            deviation.setAlphaStat(sqrt(deviation.getAlphaStat() / stars.size()));
-            deviation.setDeltaStat(sqrt(deviation.getDeltaStat() / stars.size()));
+            deviation = new PmStat(sqrt(alpha / stars.size()), sqrt(delta / stars.size()));
         }
 
         return deviation;
@@ -72,16 +130,29 @@ public class Calc {
      * @return aritmetic mean of alpha and delta PMs in PmStat object
      */
     public static PmStat getPmMean(Set<Star> stars) {
+        return getPmMean(stars != null ? StarCatalog.of(stars) : null);
+    }
+
+    /**
+     * This method estimates aritmetic mean of propper motions associated with
+     * stars of given catalogue.
+     *
+     * @param stars Catalogue to be scaned for PMs
+     * @return aritmetic mean of alpha and delta PMs in PmStat object
+     */
+    public static PmStat getPmMean(StarCatalog stars) {
         PmStat mean = null;
 
         if (stars != null && !stars.isEmpty()) {
-            mean = new PmStat(0, 0);
-            for (Star star : stars) {
-                mean.addToAlpha(star.getProperMotion().getMuAlpha());
-                mean.addToDelta(star.getProperMotion().getMuDelta());
+            float[] muAlphas = stars.getMuAlphas();
+            float[] muDeltas = stars.getMuDeltas();
+            double alpha = 0;
+            double delta = 0;
+            for (int i = 0; i < stars.size(); i++) {
+                alpha += muAlphas[i];
+                delta += muDeltas[i];
             }
-            mean.setAlphaStat(mean.getAlphaStat() / stars.size());
-            mean.setDeltaStat(mean.getDeltaStat() / stars.size());
+            mean = new PmStat(alpha / stars.size(), delta / stars.size());
         }
         
         return mean;
@@ -129,6 +200,31 @@ public class Calc {
         return base * base;
     }   
 
+    /**
+     * Returns approximation of exp(x) for non-positive x that is evaluated
+     * by multiplications and additions only, i.e. without table lookups,
+     * branches or bit manipulation, so that loops calling it can be
+     * vectorized by JIT compiler. Taylor polynomial of degree 8 is evaluated
+     * at x / 64 and squared 6 times. Relative error is below 1e-8 for x from
+     * [-20, 0] and below 1e-5 for x from [-40, -20), arguments below -40 are
+     * replaced by -40 (absolute error below 5e-18). Positive arguments are
+     * not supported.
+     *
+     * @param x Non-positive exponent
+     * @return Approximation of exp(x)
+     */
+    public static double expOfNonPositive(double x) {
+        double y = max(x, EXP_MIN_ARGUMENT) * (1.0 / 64);
+        double result = 1 + y * (1 + y * (1.0 / 2 + y * (1.0 / 6 + y * (1.0 / 24 + y * (1.0 / 120
+                + y * (1.0 / 720 + y * (1.0 / 5040 + y * (1.0 / 40320))))))));
+        result *= result;
+        result *= result;
+        result *= result;
+        result *= result;
+        result *= result;
+        return result * result;
+    }
+
     
     // methods used in test
     
@@ -160,4 +256,13 @@ public class Calc {
         return (float) (random * deviation + mean);
     }
     
+
+    // private helpers
+
+    private static double getSmoothParam(PmStat deviations, long size) {
+        double variance = square(deviations.getAlphaStat()) + square(deviations.getDeltaStat());
+        return pow(4.0 / (SILVERMANS_RULE_DIMENSION + 2.0), 1.0 / (SILVERMANS_RULE_DIMENSION + 4.0))
+                * sqrt(variance / SILVERMANS_RULE_DIMENSION) * pow(size, -1.0 / (SILVERMANS_RULE_DIMENSION + 4.0));
+    }
+
 }
@@ -0,0 +1,128 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.businesstier.FieldMask.FieldType;
+import cz.muni.clusterix.entities.Declination;
+import cz.muni.clusterix.entities.RightAscension;
+import cz.muni.clusterix.entities.StarCatalog;
+import cz.muni.clusterix.helpers.ClusterixConstants;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * A set of tests related to CircularFieldMask entity.
+ * @author Tomas Sezima
+ */
+public class CircularFieldMaskTest {
+
+    private static final float RADIUS = 10.0f; // arcmin
+    private static final float OUTER_RADIUS = 20.0f; // arcmin
+
+    public CircularFieldMaskTest() {}
+
+    /**
+     * Test of classify method, of class CircularFieldMask. Analytic
+     * classification has to match the one of rasterised mask except for stars
+     * whose distance from a circle is less than half of cell diagonal, i.e.
+     * stars that are not under the same side of the circle as center of their
+     * cell. Such stars have to be rare.
+     */
+    @Test
+    public void testClassify() {
+        System.out.println("Testing 'classify' method.");
+        RightAscension ra = new RightAscension(120.0f, 0.0f);
+        Declination dec = new Declination(30.0f, 0.0f);
+        CircularFieldMask circular = new CircularFieldMask(101, ra, dec, RADIUS, OUTER_RADIUS);
+        FieldMask raster = new FieldMask(101, circular.getCellSize(), circular.getMask(), ra, dec);
+
+        // stars spread over the whole mask
+        float halfSide = OUTER_RADIUS / ClusterixConstants.SEC_IN_MINUTE;
+        Random random = new Random(11);
+        StarCatalog catalog = new StarCatalog();
+        for (int i = 0; i < 50000; i++) {
+            catalog.add(i, 0.0f, ra.getDegrees() + (random.nextFloat() * 2 - 1) * halfSide,
+                    dec.getDegrees() + (random.nextFloat() * 2 - 1) * halfSide,
+                    0.0f, Float.NaN, 0.0f, Float.NaN);
+        }
+        FieldMask.Classification analytic = circular.classify(catalog, null);
+        FieldMask.Classification rasterised = raster.classify(catalog, null);
+
+        double tolerance = circular.getCellSize() * Math.sqrt(2) / 2;
+        int differences = 0;
+        for (int i = 0; i < catalog.size(); i++) {
+            double x = (dec.getDegrees() - catalog.getDecs()[i]) * ClusterixConstants.ARCSECS_IN_DEGREE;
+            double y = (ra.getDegrees() - catalog.getRas()[i]) * ClusterixConstants.ARCSECS_IN_DEGREE;
+            double distance = Math.hypot(x, y);
+            if (analytic.getType(i) != rasterised.getType(i)) {
+                assertTrue(Math.abs(distance - circular.getRadius()) <= tolerance
+                        || Math.abs(distance - circular.getOuterRadius()) <= tolerance);
+                differences++;
+            } else if (distance < circular.getRadius() - tolerance) {
+                assertEquals(FieldType.CLUSTERFIELD, analytic.getType(i));
+            }
+        }
+        assertTrue("Pixelisation affected " + differences + " stars.",
+                differences < catalog.size() / 50);
+    }
+
+    /**
+     * Test of getRatio method, of class CircularFieldMask. Analytic ratio is
+     * approached by the ratio of cell counts as the density grows.
+     */
+    @Test
+    public void testGetRatio() {
+        System.out.println("Testing 'getRatio' method.");
+        RightAscension ra = new RightAscension(120.0f, 0.0f);
+        Declination dec = new Declination(30.0f, 0.0f);
+        CircularFieldMask coarse = new CircularFieldMask(11, ra, dec, RADIUS, OUTER_RADIUS);
+        CircularFieldMask fine = new CircularFieldMask(1001, ra, dec, RADIUS, OUTER_RADIUS);
+        float analytic = coarse.getRatio(FieldType.CLUSTERFIELD, FieldType.FIELD);
+        assertEquals(1.0f / 3, analytic, 0.000001);
+        assertEquals(analytic, fine.getRatio(FieldType.CLUSTERFIELD, FieldType.FIELD), 0.000001);
+
+        float coarseCounts = (float) coarse.getCount(FieldType.CLUSTERFIELD) / coarse.getCount(FieldType.FIELD);
+        float fineCounts = (float) fine.getCount(FieldType.CLUSTERFIELD) / fine.getCount(FieldType.FIELD);
+        assertTrue(Math.abs(fineCounts - analytic) < Math.abs(coarseCounts - analytic));
+        assertEquals(analytic, fineCounts, 0.01);
+    }
+
+    /**
+     * Test of setMask method, of class CircularFieldMask. Replaced cells are
+     * used the same way rasterised mask uses them.
+     */
+    @Test
+    public void testSetMask() {
+        System.out.println("Testing 'setMask' method.");
+        RightAscension ra = new RightAscension(120.0f, 0.0f);
+        Declination dec = new Declination(30.0f, 0.0f);
+        CircularFieldMask circular = new CircularFieldMask(11, ra, dec, RADIUS, OUTER_RADIUS);
+        FieldType[][] cells = new FieldType[11][11];
+        for (int i = 0; i < 11; i++) {
+            for (int u = 0; u < 11; u++) {
+                cells[i][u] = i < 5 ? FieldType.CLUSTERFIELD : i < 8 ? FieldType.FIELD : FieldType.NONE;
+            }
+        }
+        circular.setMask(cells);
+        FieldMask raster = new FieldMask(11, circular.getCellSize(), cells, ra, dec);
+        assertArrayEquals(cells, circular.getMask());
+        assertEquals(55, circular.getCount(FieldType.CLUSTERFIELD));
+        assertEquals(raster.getRatio(FieldType.CLUSTERFIELD, FieldType.FIELD),
+                circular.getRatio(FieldType.CLUSTERFIELD, FieldType.FIELD), 0);
+
+        float halfSide = OUTER_RADIUS / ClusterixConstants.SEC_IN_MINUTE;
+        Random random = new Random(13);
+        StarCatalog catalog = new StarCatalog();
+        for (int i = 0; i < 1000; i++) {
+            catalog.add(i, 0.0f, ra.getDegrees() + (random.nextFloat() * 2 - 1) * halfSide,
+                    dec.getDegrees() + (random.nextFloat() * 2 - 1) * halfSide,
+                    0.0f, Float.NaN, 0.0f, Float.NaN);
+        }
+        FieldMask.Classification replaced = circular.classify(catalog, null);
+        FieldMask.Classification rasterised = raster.classify(catalog, null);
+        for (FieldType type : FieldType.values()) {
+            assertArrayEquals(rasterised.getIndices(type), replaced.getIndices(type));
+        }
+        assertFalse(circular.equals(new CircularFieldMask(11, ra, dec, RADIUS, OUTER_RADIUS)));
+    }
+
+}
@@ -0,0 +1,99 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.Declination;
+import cz.muni.clusterix.entities.ProperMotion;
+import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.RightAscension;
+import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.helpers.StarGenerator;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.Assert.*;
+
+/**
+ * Shared fixture of tests of density estimation engines, results of engines
+ * are compared to ExactDensityEstimator. Exact engines may differ by
+ * rounding only, approximate ones within an absolute tolerance.
+ * @author Tomas Sezima
+ */
+final class DensityEstimatorFixture {
+
+    // number of stars, exceeds a single star block of SeparableDensityEstimator
+    static final int NUM_OF_STARS = 700;
+    private static final double MAX_MU = 6.0d;
+    static final double SMOOTH_PARAM = 0.8d;
+
+    private DensityEstimatorFixture() {}
+
+    /**
+     * Asserts that frequency function estimated by given engine matches the
+     * exact kernel sum up to given relative tolerance for both grid storages.
+     *
+     * @param estimator Engine to be tested
+     * @param kernel Kernel function used by the engine, default one if NULL
+     * @param tolerance Relative tolerance, values below 1 are compared absolutely
+     */
+    static void assertMatchesExactSum(DensityEstimator estimator, KernelFunction kernel,
+            double tolerance) {
+        assertMatchesExactSum(estimator, kernel, tolerance, 0, 0);
+    }
+
+    /**
+     * Asserts that frequency function estimated by given approximate engine
+     * differs from the exact kernel sum by at most delta + maxFraction *
+     * maximum of the exact function in each cell, for both grid storages.
+     *
+     * @param estimator Engine to be tested
+     * @param delta Absolute tolerance
+     * @param maxFraction Tolerance relative to maximum of the exact function
+     */
+    static void assertMatchesExactSumWithin(DensityEstimator estimator, double delta,
+            double maxFraction) {
+        assertMatchesExactSum(estimator, null, 0, delta, maxFraction);
+    }
+
+
+    // private helpers
+
+    private static void assertMatchesExactSum(DensityEstimator estimator, KernelFunction kernel,
+            double tolerance, double delta, double maxFraction) {
+        StarGenerator starGenerator = new StarGenerator();
+        RightAscension ra = new RightAscension(10.0f, 0.0f);
+        Declination dec = new Declination(-5.0f, 0.0f);
+        Set<Star> stars = starGenerator.getTestStars(ra, dec, 5.0f,
+                starGenerator.new Scatter(0.0f, 1.5f, 1.5f), new ProperMotion(1.0f, -1.0f),
+                NUM_OF_STARS);
+
+        Restrictions exactRest = new Restrictions(null, MAX_MU, null, SMOOTH_PARAM, null);
+        PmFrequency exact = new PmFrequency(stars, exactRest);
+        float[][] exactGrid = exact.getGrid();
+        double max = 0;
+        for (float[] row : exactGrid) {
+            for (float value : row) {
+                max = Math.max(max, value);
+            }
+        }
+        assertTrue(max > 0);
+
+        ExecutionConfig config = new ExecutionConfig(new ForkJoinPool(3), 3);
+        try {
+            for (Grid.Storage storage : Grid.Storage.values()) {
+                config.setGridStorage(storage);
+                Restrictions rest = new Restrictions(null, MAX_MU, null, SMOOTH_PARAM, null);
+                rest.setEstimator(estimator);
+                rest.setKernel(kernel);
+                float[][] grid = new PmFrequency(stars, rest, config).getGrid();
+                for (int i = 0; i < exactGrid.length; i++) {
+                    for (int u = 0; u < exactGrid.length; u++) {
+                        assertEquals(storage + " [" + i + "][" + u + "]", exactGrid[i][u], grid[i][u],
+                                tolerance * Math.max(1.0f, exactGrid[i][u]) + delta + maxFraction * max);
+                    }
+                }
+            }
+        } finally {
+            // failed comparison must not leak threads of the pool into other tests
+            config.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+package cz.muni.clusterix.businesstier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests related to ExecutionConfig entity.
+ * @author Tomas Sezima
+ */
+public class ExecutionConfigTest {
+
+    public ExecutionConfigTest() {}
+
+    /**
+     * Test of invokeAll method, of class ExecutionConfig.
+     */
+    @Test
+    public void testInvokeAll() {
+        System.out.println("Testing 'invokeAll' method.");
+        ExecutionConfig config = new ExecutionConfig(3);
+        final AtomicInteger counter = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    counter.incrementAndGet();
+                    return null;
+                }
+            });
+        }
+        config.invokeAll(tasks);
+        assertEquals(10, counter.get());
+        config.shutdown();
+        assertTrue(config.isShutdown());
+    }
+
+    /**
+     * Test of invokeAll method, of class ExecutionConfig. Exceptions thrown by
+     * tasks have to reach the caller.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvokeAllPropagatesFailure() {
+        System.out.println("Testing 'invokeAll' method failure.");
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        tasks.add(new Callable<Void>() {
+            @Override
+            public Void call() {
+                throw new IllegalArgumentException("Test failure.");
+            }
+        });
+        ExecutionConfig.getDefault().invokeAll(tasks);
+    }
+
+    /**
+     * Test of invokeRowBlocks method, of class ExecutionConfig. Each row has
+     * to be processed exactly once, both for ForkJoinPool and other executors.
+     */
+    @Test
+    public void testInvokeRowBlocks() {
+        System.out.println("Testing 'invokeRowBlocks' method.");
+        ExecutionConfig forkJoin = new ExecutionConfig(4);
+        ExecutionConfig fixed = new ExecutionConfig(Executors.newFixedThreadPool(3), 3);
+        for (ExecutionConfig config : new ExecutionConfig[]{forkJoin, fixed}) {
+            final AtomicIntegerArray visits = new AtomicIntegerArray(1001);
+            config.invokeRowBlocks(1001, new RowProcessor() {
+                @Override
+                public void process(int fromRow, int toRow) {
+                    for (int i = fromRow; i < toRow; i++) {
+                        visits.incrementAndGet(i);
+                    }
+                }
+            });
+            for (int i = 0; i < visits.length(); i++) {
+                assertEquals(1, visits.get(i));
+            }
+            config.shutdown();
+        }
+    }
+
+    /**
+     * Test of shutdownDefault method, of class ExecutionConfig.
+     */
+    @Test
+    public void testShutdownDefault() {
+        System.out.println("Testing 'shutdownDefault' method.");
+        ExecutionConfig first = ExecutionConfig.getDefault();
+        ExecutionConfig.shutdownDefault();
+        assertTrue(first.isShutdown());
+        ExecutionConfig second = ExecutionConfig.getDefault();
+        assertNotSame(first, second);
+        assertFalse(second.isShutdown());
+    }
+
+}
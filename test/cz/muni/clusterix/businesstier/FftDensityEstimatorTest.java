@@ -0,0 +1,26 @@
+package cz.muni.clusterix.businesstier;
+
+import org.junit.Test;
+
+/**
+ * Tests related to FftDensityEstimator entity.
+ * @author Tomas Sezima
+ */
+public class FftDensityEstimatorTest {
+
+    // maximal allowed difference from exact kernel sum, relative to function maximum
+    private static final double TOLERANCE = 0.01;
+
+    public FftDensityEstimatorTest() {}
+
+    /**
+     * Test of estimate method, of class FftDensityEstimator. Result is compared
+     * to the exact kernel sum, both estimates have to match up to binning error.
+     */
+    @Test
+    public void testEstimate() {
+        System.out.println("Testing 'estimate' method.");
+        DensityEstimatorFixture.assertMatchesExactSumWithin(new FftDensityEstimator(), 0, TOLERANCE);
+    }
+
+}
@@ -4,10 +4,13 @@ import cz.muni.clusterix.businesstier.FieldMask.FieldType;
 import cz.muni.clusterix.entities.Declination;
 import cz.muni.clusterix.entities.RightAscension;
 import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.StarCatalog;
 import cz.muni.clusterix.helpers.ClusterixConstants;
 import cz.muni.clusterix.helpers.StarGenerator;
 import java.util.EnumSet;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -96,6 +99,55 @@ public class FieldMaskTest {
         assertEquals(449, allStars.size());
     }
 
+    /**
+     * Test of classify method, of class FieldMask. Parallel classification
+     * of large catalogue has to match the sequential one.
+     */
+    @Test
+    public void testClassify() {
+        System.out.println("Testing 'classify' method.");
+        RightAscension ra = new RightAscension(10.0f, 0.0f);
+        Declination dec = new Declination(-5.0f, 0.0f);
+        FieldMask testMask = getTestFieldMask(ra, dec);
+        float spread = 2 * DEFAULT_CELLSIZE / ClusterixConstants.ARCSECS_IN_DEGREE;
+        Random random = new Random(7);
+        StarCatalog catalog = new StarCatalog();
+        for (int i = 0; i < 100000; i++) {
+            catalog.add(i, 0.0f, ra.getDegrees() + (random.nextFloat() - 0.5f) * 2 * spread,
+                    dec.getDegrees() + (random.nextFloat() - 0.5f) * 2 * spread,
+                    0.0f, Float.NaN, 0.0f, Float.NaN);
+        }
+
+        ExecutionConfig config = new ExecutionConfig(new ForkJoinPool(4), 4);
+        FieldMask.Classification classification = testMask.classify(catalog, config);
+        config.shutdown();
+        int total = 0;
+        for (FieldType type : FieldType.values()) {
+            int[] indices = classification.getIndices(type);
+            assertEquals(classification.getCount(type), indices.length);
+            assertEquals(indices.length, classification.getStars(type).size());
+            for (int i = 0; i < indices.length; i++) {
+                assertEquals(type, classification.getType(indices[i]));
+                assertTrue(i == 0 || indices[i - 1] < indices[i]);
+            }
+            total += indices.length;
+        }
+        assertEquals(catalog.size(), total);
+
+        // sequential classification of the first stars has to give the same types
+        int[] first = new int[1000];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = i;
+        }
+        FieldMask.Classification sequential = testMask.classify(catalog.select(first, first.length), null);
+        for (int i = 0; i < first.length; i++) {
+            assertEquals(classification.getType(i), sequential.getType(i));
+        }
+        StarCatalog mixed = classification.getStars(EnumSet.of(FieldType.CLUSTERFIELD, FieldType.FIELD));
+        assertEquals(classification.getCount(FieldType.CLUSTERFIELD) 
+                + classification.getCount(FieldType.FIELD), mixed.size());
+    }
+
     /**
      * Test of getAreaFactor method, of class FieldMask.
      */
@@ -121,6 +173,43 @@ public class FieldMaskTest {
     }
     
 
+    /**
+     * Test of getRatio and getCount methods, of class FieldMask.
+     */
+    @Test
+    public void testGetRatio() {
+        System.out.println("Testing 'getRatio' method.");
+        RightAscension ra = new RightAscension(10.0f, 0.0f);
+        Declination dec = new Declination(-5.0f, 0.0f);
+        FieldMask testMask = getTestFieldMask(ra, dec);
+        assertEquals(3, testMask.getCount(FieldType.CLUSTERFIELD));
+        assertEquals(4, testMask.getCount(FieldType.FIELD));
+        assertEquals(2, testMask.getCount(FieldType.NONE));
+        assertEquals(0.75f, testMask.getRatio(FieldType.CLUSTERFIELD, FieldType.FIELD), 0.000001);
+    }
+
+    /**
+     * Test of getMask method, of class FieldMask. Packed mask has to be
+     * materialised into the matrix it was created from.
+     */
+    @Test
+    public void testGetMask() {
+        System.out.println("Testing 'getMask' method.");
+        RightAscension ra = new RightAscension(10.0f, 0.0f);
+        Declination dec = new Declination(-5.0f, 0.0f);
+        FieldMask testMask = getTestFieldMask(ra, dec);
+        FieldType[][] mask = testMask.getMask();
+        for (int i = 0; i < 3; i++) {
+            for (int u = 0; u < 3; u++) {
+                assertEquals(testMask.getType(i, u), mask[i][u]);
+            }
+        }
+        assertEquals(FieldType.CLUSTERFIELD, mask[1][1]);
+        assertEquals(FieldType.NONE, mask[2][1]);
+        assertEquals(FieldType.FIELD, mask[2][0]);
+        assertEquals(testMask, new FieldMask(3, DEFAULT_CELLSIZE, mask, ra, dec));
+    }
+
     /**
      * Test of getDensity method, of class FieldMask.
      */
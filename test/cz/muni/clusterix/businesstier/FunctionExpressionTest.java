@@ -0,0 +1,108 @@
+package cz.muni.clusterix.businesstier;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Set of tests related to FunctionExpression.
+ * @author Tomas Sezima
+ */
+public class FunctionExpressionTest {
+
+    public FunctionExpressionTest() {}
+
+    /**
+     * Test of evaluateInto method, of class FunctionExpression. Fused
+     * evaluation has to give the same values as operations of PmFunction
+     * applied one by one.
+     */
+    @Test
+    public void testEvaluateInto() {
+        System.out.println("Testing 'evaluateInto' method.");
+        ExecutionConfig config = new ExecutionConfig(new ForkJoinPool(3), 3);
+        for (Grid.Storage storage : Grid.Storage.values()) {
+            config.setGridStorage(storage);
+            PmFunction first = getRandomFunction(37, 1, storage);
+            PmFunction second = getRandomFunction(37, 2, storage);
+            first.setExecutionConfig(config);
+
+            // (first - 0.6 * second) / second, thresholded, evaluated eagerly...
+            PmFunction scaled = new PmFunction(second.getValues().copy());
+            scaled.setExecutionConfig(config);
+            scaled.scale(0.6f);
+            PmFunction expected = new PmFunction(first.getValues().copy());
+            expected.setExecutionConfig(config);
+            expected.subtract(scaled);
+            expected.divideBy(second);
+            expected.applyUnaryOperator(new GridUnaryOperator() {
+                @Override
+                public float apply(int x, int y, float value) {
+                    return value > 0.1 ? value : 0;
+                }
+            });
+
+            // ...and lazily, shared leaf is evaluated twice
+            FunctionExpression secondLeaf = FunctionExpression.of(second);
+            FunctionExpression expression = FunctionExpression.of(first)
+                    .subtract(secondLeaf.scale(0.6f)).divideBy(secondLeaf).threshold(0.1);
+            assertEquals(expected.getValues(), expression.evaluate(storage, config));
+            assertEquals(expected.getValues(), expression.evaluate(storage, null));
+
+            // leaf may be overwritten by the expression
+            expression.evaluateInto(first.getValues(), config);
+            assertEquals(expected.getValues(), first.getValues());
+        }
+        config.shutdown();
+    }
+
+    /**
+     * Test of reduce method, of class FunctionExpression.
+     */
+    @Test
+    public void testReduce() {
+        System.out.println("Testing 'reduce' method.");
+        PmFunction function = getRandomFunction(41, 3, Grid.Storage.HEAP);
+        FunctionExpression expression = FunctionExpression.of(function).scale(2.0f);
+        double[] expected = new double[2];
+        for (int i = 0; i < function.getValues().getLength(); i++) {
+            float value = function.getValues().get(i) * 2.0f;
+            expected[value < 0 ? 0 : 1] += value;
+        }
+        ExecutionConfig config = new ExecutionConfig(new ForkJoinPool(4), 4);
+        double[] sums = expression.reduce(new GridReducer() {
+            @Override
+            public void reduce(int x, float[] values, double[] sums) {
+                for (float value : values) {
+                    sums[value < 0 ? 0 : 1] += value;
+                }
+            }
+        }, 2, config);
+        config.shutdown();
+        assertArrayEquals(expected, sums, 1e-6);
+    }
+
+    /**
+     * Expressions of different sizes can not be combined.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCombineDifferentSizes() {
+        System.out.println("Testing 'combine' method.");
+        FunctionExpression.of(getRandomFunction(5, 1, Grid.Storage.HEAP))
+                .subtract(FunctionExpression.of(getRandomFunction(7, 1, Grid.Storage.HEAP)));
+    }
+
+
+    // private helpers
+
+    private PmFunction getRandomFunction(int size, long seed, Grid.Storage storage) {
+        Random random = new Random(seed);
+        Grid grid = Grid.allocate(size, storage);
+        for (int i = 0; i < grid.getLength(); i++) {
+            grid.set(i, random.nextFloat() * 2 - 0.5f);
+        }
+        return new PmFunction(grid);
+    }
+
+}
@@ -0,0 +1,84 @@
+package cz.muni.clusterix.businesstier;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests related to Grid entity and its implementations.
+ * @author Tomas Sezima
+ */
+public class GridTest {
+
+    public GridTest() {}
+
+    /**
+     * Test of get and set methods, values have to be stored in row-major order.
+     */
+    @Test
+    public void testRowMajorIndexing() {
+        System.out.println("Testing grid indexing.");
+        for (Grid.Storage storage : Grid.Storage.values()) {
+            Grid grid = Grid.allocate(5, storage);
+            grid.set(2, 3, 4.5f);
+            assertEquals(2 * 5 + 3, grid.index(2, 3));
+            assertEquals(4.5f, grid.get(13), 0.000001);
+            assertEquals(4.5f, grid.toArray()[2][3], 0.000001);
+            assertEquals(0.0f, grid.get(3, 2), 0.000001);
+        }
+    }
+
+    /**
+     * Test of copy method, copied grid has to be independent on the original.
+     */
+    @Test
+    public void testCopy() {
+        System.out.println("Testing 'copy' method.");
+        for (Grid.Storage storage : Grid.Storage.values()) {
+            Grid grid = Grid.allocate(3, storage);
+            grid.set(1, 1, 2.0f);
+            Grid copy = grid.copy();
+            assertEquals(grid, copy);
+            copy.set(1, 1, 3.0f);
+            assertEquals(2.0f, grid.get(1, 1), 0.000001);
+        }
+    }
+
+    /**
+     * Test of equals method, grids with equal values are equal regardless of storage.
+     */
+    @Test
+    public void testEquals() {
+        System.out.println("Testing 'equals' method.");
+        float[][] matrix = new float[][]{{1, 2}, {3, 4}};
+        Grid heap = Grid.of(matrix);
+        Grid direct = Grid.allocate(2, Grid.Storage.DIRECT);
+        for (int i = 0; i < 2; i++) {
+            for (int u = 0; u < 2; u++) {
+                direct.set(i, u, matrix[i][u]);
+            }
+        }
+        assertEquals(heap, direct);
+        assertEquals(heap.hashCode(), direct.hashCode());
+    }
+
+    /**
+     * Test of grid allocation close to the size limit. Direct grids larger
+     * than 8192 x 8192 used to overflow the number of bytes they allocate,
+     * sizes whose cells do not fit single buffer are refused.
+     */
+    @Test
+    public void testAllocateLarge() {
+        System.out.println("Testing allocation of large grids.");
+        Grid grid = Grid.allocate(8193, Grid.Storage.DIRECT);
+        grid.set(8192, 8192, 1.5f);
+        assertEquals(1.5f, grid.get(grid.getLength() - 1), 0.000001);
+        assertEquals(0.0f, grid.get(0), 0.000001);
+        try {
+            Grid.allocate(23171, Grid.Storage.DIRECT);
+            fail("Grid whose cells do not fit single buffer was created.");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+}
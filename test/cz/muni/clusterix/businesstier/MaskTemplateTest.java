@@ -0,0 +1,71 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.businesstier.FieldMask.FieldType;
+import cz.muni.clusterix.entities.Declination;
+import cz.muni.clusterix.entities.OpenCluster;
+import cz.muni.clusterix.entities.RightAscension;
+import java.util.BitSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * A set of tests related to MaskTemplate entity.
+ * @author Tomas Sezima
+ */
+public class MaskTemplateTest {
+
+    public MaskTemplateTest() {}
+
+    /**
+     * Test of getCircular method, of class MaskTemplate. Masks of clusters of
+     * the same shape have to share single template, the least recently used
+     * templates are dropped once the cache is full.
+     */
+    @Test
+    public void testGetCircular() {
+        System.out.println("Testing 'getCircular' method.");
+        MaskTemplate template = MaskTemplate.getCircular(101, 0.5f);
+        assertSame(template, MaskTemplate.getCircular(101, 0.5f));
+        assertNotSame(template, MaskTemplate.getCircular(103, 0.5f));
+        assertNotSame(template, MaskTemplate.getCircular(101, 0.25f));
+
+        // clusters of different size and position, but of the same shape
+        OpenCluster first = new OpenCluster("First", new RightAscension(10.0f, 0.0f),
+                new Declination(20.0f, 0.0f), 3.0f, 6.0f);
+        OpenCluster second = new OpenCluster("Second", new RightAscension(200.0f, 0.0f),
+                new Declination(-40.0f, 0.0f), 12.0f, 24.0f);
+        FieldMask firstMask = first.getDefaultMask(101);
+        FieldMask secondMask = second.getDefaultMask(101);
+        assertArrayEquals(firstMask.getMask(), secondMask.getMask());
+        assertEquals(template.getCount(FieldType.CLUSTERFIELD), firstMask.getCount(FieldType.CLUSTERFIELD));
+
+        for (int i = 0; i < 64; i++) {
+            MaskTemplate.getCircular(11, i / 64.0f);
+        }
+        MaskTemplate recreated = MaskTemplate.getCircular(101, 0.5f);
+        assertNotSame(template, recreated);
+        assertEquals(template, recreated);
+    }
+
+    /**
+     * Test of getCircular method, of class MaskTemplate. Cells whose centers
+     * are within circles have to be marked.
+     */
+    @Test
+    public void testCircularCells() {
+        System.out.println("Testing circular template cells.");
+        MaskTemplate template = MaskTemplate.getCircular(5, 0.5f);
+        //  N F F F N
+        //  F F C F F
+        //  F C C C F
+        //  F F C F F
+        //  N F F F N
+        BitSet clusterField = new BitSet();
+        BitSet field = new BitSet();
+        for (int cell : new int[]{7, 11, 12, 13, 17}) clusterField.set(cell);
+        for (int cell : new int[]{1, 2, 3, 5, 6, 8, 9, 10, 14, 15, 16, 18, 19, 21, 22, 23}) field.set(cell);
+        assertEquals(new MaskTemplate(5, clusterField, field), template);
+        assertEquals(4, template.getCount(FieldType.NONE));
+    }
+
+}
@@ -1,8 +1,15 @@
 package cz.muni.clusterix.businesstier;
 
 import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.StarCatalog;
 import cz.muni.clusterix.helpers.StarGenerator;
 import static java.lang.Math.hypot;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -58,10 +65,157 @@ public class PmProbabilityTest {
             }
         }
     }    
+
+
+    /**
+     * Test of assignProbabsTo method, of class PmProbability. Members have to
+     * be the most probable stars, stars of equal probability are ranked by
+     * their position in the catalogue.
+     */
+    @Test
+    public void testAssignProbabsTo() {
+        System.out.println("Testing 'assignProbabsTo' method.");
+        int gridSize = 101;
+        Random random = new Random(13);
+        float[][] clusterGrid = new float[gridSize][gridSize];
+        float[][] clusterFieldGrid = new float[gridSize][gridSize];
+        for (int i = 0; i < gridSize; i++) {
+            for (int u = 0; u < gridSize; u++) {
+                clusterGrid[i][u] = random.nextFloat() * 1000;
+                clusterFieldGrid[i][u] = 1000 + random.nextFloat() * 1000;
+            }
+        }
+        Restrictions restrictions = new Restrictions(null, 4.0, 10.0f, null, null);
+        PmProbability probability = new PmProbability(new PmFrequency(clusterGrid, 1.0),
+                new PmFrequency(clusterFieldGrid, 1.0), restrictions);
+        probability.setExecutionConfig(new ExecutionConfig(new ForkJoinPool(3), 3));
+
+        StarCatalog catalog = new StarCatalog();
+        for (int i = 0; i < 100000; i++) {
+            catalog.add(i, 10.0f, 100.0f, 10.0f, (random.nextFloat() - 0.5f) * 9, 0.1f,
+                    (random.nextFloat() - 0.5f) * 9, 0.1f);
+        }
+        List<Star> ranked = probability.assignProbabsTo(catalog);
+        int members = probability.getExpectedNumOfMembers();
+        assertTrue(members > 0 && members < catalog.size());
+
+        // expected order by probability (descending) and catalogue index
+        Integer[] order = new Integer[catalog.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        final float[] probabilities = catalog.getProbabilities();
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                int result = Float.compare(probabilities[second], probabilities[first]);
+                return result != 0 ? result : first.compareTo(second);
+            }
+        });
+        assertEquals(catalog.size(), ranked.size());
+        for (int rank = 0; rank < order.length; rank++) {
+            assertEquals(rank < members, catalog.isClusterStar(order[rank]));
+            assertEquals(catalog.getNos()[order[rank]], ranked.get(rank).getNo());
+            assertEquals(rank < members, ranked.get(rank).isClusterStar());
+        }
+        // stars are ordered on the first access, by the function's configuration
+        probability.getExecutionConfig().shutdown();
+    }
+
+
+    /**
+     * Test of PmProbability constructor taking cluster function expression.
+     * Probabilities and expected number of members have to match the ones of
+     * probability function created from materialised cluster function.
+     */
+    @Test
+    public void testExpressionConstructor() {
+        System.out.println("Testing PmProbability constructor taking expression.");
+        int gridSize = 61;
+        Random random = new Random(17);
+        float[][] clusterFieldGrid = new float[gridSize][gridSize];
+        float[][] fieldGrid = new float[gridSize][gridSize];
+        for (int i = 0; i < gridSize; i++) {
+            for (int u = 0; u < gridSize; u++) {
+                clusterFieldGrid[i][u] = 1 + random.nextFloat() * 10;
+                fieldGrid[i][u] = random.nextFloat() * 10;
+            }
+        }
+        Restrictions restrictions = new Restrictions(null, 2.0, 10.0f, null, null);
+        PmFrequency clusterFieldFreq = new PmFrequency(clusterFieldGrid, 1.0);
+        PmFrequency fieldFreq = new PmFrequency(fieldGrid, 1.0);
+
+        FunctionExpression expression = FunctionExpression.of(clusterFieldFreq)
+                .subtract(FunctionExpression.of(fieldFreq).scale(0.7f));
+        PmProbability lazy = new PmProbability(expression, clusterFieldFreq, restrictions);
+
+        fieldFreq.scale(0.7f);
+        PmFrequency clusterFreq = clusterFieldFreq.clone();
+        clusterFreq.subtract(fieldFreq);
+        int expectedNumOfMembers = (int) Math.ceil(getPositiveSum(clusterFreq) 
+                * clusterFreq.getCellsize() * clusterFreq.getCellsize());
+        PmProbability eager = new PmProbability(clusterFreq, clusterFieldFreq, restrictions);
+        assertEquals(eager.getValues(), lazy.getValues());
+        assertEquals(expectedNumOfMembers, lazy.getExpectedNumOfMembers());
+        assertEquals(eager.getExpectedNumOfMembers(), lazy.getExpectedNumOfMembers());
+    }
+
+
+    /**
+     * Test of PmProbability constructor taking cluster-field and field
+     * functions. Probabilities have to be identical to the ones of probability
+     * function created from materialised cluster function, field function's
+     * grid has to be reused.
+     */
+    @Test
+    public void testKernelConstructor() {
+        System.out.println("Testing PmProbability constructor taking field function.");
+        int gridSize = 61;
+        Random random = new Random(19);
+        Grid clusterFieldGrid = Grid.allocate(gridSize, Grid.Storage.HEAP);
+        Grid fieldGrid = Grid.allocate(gridSize, Grid.Storage.HEAP);
+        for (int i = 0; i < clusterFieldGrid.getLength(); i++) {
+            clusterFieldGrid.set(i, 1 + random.nextFloat() * 10);
+            fieldGrid.set(i, random.nextFloat() * 10);
+        }
+        for (Grid.Storage storage : Grid.Storage.values()) {
+            for (double maxMu : new double[]{0.01, 0.5, 2.0, 2.4, 10.0}) {
+                Restrictions restrictions = new Restrictions(null, maxMu, 10.0f, null, null);
+                PmFrequency clusterFieldFreq = new PmFrequency(copy(clusterFieldGrid, storage), 1.0);
+                PmFrequency scaledFieldFreq = new PmFrequency(copy(fieldGrid, storage), 1.0);
+                scaledFieldFreq.scale(0.7f);
+                PmFrequency clusterFreq = clusterFieldFreq.clone();
+                clusterFreq.subtract(scaledFieldFreq);
+                PmProbability expected = new PmProbability(clusterFreq, clusterFieldFreq, restrictions);
+
+                PmFrequency fieldFreq = new PmFrequency(copy(fieldGrid, storage), 1.0);
+                PmProbability actual = new PmProbability(clusterFieldFreq, fieldFreq, 0.7f, restrictions);
+                assertSame(fieldFreq.getValues(), actual.getValues());
+                assertEquals(expected.getValues(), actual.getValues());
+                assertEquals(expected.getExpectedNumOfMembers(), actual.getExpectedNumOfMembers());
+            }
+        }
+    }
     
     
     // private helpers        
     
+    private Grid copy(Grid grid, Grid.Storage storage) {
+        Grid copy = Grid.allocate(grid.getSize(), storage);
+        for (int i = 0; i < grid.getLength(); i++) {
+            copy.set(i, grid.get(i));
+        }
+        return copy;
+    }
+
+    private double getPositiveSum(PmFunction function) {
+        double sum = 0;
+        for (int i = 0; i < function.getValues().getLength(); i++) {
+            sum += Math.max(0, function.getValues().get(i));
+        }
+        return sum;
+    }
+
     private PmFrequency getTestPmFunction(int size, float values){
         float[][] grid = new float[size][size];
         for(int i = 0; i < size; i++){
@@ -0,0 +1,24 @@
+package cz.muni.clusterix.businesstier;
+
+import org.junit.Test;
+
+/**
+ * Tests related to SeparableDensityEstimator entity.
+ * @author Tomas Sezima
+ */
+public class SeparableDensityEstimatorTest {
+
+    public SeparableDensityEstimatorTest() {}
+
+    /**
+     * Test of estimate method, of class SeparableDensityEstimator. Result is
+     * compared to the exact kernel sum, stars exceed a single star block and
+     * both grid storages are used.
+     */
+    @Test
+    public void testEstimate() {
+        System.out.println("Testing 'estimate' method.");
+        DensityEstimatorFixture.assertMatchesExactSum(new SeparableDensityEstimator(), null, 1e-5);
+    }
+
+}
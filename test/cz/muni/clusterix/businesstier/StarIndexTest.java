@@ -0,0 +1,66 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.StarCatalog;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * A set of tests related to StarIndex.
+ * @author Tomas Sezima
+ */
+public class StarIndexTest {
+
+    public StarIndexTest() {}
+
+    /**
+     * Test of query method, of class StarIndex. Retrieved stars have to match
+     * the ones found by a scan of the whole catalogue.
+     */
+    @Test
+    public void testQuery() {
+        System.out.println("Testing 'query' method.");
+        Random random = new Random(11);
+        StarCatalog catalog = new StarCatalog();
+        for (int i = 0; i < 50000; i++) {
+            // dense region around (100, 10), sparse stars all over the sky
+            float ra = i % 2 == 0 ? 100 + (random.nextFloat() - 0.5f) * 2 : random.nextFloat() * 360;
+            float dec = i % 2 == 0 ? 10 + (random.nextFloat() - 0.5f) * 2 : random.nextFloat() * 180 - 90;
+            catalog.add(i, 10.0f, ra, dec, 0.0f, Float.NaN, 0.0f, Float.NaN);
+        }
+        // stars sharing coordinates and stars exactly at zone borders
+        catalog.add(50000, 10.0f, 100.0f, 10.0f, 0.0f, Float.NaN, 0.0f, Float.NaN);
+        catalog.add(50001, 10.0f, 100.0f, 10.0f, 0.0f, Float.NaN, 0.0f, Float.NaN);
+        catalog.add(50002, 10.0f, 100.0f, 10.2f, 0.0f, Float.NaN, 0.0f, Float.NaN);
+        catalog.add(50003, 10.0f, 0.0f, -90.0f, 0.0f, Float.NaN, 0.0f, Float.NaN);
+
+        for (float zoneHeight : new float[]{StarIndex.DEFAULT_ZONE_HEIGHT, 0.013f, 5.0f}) {
+            StarIndex index = new StarIndex(catalog, zoneHeight);
+            assertQuery(catalog, index, 100.0f, 10.0f, 0.2f);
+            assertQuery(catalog, index, 100.0f, 10.0f, 0.0f);
+            assertQuery(catalog, index, 100.37f, 9.81f, 0.05f);
+            assertQuery(catalog, index, 10.0f, -89.9f, 1.0f);
+            assertQuery(catalog, index, 200.0f, 45.0f, 20.0f);
+            assertQuery(catalog, index, 0.0f, 0.0f, 400.0f);
+        }
+        assertArrayEquals(new int[]{50000, 50001},
+                Arrays.copyOfRange(new StarIndex(catalog).query(100.0f, 10.0f, 0.0f), 0, 2));
+        assertEquals(0, new StarIndex(new StarCatalog()).query(100.0f, 10.0f, 1.0f).length);
+    }
+
+
+    // private helpers
+
+    private void assertQuery(StarCatalog catalog, StarIndex index, float ra, float dec, float radius) {
+        int[] expected = new int[catalog.size()];
+        int count = 0;
+        for (int i = 0; i < catalog.size(); i++) {
+            if (Math.abs(catalog.getRas()[i] - ra) <= radius && Math.abs(catalog.getDecs()[i] - dec) <= radius) {
+                expected[count++] = i;
+            }
+        }
+        assertArrayEquals(Arrays.copyOf(expected, count), index.query(ra, dec, radius));
+    }
+
+}
@@ -1,12 +1,20 @@
 package cz.muni.clusterix.businesstier;
 
+import cz.muni.clusterix.businesstier.FieldMask.FieldType;
 import cz.muni.clusterix.entities.Declination;
+import cz.muni.clusterix.entities.OpenCluster;
 import cz.muni.clusterix.entities.ProperMotion;
 import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.Result;
 import cz.muni.clusterix.entities.RightAscension;
 import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.StarCatalog;
+import cz.muni.clusterix.helpers.Calc;
 import cz.muni.clusterix.helpers.StarGenerator;
+import java.util.EnumSet;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -84,6 +92,132 @@ public class StellarFieldTest {
         StellarField second = new StellarField(first.getStars());
         assertTrue(first.equals(second));
     }
-    
-    
+
+    /**
+     * Test of prepare method, of class StellarField. Fused preparation of
+     * large field (processed in parallel) has to match separate filtering,
+     * classification and statistics.
+     */
+    @Test
+    public void testPrepare() {
+        System.out.println("Testing 'prepare' method.");
+        RightAscension ra = new RightAscension(100.0f, 0.0f);
+        Declination dec = new Declination(10.0f, 0.0f);
+        Random random = new Random(3);
+        StarCatalog catalog = new StarCatalog();
+        for (int i = 0; i < 200000; i++) {
+            catalog.add(i, random.nextFloat() * 20, ra.getDegrees() + (random.nextFloat() - 0.5f),
+                    dec.getDegrees() + (random.nextFloat() - 0.5f), (float) random.nextGaussian() * 5,
+                    random.nextFloat(), (float) random.nextGaussian() * 5, random.nextFloat());
+        }
+        OpenCluster cluster = new OpenCluster("Test cluster", ra, dec, 5.0f);
+        FieldMask mask = cluster.getDefaultMask(101);
+        FieldMask vicinity = new OpenCluster("Vicinity", ra, dec, 8.0f).getDefaultMask(101);
+        Restrictions restrictions = new Restrictions(15.0f, 12.0d, 1.0f, null, null);
+
+        ExecutionConfig config = new ExecutionConfig(new ForkJoinPool(4), 4);
+        StellarField field = new StellarField(catalog, config);
+        PreparedField prepared = field.prepare(mask, vicinity, restrictions);
+        config.shutdown();
+
+        StarCatalog filtered = field.getFilteredCatalog(restrictions);
+        FieldMask.Classification samples = mask.classify(filtered, null);
+        assertArrayEquals(samples.getStars(FieldType.CLUSTERFIELD).getNos(),
+                prepared.getClusterFieldStars().getNos());
+        assertArrayEquals(samples.getStars(FieldType.FIELD).getNos(),
+                prepared.getFieldStars().getNos());
+        assertArrayEquals(vicinity.classify(filtered, null).getStars(
+                EnumSet.of(FieldType.CLUSTERFIELD, FieldType.FIELD)).getNos(),
+                prepared.getCandidates().getNos());
+
+        double maxMu = 0;
+        for (int i = 0; i < filtered.size(); i++) {
+            maxMu = Math.max(maxMu, filtered.getMeanMu(i));
+        }
+        assertEquals(maxMu, prepared.getMaxMu(), 0.0);
+        StarCatalog clusterField = samples.getStars(FieldType.CLUSTERFIELD);
+        assertEquals(clusterField.size(), prepared.getClusterFieldMoments().getCount());
+        assertEquals(Calc.getSmoothParam(clusterField),
+                Calc.getSmoothParam(prepared.getClusterFieldMoments()), 1e-9);
+    }
+
+    /**
+     * Test of prepare method of field backed by StarIndex. Samples have to
+     * match the ones of the field prepared as a whole.
+     */
+    @Test
+    public void testPrepareIndexed() {
+        System.out.println("Testing indexed 'prepare' method.");
+        RightAscension ra = new RightAscension(100.0f, 0.0f);
+        Declination dec = new Declination(10.0f, 0.0f);
+        Random random = new Random(5);
+        StarCatalog catalog = new StarCatalog();
+        for (int i = 0; i < 200000; i++) {
+            catalog.add(i, random.nextFloat() * 20, ra.getDegrees() + (random.nextFloat() - 0.5f) * 4,
+                    dec.getDegrees() + (random.nextFloat() - 0.5f) * 4, (float) random.nextGaussian() * 5,
+                    random.nextFloat(), (float) random.nextGaussian() * 5, random.nextFloat());
+        }
+        StellarField whole = new StellarField(catalog, null);
+        StellarField indexed = new StellarField(new StarIndex(catalog), null);
+        OpenCluster cluster = new OpenCluster("Test cluster", ra, dec, 5.0f);
+        FieldMask vicinity = new OpenCluster("Vicinity", new RightAscension(100.1f, 0.0f),
+                dec, 8.0f).getDefaultMask(101);
+        FieldMask circular = cluster.getDefaultMask(101);
+        // rasterised mask decides membership by rounded cell coordinates
+        FieldMask rasterised = new FieldMask(101, circular.getCellSize(),
+                MaskTemplate.getCircular(101, 0.5f), ra, dec);
+
+        for (FieldMask mask : new FieldMask[]{circular, rasterised}) {
+            PreparedField expected = whole.prepare(mask, vicinity, new Restrictions(15.0f, 12.0d, 1.0f, null, null));
+            PreparedField actual = indexed.prepare(mask, vicinity, new Restrictions(15.0f, 12.0d, 1.0f, null, null));
+            assertTrue(actual.getClusterFieldStars().size() > 0);
+            assertArrayEquals(expected.getClusterFieldStars().getNos(), actual.getClusterFieldStars().getNos());
+            assertArrayEquals(expected.getFieldStars().getNos(), actual.getFieldStars().getNos());
+            assertArrayEquals(expected.getCandidates().getNos(), actual.getCandidates().getNos());
+            assertEquals(expected.getClusterFieldMoments().getCount(), actual.getClusterFieldMoments().getCount());
+            assertEquals(Calc.getSmoothParam(expected.getClusterFieldMoments()),
+                    Calc.getSmoothParam(actual.getClusterFieldMoments()), 0.0);
+            assertEquals(expected.getMaxMu(), actual.getMaxMu(), 0.0);
+        }
+    }
+
+    /**
+     * Test of evaluateProbabilities method of field backed by StarIndex.
+     * Cluster in a field much wider than the masks has to get the same result
+     * as from the field evaluated as a whole, i.e. batch and single runs agree.
+     */
+    @Test
+    public void testEvaluateProbabilitiesIndexed() throws Exception {
+        System.out.println("Testing indexed 'evaluateProbabilities' method.");
+        RightAscension ra = new RightAscension(100.0f, 0.0f);
+        Declination dec = new Declination(10.0f, 0.0f);
+        Random random = new Random(7);
+        StarCatalog catalog = new StarCatalog();
+        for (int i = 0; i < 100000; i++) {
+            catalog.add(i, random.nextFloat() * 20, ra.getDegrees() + (random.nextFloat() - 0.5f) * 4,
+                    dec.getDegrees() + (random.nextFloat() - 0.5f) * 4, (float) random.nextGaussian() * 3,
+                    random.nextFloat() * 0.5f, (float) random.nextGaussian() * 3, random.nextFloat() * 0.5f);
+        }
+        for (int i = 100000; i < 100300; i++) {
+            catalog.add(i, random.nextFloat() * 15, ra.getDegrees() + (float) random.nextGaussian() * 0.03f,
+                    dec.getDegrees() + (float) random.nextGaussian() * 0.03f,
+                    4.0f + (float) random.nextGaussian() * 0.3f, random.nextFloat() * 0.5f,
+                    -3.0f + (float) random.nextGaussian() * 0.3f, random.nextFloat() * 0.5f);
+        }
+
+        Result[] results = new Result[2];
+        StellarField[] fields = {new StellarField(catalog, null),
+                new StellarField(new StarIndex(catalog), null)};
+        for (int i = 0; i < fields.length; i++) {
+            OpenCluster cluster = new OpenCluster("Test cluster", ra, dec, 5.0f);
+            results[i] = fields[i].evaluateProbabilities(cluster, cluster.getDefaultMask(101),
+                    new Restrictions(15.0f, 12.0d, 1.0f, null, null));
+        }
+        assertTrue(results[0].getNumOfMembers() > 0);
+        assertEquals(results[0].getRests().getMaxMu(), results[1].getRests().getMaxMu());
+        assertEquals(results[0].getNumOfMembers(), results[1].getNumOfMembers());
+        assertEquals(results[0].getStars(), results[1].getStars());
+        assertEquals(results[0], results[1]);
+    }
+
 }
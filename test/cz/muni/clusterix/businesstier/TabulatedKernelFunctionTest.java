@@ -0,0 +1,101 @@
+package cz.muni.clusterix.businesstier;
+
+import cz.muni.clusterix.entities.Declination;
+import cz.muni.clusterix.entities.ProperMotion;
+import cz.muni.clusterix.entities.Restrictions;
+import cz.muni.clusterix.entities.RightAscension;
+import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.helpers.StarGenerator;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests related to TabulatedKernelFunction entity.
+ * @author Tomas Sezima
+ */
+public class TabulatedKernelFunctionTest {
+
+    private final StarGenerator starGenerator;
+
+    public TabulatedKernelFunctionTest() {
+        this.starGenerator = new StarGenerator();
+    }
+
+    /**
+     * Test of evaluate method, of class TabulatedKernelFunction. Relative error
+     * has to be within the bound inside kernel support, kernel is 0 beyond it.
+     */
+    @Test
+    public void testEvaluate() {
+        System.out.println("Testing 'evaluate' method.");
+        for (double maxError : new double[]{0.1, 1e-4, 1e-6, 1e-8}) {
+            TabulatedKernelFunction kernel = new TabulatedKernelFunction(maxError, 4.0);
+            for (double t = 0; t < 16.0; t += 0.0007) {
+                double expected = Math.exp(-0.5 * t);
+                assertEquals(expected, kernel.evaluate(t), maxError * expected);
+            }
+            assertEquals(0.0, kernel.evaluate(16.0), 0);
+            assertEquals(0.0, kernel.evaluate(1000.0), 0);
+            assertEquals(0.0, kernel.evaluate(Double.POSITIVE_INFINITY), 0);
+        }
+    }
+
+    /**
+     * Test of constructor, of class TabulatedKernelFunction. Invalid bounds
+     * have to be rejected.
+     */
+    @Test
+    public void testConstructor() {
+        System.out.println("Testing 'constructor' method.");
+        for (double maxError : new double[]{0, -1e-6, 0.5, Double.NaN}) {
+            try {
+                new TabulatedKernelFunction(maxError);
+                fail("Error bound " + maxError + " should be rejected.");
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+        try {
+            new TabulatedKernelFunction(1e-6, 0);
+            fail("Non-positive cutoff should be rejected.");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Tabulated kernel plugged into each density estimation engine has to
+     * give the same frequency function as the exact kernel, up to relative
+     * error of the table and neglected kernel tails.
+     */
+    @Test
+    public void testEstimators() {
+        System.out.println("Testing tabulated kernel with all density estimators.");
+        RightAscension ra = new RightAscension(10.0f, 0.0f);
+        Declination dec = new Declination(-5.0f, 0.0f);
+        Set<Star> stars = starGenerator.getTestStars(ra, dec, 5.0f,
+                starGenerator.new Scatter(0.0f, 1.5f, 1.5f), new ProperMotion(1.0f, -1.0f), 300);
+        DensityEstimator[] estimators = {new ExactDensityEstimator(), new TruncatedDensityEstimator(),
+            new FftDensityEstimator(), new SeparableDensityEstimator(), new VectorizedDensityEstimator()};
+        double volume = 1.0 / (2 * Math.PI * 0.8 * 0.8);
+        double delta = 3 * stars.size() * volume
+                * (1e-5 + TruncatedDensityEstimator.DEFAULT_TOLERANCE) + 1e-4;
+
+        for (DensityEstimator estimator : estimators) {
+            Restrictions exactRest = new Restrictions(null, 6.0d, null, 0.8d, null);
+            exactRest.setEstimator(estimator);
+            float[][] exactGrid = new PmFrequency(stars, exactRest).getGrid();
+            Restrictions tabulatedRest = new Restrictions(null, 6.0d, null, 0.8d, null);
+            tabulatedRest.setEstimator(estimator);
+            tabulatedRest.setKernel(new TabulatedKernelFunction(1e-5));
+            float[][] tabulatedGrid = new PmFrequency(stars, tabulatedRest).getGrid();
+            for (int i = 0; i < exactGrid.length; i++) {
+                for (int u = 0; u < exactGrid.length; u++) {
+                    assertEquals(exactGrid[i][u], tabulatedGrid[i][u], delta);
+                }
+            }
+        }
+    }
+
+}
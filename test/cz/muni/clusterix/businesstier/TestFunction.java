@@ -1,6 +1,12 @@
 package cz.muni.clusterix.businesstier;
 
 import cz.muni.clusterix.entities.ExecutionContext;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -105,6 +111,10 @@ public class TestFunction {
         BinaryOperator testOperator = new BinaryOperator() {
             @Override
             public float apply(float firstFunctionValue, float secondFunctionValue, ExecutionContext context) {
+                // matrices of compatibility view hold values prior to the operation
+                float[][] second = context.getFunctions().get(1);
+                assertEquals(secondFunctionValue, 
+                        second[context.getCurrentXcoord()][context.getCurrentYcoord()], 0);
                 return firstFunctionValue * secondFunctionValue / 3;
             }
         };
@@ -155,6 +165,189 @@ public class TestFunction {
     }
     
 
+    /**
+     * Test of applyUnaryOperation method, of class PmFunction. Both partitioning
+     * schemes have to produce the same grid.
+     */
+    @Test
+    public void testPartitioning() {
+        System.out.println("Testing operator partitioning.");
+        PmFunction strided = new TestPmFunction(101, 3.7f);
+        PmFunction blocks = new TestPmFunction(101, 3.7f);
+        PmFunction subtractor = new TestPmFunction(101, -1.2f);
+        ExecutionConfig stridedConfig = new ExecutionConfig(new ForkJoinPool(3), 3,
+                ExecutionConfig.Partitioning.STRIDED);
+        ExecutionConfig blocksConfig = new ExecutionConfig(new ForkJoinPool(3), 3,
+                ExecutionConfig.Partitioning.ROW_BLOCKS);
+        strided.setExecutionConfig(stridedConfig);
+        blocks.setExecutionConfig(blocksConfig);
+
+        strided.scale(0.3f);
+        strided.subtract(subtractor);
+        blocks.scale(0.3f);
+        blocks.subtract(subtractor);
+        assertEquals(strided, blocks);
+
+        stridedConfig.shutdown();
+        blocksConfig.shutdown();
+    }
+
+    /**
+     * Test of scale and subtract methods over off-heap grids.
+     */
+    @Test
+    public void testDirectGrid() {
+        System.out.println("Testing operators over direct grids.");
+        PmFunction heap = new TestPmFunction(11, 5.1f);
+        PmFunction direct = new PmFunction(Grid.allocate(11, Grid.Storage.DIRECT));
+        PmFunction subtractor = new TestPmFunction(11, 0.7f);
+        float[][] heapGrid = heap.getGrid();
+        for (int i = 0; i < 11; i++) {
+            for (int u = 0; u < 11; u++) {
+                direct.getValues().set(i, u, heapGrid[i][u]);
+            }
+        }
+
+        heap.scale(1.5f);
+        heap.subtract(subtractor);
+        direct.scale(1.5f);
+        direct.subtract(subtractor);
+        assertEquals(heap.getValues(), direct.getValues());
+    }
+
+    /**
+     * Test of applyToRows method, of class PmFunction. Primitive operators
+     * must not allocate within the slice loop.
+     */
+    @Test
+    public void testAllocationFreeOperators() {
+        System.out.println("Testing allocation of primitive operators.");
+        Grid first = new TestPmFunction(201, 1.3f).getValues();
+        Grid second = new TestPmFunction(201, 0.4f).getValues();
+        GridUnaryOperator scale = new GridUnaryOperator() {
+            @Override
+            public float apply(int x, int y, float value) {
+                return value * 1.0001f;
+            }
+        };
+        GridBinaryOperator subtraction = new GridBinaryOperator() {
+            @Override
+            public float apply(int x, int y, float firstValue, float secondValue) {
+                return firstValue - secondValue;
+            }
+        };
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // warm up so that measurement is not affected by class loading
+        for (int i = 0; i < 50; i++) {
+            PmFunction.applyToRows(first, scale, 0, first.getSize());
+            PmFunction.applyToRows(first, second, subtraction, 0, first.getSize());
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 50; i++) {
+            PmFunction.applyToRows(first, scale, 0, first.getSize());
+            PmFunction.applyToRows(first, second, subtraction, 0, first.getSize());
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // 100 passes over 40401 cells, boxing a single value per cell would exceed this
+        assertTrue("Allocated " + allocated + " bytes.", allocated < 4096);
+    }
+
+    /**
+     * Test of applyUnaryOperation method, of class PmFunction. All tasks
+     * share single copy of the function taken before the operation.
+     */
+    @Test
+    public void testApplyUnaryOperationSnapshot() {
+        System.out.println("Testing 'applyUnaryOperation' method snapshot.");
+        PmFunction function = new TestPmFunction(101, 3.7f);
+        final float[][] original = function.getGrid();
+        final Set<float[][]> snapshots = Collections.synchronizedSet(
+                Collections.newSetFromMap(new IdentityHashMap<float[][], Boolean>()));
+        UnaryOperator testOperator = new UnaryOperator() {
+            @Override
+            public float apply(float functionValue, ExecutionContext context) {
+                float[][] snapshot = context.getFunctions().get(0);
+                snapshots.add(snapshot);
+                // mirrored cell may have been processed by other task already
+                int x = 100 - context.getCurrentXcoord();
+                int y = 100 - context.getCurrentYcoord();
+                assertEquals(original[x][y], snapshot[x][y], 0);
+                return -functionValue;
+            }
+        };
+
+        ExecutionConfig config = new ExecutionConfig(new ForkJoinPool(3), 3);
+        function.setExecutionConfig(config);
+        function.applyUnaryOperator(testOperator, null);
+        assertEquals(1, snapshots.size());
+        assertEquals(-original[7][9], function.getValues().get(7, 9), 0);
+        config.shutdown();
+    }
+
+    /**
+     * Test of reduce method, of class PmFunction. Result does not depend on
+     * the number of threads, it is memoised until the grid is modified.
+     */
+    @Test
+    public void testReduce() {
+        System.out.println("Testing 'reduce' method.");
+        final AtomicInteger reducedRows = new AtomicInteger();
+        GridReducer reducer = new GridReducer() {
+            @Override
+            public void reduce(int x, float[] values, double[] sums) {
+                reducedRows.incrementAndGet();
+                for (float value : values) {
+                    sums[0] += value;
+                    sums[1] += value * value;
+                }
+            }
+        };
+        PmFunction function = new TestPmFunction(37, 0.3f);
+        function.applyUnaryOperator(new GridUnaryOperator() {
+            @Override
+            public float apply(int x, int y, float value) {
+                return value - y * 0.7f;
+            }
+        });
+        float[][] grid = function.getGrid();
+        double sum = 0;
+        for (float[] row : grid) {
+            for (float value : row) {
+                sum += value;
+            }
+        }
+
+        // the same sums regardless of parallelism...
+        ExecutionConfig single = new ExecutionConfig(new ForkJoinPool(1), 1);
+        ExecutionConfig triple = new ExecutionConfig(new ForkJoinPool(3), 3);
+        function.setExecutionConfig(single);
+        double[] singleSums = function.reduce(reducer, 2);
+        assertEquals(sum, singleSums[0], 1e-6);
+        // rewriting single cell invalidates memoised sums as well
+        Grid values = function.getValues();
+        values.set(0, 0, values.get(0, 0));
+        function.setExecutionConfig(triple);
+        assertArrayEquals(singleSums, function.reduce(reducer, 2), 0);
+
+        // ...memoised until the grid is modified
+        reducedRows.set(0);
+        function.reduce(reducer, 2)[0] = Double.NaN;
+        assertArrayEquals(singleSums, function.reduce(reducer, 2), 0);
+        assertEquals(0, reducedRows.get());
+        function.scale(2.0f);
+        assertEquals(2 * sum, function.reduce(reducer, 2)[0], 1e-6);
+        assertEquals(37, reducedRows.get());
+        values.set(0, 0, values.get(0, 0) + 100.0f);
+        assertEquals(2 * sum + 100.0f, function.reduce(reducer, 2)[0], 1e-4);
+        assertEquals(74, reducedRows.get());
+        single.shutdown();
+        triple.shutdown();
+    }
+
     /**
      * Test of equals method, of class PmFunction.
      */
@@ -0,0 +1,39 @@
+package cz.muni.clusterix.businesstier;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests related to TruncatedDensityEstimator entity.
+ * @author Tomas Sezima
+ */
+public class TruncatedDensityEstimatorTest {
+
+    public TruncatedDensityEstimatorTest() {}
+
+    /**
+     * Test of estimate method, of class TruncatedDensityEstimator. Result is
+     * compared to the exact kernel sum.
+     */
+    @Test
+    public void testEstimate() {
+        System.out.println("Testing 'estimate' method.");
+        // each star may omit at most DEFAULT_TOLERANCE of kernel maximum
+        double smoothParam = DensityEstimatorFixture.SMOOTH_PARAM;
+        double volume = 1.0 / (2 * Math.PI * smoothParam * smoothParam);
+        double delta = DensityEstimatorFixture.NUM_OF_STARS * volume
+                * TruncatedDensityEstimator.DEFAULT_TOLERANCE + 1e-4;
+        DensityEstimatorFixture.assertMatchesExactSumWithin(new TruncatedDensityEstimator(), delta, 0);
+    }
+
+    /**
+     * Test of getCutoffOf method, of class TruncatedDensityEstimator.
+     */
+    @Test
+    public void testGetCutoffOf() {
+        System.out.println("Testing 'getCutoffOf' method.");
+        double cutoff = TruncatedDensityEstimator.getCutoffOf(0.01);
+        assertEquals(0.01, Math.exp(-0.5 * cutoff * cutoff), 0.000001);
+    }
+
+}
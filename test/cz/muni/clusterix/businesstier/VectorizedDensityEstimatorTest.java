@@ -0,0 +1,38 @@
+package cz.muni.clusterix.businesstier;
+
+import org.junit.Test;
+
+/**
+ * Tests related to VectorizedDensityEstimator entity.
+ * @author Tomas Sezima
+ */
+public class VectorizedDensityEstimatorTest {
+
+    public VectorizedDensityEstimatorTest() {}
+
+    /**
+     * Test of estimate method, of class VectorizedDensityEstimator. Result
+     * evaluated by polynomial approximation of exponential is compared to the
+     * exact kernel sum for both grid storages.
+     */
+    @Test
+    public void testEstimate() {
+        System.out.println("Testing 'estimate' method.");
+        DensityEstimatorFixture.assertMatchesExactSum(new VectorizedDensityEstimator(), null, 1e-5);
+    }
+
+    /**
+     * Test of estimate method, of class VectorizedDensityEstimator, with
+     * kernel function proposed by restrictions. The kernel has to be given
+     * squared distance in smoothParam units, i.e. the sum has to stay exact.
+     */
+    @Test
+    public void testEstimateWithKernel() {
+        System.out.println("Testing 'estimate' method with kernel function.");
+        DensityEstimatorFixture.assertMatchesExactSum(new VectorizedDensityEstimator(),
+                new ExactKernelFunction(), 1e-5);
+        DensityEstimatorFixture.assertMatchesExactSum(new VectorizedDensityEstimator(),
+                new TabulatedKernelFunction(1e-8), 1e-5);
+    }
+
+}
@@ -0,0 +1,147 @@
+package cz.muni.clusterix.commandline;
+
+import cz.muni.clusterix.entities.Star;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Set of tests related to CatalogueParser.
+ * @author Tomas Sezima
+ */
+public class CatalogueParserTest {
+
+    public CatalogueParserTest() {}
+
+    /**
+     * Test of parse method, of class CatalogueParser. Parsed values have to
+     * match the ones retrieved by Scanner.
+     */
+    @Test
+    public void testParse() {
+        System.out.println("Testing 'parse' method.");
+        String catalogue = getTestCatalogue(500, "\r\n");
+        List<Star> parsed = new ArrayList<Star>();
+        new CatalogueParser(parsed).parse(wrap(catalogue), true);
+
+        List<Star> expected = new ArrayList<Star>();
+        for (String line : catalogue.split("\r\n")) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            Scanner s = new Scanner(line).useDelimiter("\\t");
+            s.useLocale(Locale.ENGLISH);
+            int no = s.nextInt();
+            float ra = s.nextFloat();
+            float dec = s.nextFloat();
+            float raPm = s.nextFloat();
+            float raPmErr = s.nextFloat();
+            float decPm = s.nextFloat();
+            float decPmErr = s.nextFloat();
+            Star star = parsed.get(expected.size());
+            assertEquals(no, star.getNo());
+            assertEquals(ra, star.getRightAscension().getDegrees(), 0.0);
+            assertEquals(dec, star.getDeclination().getDegrees(), 0.0);
+            assertEquals(raPm, star.getProperMotion().getMuAlpha(), 0.0);
+            assertEquals(raPmErr, star.getProperMotion().getMuAlphaErr(), 0.0);
+            assertEquals(decPm, star.getProperMotion().getMuDelta(), 0.0);
+            assertEquals(decPmErr, star.getProperMotion().getMuDeltaErr(), 0.0);
+            expected.add(star);
+        }
+        assertEquals(expected.size(), parsed.size());
+    }
+
+    /**
+     * Test of parse method, of class CatalogueParser. Catalogue fed in small
+     * pieces has to be parsed the same way as whole one.
+     */
+    @Test
+    public void testParseStreamed() {
+        System.out.println("Testing streamed 'parse' method.");
+        String catalogue = getTestCatalogue(100, "\r");
+        Set<Star> whole = new HashSet<Star>();
+        new CatalogueParser(whole).parse(wrap(catalogue), true);
+
+        Set<Star> streamed = new HashSet<Star>();
+        CatalogueParser parser = new CatalogueParser(streamed);
+        byte[] bytes = catalogue.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        for (int from = 0; from < bytes.length; from += 7) {
+            buffer.put(bytes, from, Math.min(7, bytes.length - from));
+            buffer.flip();
+            parser.parse(buffer, from + 7 >= bytes.length);
+            buffer.compact();
+        }
+        assertEquals(whole, streamed);
+        assertEquals(100, streamed.size());
+    }
+
+    /**
+     * Test of getStars method, of class DataAccessor. Syntax errors have to be
+     * reported together with the offending line.
+     */
+    @Test
+    public void testSyntaxError() throws Exception {
+        System.out.println("Testing syntax error reporting.");
+        String[] invalid = {
+            "4\t1.0\t2.0\t3.0\t0.5\t4.0",
+            "4\t1.0\t2.0\t3.0\t0.5\t4.0\t0.5x",
+            "4\t1.0\t\t3.0\t0.5\t4.0\t0.5",
+            "4.5\t1.0\t2.0\t3.0\t0.5\t4.0\t0.5",
+            "4\t 1.0\t2.0\t3.0\t0.5\t4.0\t0.5"
+        };
+        for (String line : invalid) {
+            Path path = Files.createTempFile("catalogue", ".txt");
+            try {
+                String catalogue = "# comment\n\n1\t1.0\t2.0\t3.0\t0.5\t4.0\t0.5\n" + line + "\n";
+                Files.write(path, catalogue.getBytes(StandardCharsets.US_ASCII));
+                new DataAccessor().getStars(path);
+                fail("Syntax error was not reported: " + line);
+            } catch (FileSystemException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().contains("syntax error at line 4."));
+            } finally {
+                Files.delete(path);
+            }
+        }
+    }
+
+
+    // private helpers
+
+    private ByteBuffer wrap(String catalogue) {
+        return ByteBuffer.wrap(catalogue.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Generates catalogue with comments, empty lines and numbers written in
+     * various notations.
+     */
+    private String getTestCatalogue(int stars, String lineSeparator) {
+        Random random = new Random(42);
+        String[] formats = {"%.1f", "%.3f", "%.6f", "%+.2f", "%.9f", "%.3e", "%.0f"};
+        StringBuilder builder = new StringBuilder("# no\tra\tdec" + lineSeparator + lineSeparator);
+        for (int i = 0; i < stars; i++) {
+            builder.append(i - stars / 2);
+            for (int u = 0; u < 6; u++) {
+                // coordinates have to be valid, proper motions are arbitrary
+                double value = u == 0 ? random.nextDouble() * 360 : u == 1 ?
+                        (random.nextDouble() - 0.5) * 180 :
+                        (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(6));
+                String format = formats[random.nextInt(formats.length)];
+                builder.append('\t').append(String.format(Locale.ENGLISH, format, value));
+            }
+            builder.append('\t').append(lineSeparator);
+        }
+        return builder.toString();
+    }
+
+}
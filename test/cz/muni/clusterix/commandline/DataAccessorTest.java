@@ -0,0 +1,131 @@
+package cz.muni.clusterix.commandline;
+
+import cz.muni.clusterix.businesstier.ExecutionConfig;
+import cz.muni.clusterix.entities.Star;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Set of tests related to DataAccessor.
+ * @author Tomas Sezima
+ */
+public class DataAccessorTest {
+
+    public DataAccessorTest() {}
+
+    /**
+     * Test of getStars method (memory-mapped mode), of class DataAccessor.
+     * Catalogue spanning many chunks has to be parsed the same way as by
+     * the streaming mode.
+     */
+    @Test
+    public void testGetStarsMapped() throws Exception {
+        System.out.println("Testing memory-mapped 'getStars' method.");
+        Path path = Files.createTempFile("catalogue", ".txt");
+        ExecutionConfig config = new ExecutionConfig(4);
+        try {
+            Files.write(path, getTestCatalogue(20000, -1).getBytes(StandardCharsets.US_ASCII));
+            DataAccessor accessor = new DataAccessor();
+            Set<Star> streamed = accessor.getStars(path);
+            Set<Star> mapped = accessor.getStars(path, config);
+            assertEquals(20000, mapped.size());
+            assertEquals(streamed, mapped);
+        } finally {
+            config.shutdown();
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test of getStars method (memory-mapped mode), of class DataAccessor.
+     * Line numbers of syntax errors have to be global, not chunk relative.
+     */
+    @Test
+    public void testGetStarsMappedSyntaxError() throws Exception {
+        System.out.println("Testing memory-mapped 'getStars' syntax error reporting.");
+        Path path = Files.createTempFile("catalogue", ".txt");
+        ExecutionConfig config = new ExecutionConfig(4);
+        try {
+            // 3 header lines precede stars, star 15000 is malformed
+            Files.write(path, getTestCatalogue(20000, 15000).getBytes(StandardCharsets.US_ASCII));
+            new DataAccessor().getStars(path, config);
+            fail("Syntax error was not reported.");
+        } catch (FileSystemException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("syntax error at line 15004."));
+        } finally {
+            config.shutdown();
+            Files.delete(path);
+        }
+    }
+
+
+    /**
+     * Test of getBatchConfigs method, of class DataAccessor.
+     */
+    @Test
+    public void testGetBatchConfigs() throws Exception {
+        System.out.println("Testing 'getBatchConfigs' method.");
+        Path path = Files.createTempFile("clusterix-manifest", ".txt");
+        try {
+            Files.write(path, ("# Clusterix test manifest\n\n"
+                    + "[NGC 2682]\ncluster_ra: 132.825\ncluster_dec: 11.8\ncluster_radius: 10\n\n"
+                    + "[NGC 188]\n# comment\ncluster_ra=11.8\ncluster_dec=85.255\n"
+                    + "cluster_radius=8\ndata_max_mu=10\n").getBytes(StandardCharsets.US_ASCII));
+            DataAccessor accessor = new DataAccessor();
+            Map<String, Properties> configs = accessor.getBatchConfigs(path);
+            assertEquals(Arrays.asList("NGC 2682", "NGC 188"), new ArrayList<String>(configs.keySet()));
+            assertEquals("132.825", configs.get("NGC 2682").getProperty("cluster_ra"));
+            assertNull(configs.get("NGC 2682").getProperty("data_max_mu"));
+            assertEquals("10", configs.get("NGC 188").getProperty("data_max_mu"));
+            assertEquals(4, configs.get("NGC 188").size());
+            accessor.validateConfig(configs.get("NGC 2682"));
+            accessor.validateConfig(configs.get("NGC 188"));
+
+            // properties have to belong to named block
+            Files.write(path, "cluster_radius: 10\n[NGC 188]\n".getBytes(StandardCharsets.US_ASCII));
+            try {
+                accessor.getBatchConfigs(path);
+                fail("Property outside of cluster block has to be reported.");
+            } catch (FileSystemException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().contains("at line 1."));
+            }
+            Files.write(path, "[NGC 188]\n[NGC 188]\n".getBytes(StandardCharsets.US_ASCII));
+            try {
+                accessor.getBatchConfigs(path);
+                fail("Duplicate cluster name has to be reported.");
+            } catch (FileSystemException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().contains("at line 2."));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+
+    // private helpers
+
+    private String getTestCatalogue(int stars, int malformedStar) {
+        Random random = new Random(7);
+        StringBuilder builder = new StringBuilder("# Clusterix test catalogue\n#\n\n");
+        for (int i = 0; i < stars; i++) {
+            builder.append(i).append(i == malformedStar ? "x" : "");
+            builder.append(String.format(Locale.ENGLISH, "\t%.6f\t%.6f\t%.2f\t%.2f\t%.2f\t%.2f\r\n",
+                    random.nextDouble() * 360, (random.nextDouble() - 0.5) * 180,
+                    random.nextGaussian() * 5, random.nextDouble(),
+                    random.nextGaussian() * 5, random.nextDouble()));
+        }
+        return builder.toString();
+    }
+
+}
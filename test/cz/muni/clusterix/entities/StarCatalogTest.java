@@ -0,0 +1,82 @@
+package cz.muni.clusterix.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Set of tests related to StarCatalog entity.
+ *
+ * @author Tomas Sezima
+ */
+public class StarCatalogTest {
+
+    public StarCatalogTest() {}
+
+    /**
+     * Test of add and getStar methods, of class StarCatalog. Values added as
+     * primitives have to be materialised into equal Star.
+     */
+    @Test
+    public void testAdd() {
+        System.out.println("Testing 'add' method.");
+        StarCatalog catalog = new StarCatalog(1);
+        for (int i = 0; i < 100; i++) {
+            catalog.add(i, 12.5f, i * 3.0f, i - 50.0f, 1.5f, Float.NaN, -2.5f, 0.5f);
+        }
+        assertEquals(100, catalog.size());
+
+        Star star = catalog.getStar(42);
+        assertEquals(42, star.getNo());
+        assertEquals(126.0f, star.getRightAscension().getDegrees(), 0.0);
+        assertEquals(-8.0f, star.getDeclination().getDegrees(), 0.0);
+        assertNull(star.getProperMotion().getMuAlphaErr());
+        assertEquals(0.5f, star.getProperMotion().getMuDeltaErr(), 0.0);
+        assertEquals(star.getProperMotion().getMeanMu(), catalog.getMeanMu(42), 0.0);
+        assertEquals(0.0, catalog.getMeanMuErr(42), 0.0);
+        assertSame(star, catalog.getStar(42));
+
+        try {
+            catalog.add(1, 0.0f, 0.0f, 91.0f, 0.0f, 0.0f, 0.0f, 0.0f);
+            fail("Invalid declination was accepted.");
+        } catch (IllegalArgumentException ex) {
+            assertEquals(100, catalog.size());
+        }
+    }
+
+    /**
+     * Test of of, select and toStars methods, of class StarCatalog. Original
+     * Star objects have to be returned and updated with assigned probabilities.
+     */
+    @Test
+    public void testSelect() {
+        System.out.println("Testing 'select' method.");
+        List<Star> stars = new ArrayList<Star>();
+        for (int i = 0; i < 10; i++) {
+            stars.add(new Star(i, 10.0f, new RightAscension(i, 0.0f),
+                    new Declination(i, 0.0f), new ProperMotion(i, 0.1f, -i, 0.1f)));
+        }
+        StarCatalog catalog = StarCatalog.of(stars);
+        StarCatalog selected = catalog.select(new int[]{7, 2, 5}, 2);
+        assertEquals(2, selected.size());
+        assertEquals(7, selected.getNos()[0]);
+        assertEquals(-2.0f, selected.getMuDeltas()[1], 0.0);
+
+        selected.setProbability(0, 0.75f);
+        selected.setIsClusterStar(0, true);
+        List<Star> materialised = selected.toStars();
+        assertSame(stars.get(7), materialised.get(0));
+        assertSame(stars.get(2), materialised.get(1));
+        assertEquals(0.75f, stars.get(7).getProbability(), 0.0);
+        assertTrue(stars.get(7).isClusterStar());
+        assertNull(stars.get(2).getProbability());
+
+        StarCatalog merged = new StarCatalog();
+        merged.addAll(selected);
+        merged.addAll(catalog);
+        assertEquals(12, merged.size());
+        assertSame(stars.get(9), merged.getStar(11));
+    }
+
+}
@@ -8,7 +8,10 @@ import cz.muni.clusterix.entities.ProperMotion;
 import cz.muni.clusterix.entities.Point;
 import cz.muni.clusterix.entities.RightAscension;
 import cz.muni.clusterix.entities.Star;
+import cz.muni.clusterix.entities.PmMoments;
 import cz.muni.clusterix.entities.PmStat;
+import cz.muni.clusterix.entities.StarCatalog;
+import java.util.Random;
 import java.util.Set;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -59,6 +62,50 @@ public class CalcTest {
         assertEquals(7.0f, result.getDeltaStat(), 0.000001);        
     }
 
+    /**
+     * Test of getPmMoments method, of class Calc. Moments of a sample have to
+     * match two-pass statistics and merged moments of its parts, errors are
+     * summed only for stars proposed with both of them.
+     */
+    @Test
+    public void testGetPmMoments() {
+        System.out.println("Testing 'getPmMoments' method...");
+        StarCatalog all = new StarCatalog();
+        StarCatalog first = new StarCatalog();
+        StarCatalog second = new StarCatalog();
+        Random random = new Random(3);
+        double errSquaresAlpha = 0;
+        for (int i = 0; i < 1000; i++) {
+            float muAlphaErr = i % 10 == 0 ? Float.NaN : random.nextFloat();
+            float muDeltaErr = random.nextFloat();
+            float muAlpha = (float) random.nextGaussian() * 3 + 2;
+            float muDelta = (float) random.nextGaussian() * 5 - 1;
+            all.add(i, 10, 0, 0, muAlpha, muAlphaErr, muDelta, muDeltaErr);
+            (i < 300 ? first : second).add(i, 10, 0, 0, muAlpha, muAlphaErr, muDelta, muDeltaErr);
+            if (!Float.isNaN(muAlphaErr)) {
+                errSquaresAlpha += muAlphaErr * muAlphaErr;
+            }
+        }
+
+        PmMoments moments = Calc.getPmMoments(all);
+        PmStat mean = Calc.getPmMean(all);
+        PmStat deviation = Calc.getPmDeviation(all, mean);
+        assertEquals(1000, moments.getCount());
+        assertEquals(mean.getAlphaStat(), moments.getMean().getAlphaStat(), 1e-9);
+        assertEquals(mean.getDeltaStat(), moments.getMean().getDeltaStat(), 1e-9);
+        assertEquals(deviation.getAlphaStat(), moments.getDeviation().getAlphaStat(), 1e-9);
+        assertEquals(deviation.getDeltaStat(), moments.getDeviation().getDeltaStat(), 1e-9);
+        assertEquals(errSquaresAlpha, moments.getErrSquares().getAlphaStat(), 1e-6);
+
+        PmMoments merged = Calc.getPmMoments(first);
+        merged.merge(Calc.getPmMoments(second));
+        assertEquals(moments.getCount(), merged.getCount());
+        assertEquals(moments.getDeviation().getAlphaStat(), merged.getDeviation().getAlphaStat(), 1e-9);
+        assertEquals(moments.getDeviation().getDeltaStat(), merged.getDeviation().getDeltaStat(), 1e-9);
+        assertEquals(moments.getErrSquares().getAlphaStat(), merged.getErrSquares().getAlphaStat(), 1e-9);
+        assertEquals(moments.getErrSquares().getDeltaStat(), merged.getErrSquares().getDeltaStat(), 1e-9);
+    }
+
     /**
      * Test of getRand method, of class Calc.
      */
@@ -139,6 +186,23 @@ public class CalcTest {
         assertEquals(pow(0.352, 2), Calc.square(0.352), 0.000001);        
     }
 
+    /**
+     * Test of expOfNonPositive method, of class Calc. Documented error bounds
+     * are checked against Math.exp.
+     */
+    @Test
+    public void testExpOfNonPositive() {
+        System.out.println("Testing 'expOfNonPositive' method...");
+        for (double x = 0; x >= -20; x -= 0.001) {
+            assertEquals(1.0, Calc.expOfNonPositive(x) / exp(x), 1e-8);
+        }
+        for (double x = -20; x >= -40; x -= 0.001) {
+            assertEquals(1.0, Calc.expOfNonPositive(x) / exp(x), 1e-5);
+        }
+        assertEquals(0.0, Calc.expOfNonPositive(-1000), 5e-18);
+        assertEquals(0.0, Calc.expOfNonPositive(Double.NEGATIVE_INFINITY), 5e-18);
+    }
+
     //private helpers
     
     private Set<Star> getTestStars() {